@@ -2,7 +2,7 @@ import { HttpClient } from "@angular/common/http";
 import { HttpClientTestingModule, HttpTestingController } from "@angular/common/http/testing";
 import { HuntService } from "./hunt.service"; // Import the HuntService class
 import { TestBed } from "@angular/core/testing";
-import { Hunt } from "./hunt";
+import { Hunt, HuntPage } from "./hunt";
 
 describe ('HuntService', () => {
   let service: HuntService;
@@ -101,6 +101,34 @@ describe ('HuntService', () => {
     req.flush(testHunts);
   });
 
+  it('getHuntsPage() calls api/hunts with a page size', () => {
+    const page: HuntPage = { hunts: testHunts.slice(0, 2), nextPageToken: 'next' };
+    huntService.getHuntsPage(2, { hostid: 'chris_id' }).subscribe(
+      returnedPage => expect(returnedPage).toBe(page)
+    );
+
+    const req = httpTestingController.expectOne(
+      req => req.url === huntService.huntUrl
+        && req.params.get('limit') === '2'
+        && req.params.get('hostid') === 'chris_id'
+        && !req.params.has('pageToken')
+    );
+    expect(req.request.method).toEqual('GET');
+    req.flush(page);
+  });
+
+  it('getHuntsPage() passes along the page token', () => {
+    const page: HuntPage = { hunts: testHunts.slice(2), nextPageToken: null };
+    huntService.getHuntsPage(2, undefined, 'next').subscribe(
+      returnedPage => expect(returnedPage).toBe(page)
+    );
+
+    const req = httpTestingController.expectOne(
+      req => req.params.get('limit') === '2' && req.params.get('pageToken') === 'next'
+    );
+    req.flush(page);
+  });
+
   it('getHuntById() calls api/hunts/id', () => {
     const targetHunt: Hunt = testHunts[1];
     const targetId: string = targetHunt._id;
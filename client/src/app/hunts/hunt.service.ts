@@ -2,7 +2,7 @@ import { HttpClient, HttpParams } from '@angular/common/http';
 import { Injectable } from '@angular/core';
 import { Observable, map } from 'rxjs';
 import { environment } from '../../environments/environment';
-import { Hunt } from './hunt';
+import { Hunt, HuntPage } from './hunt';
 
 
 
@@ -17,6 +17,8 @@ export class HuntService {
   private readonly titleKey = 'title';
   private readonly descriptionKey = 'description';
   private readonly taskKey = 'task';
+  private readonly limitKey = 'limit';
+  private readonly pageTokenKey = 'pageToken';
 
   constructor(private httpClient: HttpClient) {
   }
@@ -49,6 +51,31 @@ getDescriptionKey(): string {
 
 
   getHunts(filters?: { hostid?: string; title?: string; task?: string; description?: string}): Observable<Hunt[]> {
+    return this.httpClient.get<Hunt[]>(this.huntUrl, {
+      params: this.filterParams(filters)
+    });
+  }
+
+  /**
+   * Get a single page of hunts from the server, rather than all of them.
+   *
+   * @param pageSize how many hunts to get at most
+   * @param filters the same filters as `getHunts()` takes
+   * @param pageToken the `nextPageToken` from the previous page, or nothing to get the first page
+   * @returns an `Observable` of the page, which also holds the token for the following page
+   */
+  getHuntsPage(pageSize: number, filters?: { hostid?: string; title?: string; task?: string; description?: string},
+    pageToken?: string): Observable<HuntPage> {
+    let httpParams = this.filterParams(filters).set(this.limitKey, pageSize);
+    if (pageToken) {
+      httpParams = httpParams.set(this.pageTokenKey, pageToken);
+    }
+    return this.httpClient.get<HuntPage>(this.huntUrl, {
+      params: httpParams
+    });
+  }
+
+  private filterParams(filters?: { hostid?: string; title?: string; task?: string; description?: string}): HttpParams {
     let httpParams: HttpParams = new HttpParams();
     if (filters) {
       if (filters.hostid) {
@@ -67,10 +94,7 @@ getDescriptionKey(): string {
       }
 
     }
-
-    return this.httpClient.get<Hunt[]>(this.huntUrl, {
-      params: httpParams
-    });
+    return httpParams;
   }
 
   getHuntById(id: string): Observable<Hunt> {
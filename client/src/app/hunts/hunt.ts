@@ -5,6 +5,28 @@ export interface Hunt {
   title: string;
   description: string;
   task: string;
+  // Bumped on the server by every update, which must say which version it was made to.
+  version?: number;
+  // The hunt's tasks in order; it starts out with just `task`.
+  tasks?: HuntTask[];
 
 
 }
+
+/**
+ * One of the tasks in a hunt's list, with an id of its own so it can be
+ * renamed, moved, or removed on its own.
+ */
+export interface HuntTask {
+  id: string;
+  name: string;
+}
+
+/**
+ * One page of hunts from the server, along with the token to pass
+ * back to get the next page (`null` on the last page).
+ */
+export interface HuntPage {
+  hunts: Hunt[];
+  nextPageToken: string | null;
+}
@@ -0,0 +1,111 @@
+package umm3601.hunt;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import io.javalin.http.Context;
+import io.javalin.json.JavalinJackson;
+
+/**
+ * Shared setup for the hunt benchmarks.
+ *
+ * Like the specs, the benchmarks that need a database use the MongoDB
+ * at `MONGO_ADDR` (default `localhost`), in a `jmh` database that they
+ * drop when they're done.
+ */
+final class BenchmarkSupport {
+
+  static final String DATABASE_NAME = "jmh";
+
+  // How many different hosts the generated hunts are spread across.
+  private static final int HOST_COUNT = 50;
+
+  private BenchmarkSupport() {
+  }
+
+  static MongoClient connect() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+    return MongoClients.create(MongoClientSettings.builder()
+        .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+        .build());
+  }
+
+  /**
+   * Replace the hunts in the benchmark database with `count` generated hunts,
+   * and set up their indexes just as the server does when it starts.
+   *
+   * @param database the benchmark database
+   * @param count how many hunts to create
+   */
+  static void seedHunts(MongoDatabase database, int count) {
+    MongoCollection<Document> hunts = database.getCollection("hunts");
+    hunts.drop();
+    List<Document> documents = new ArrayList<>();
+    for (Hunt hunt : generateHunts(count)) {
+      documents.add(new Document()
+          .append("title", hunt.title)
+          .append("titleLower", hunt.getTitleLower())
+          .append("hostid", hunt.hostid)
+          .append("description", hunt.description)
+          .append("task", hunt.task));
+    }
+    if (!documents.isEmpty()) {
+      hunts.insertMany(documents);
+    }
+    HuntSchema.bootstrap(database, false);
+  }
+
+  /**
+   * Generate `count` hunts (without ids) with realistic looking contents.
+   *
+   * @param count how many hunts to create
+   * @return the generated hunts
+   */
+  static List<Hunt> generateHunts(int count) {
+    List<Hunt> hunts = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Hunt hunt = new Hunt();
+      hunt.title = "Scavenger Hunt " + i;
+      hunt.hostid = "host" + (i % HOST_COUNT);
+      hunt.description = "Find everything on the list around the Morris campus before the time runs out. " + i;
+      hunt.task = "Take a picture of the " + i + "th thing you see";
+      hunts.add(hunt);
+    }
+    return hunts;
+  }
+
+  /**
+   * Build a fake request context with the given query parameters.
+   *
+   * The context is a "stub only" Mockito mock, which doesn't record its
+   * invocations, to keep its own overhead in the measurements small; the
+   * `baseline` benchmarks measure what's left of that overhead.
+   *
+   * @param queryParams the query parameters of the fake request
+   * @return the fake context
+   */
+  static Context contextWith(Map<String, String> queryParams) {
+    Context ctx = mock(Context.class, withSettings().stubOnly());
+    when(ctx.queryParamMap()).thenReturn(queryParams.entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, entry -> List.of(entry.getValue()))));
+    queryParams.forEach((key, value) -> when(ctx.queryParam(key)).thenReturn(value));
+    when(ctx.jsonMapper()).thenReturn(new JavalinJackson());
+    return ctx;
+  }
+}
@@ -0,0 +1,121 @@
+package umm3601.hunt;
+
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoDatabase;
+
+import io.javalin.http.Context;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/**
+ * Benchmarks for the whole `getHunts` request path, from query parameters
+ * to serialized response, against a database holding `huntCount` hunts.
+ *
+ * These need a running MongoDB (see `BenchmarkSupport`).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetHuntsBenchmark {
+
+  // JMH sets parameters by writing to the field, so it can't be private.
+  @Param({ "100", "10000" })
+  @SuppressWarnings({"VisibilityModifier"})
+  public int huntCount;
+
+  private MongoClient mongoClient;
+  private HuntController huntController;
+
+  private Context allHuntsCtx;
+  private Context hostCtx;
+  private Context streamingCtx;
+
+  @Setup
+  public void setup() {
+    mongoClient = BenchmarkSupport.connect();
+    MongoDatabase database = mongoClient.getDatabase(BenchmarkSupport.DATABASE_NAME);
+    BenchmarkSupport.seedHunts(database, huntCount);
+    huntController = new HuntController(database);
+
+    allHuntsCtx = BenchmarkSupport.contextWith(Map.of());
+    hostCtx = BenchmarkSupport.contextWith(Map.of(HuntController.HOST_KEY, "host7"));
+    streamingCtx = BenchmarkSupport.contextWith(Map.of(HuntController.STREAM_KEY, "array"));
+    when(streamingCtx.outputStream()).thenReturn(new DiscardingOutputStream());
+  }
+
+  @TearDown
+  public void teardown() {
+    mongoClient.getDatabase(BenchmarkSupport.DATABASE_NAME).drop();
+    mongoClient.close();
+  }
+
+  /**
+   * The same listing over and over, so (after the first call) it comes
+   * from the listing cache.
+   */
+  @Benchmark
+  public void getAllHuntsCached() {
+    huntController.getHunts(allHuntsCtx);
+  }
+
+  /**
+   * Retiring the cached listings before each request means every request
+   * goes to the database and serializes its results.
+   */
+  @Benchmark
+  public void getAllHuntsUncached() {
+    huntController.huntsChanged();
+    huntController.getHunts(allHuntsCtx);
+  }
+
+  @Benchmark
+  public void getHuntsByHostUncached() {
+    huntController.huntsChanged();
+    huntController.getHunts(hostCtx);
+  }
+
+  @Benchmark
+  public void streamAllHunts() {
+    huntController.getHunts(streamingCtx);
+  }
+
+  /**
+   * A servlet output stream that throws away everything written to it.
+   */
+  private static class DiscardingOutputStream extends ServletOutputStream {
+    @Override
+    public void write(int b) {
+      // Discard it.
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      // Discard it.
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      // Writes never block, so there's nothing to listen for.
+    }
+  }
+}
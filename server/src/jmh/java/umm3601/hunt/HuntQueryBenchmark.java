@@ -0,0 +1,83 @@
+package umm3601.hunt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.conversions.Bson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.mongodb.client.MongoClient;
+
+import io.javalin.http.Context;
+
+/**
+ * Benchmarks for turning a request's query parameters into the filter
+ * and sorting order that `getHunts` sends to MongoDB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HuntQueryBenchmark {
+
+  private MongoClient mongoClient;
+  private HuntController huntController;
+
+  private Context unfilteredCtx;
+  private Context fullyFilteredCtx;
+  private Context descendingCtx;
+
+  @Setup
+  public void setup() {
+    mongoClient = BenchmarkSupport.connect();
+    huntController = new HuntController(mongoClient.getDatabase(BenchmarkSupport.DATABASE_NAME));
+
+    unfilteredCtx = BenchmarkSupport.contextWith(Map.of());
+    fullyFilteredCtx = BenchmarkSupport.contextWith(Map.of(
+        HuntController.HOST_KEY, "host7",
+        HuntController.TITLE_KEY, "Scavenger",
+        HuntController.DESCRIPTION_KEY, "campus",
+        HuntController.TASK_KEY, "picture"));
+    descendingCtx = BenchmarkSupport.contextWith(Map.of(
+        HuntController.SORT_BY_KEY, HuntController.HOST_KEY,
+        HuntController.SORT_ORDER_KEY, "desc"));
+  }
+
+  @TearDown
+  public void teardown() {
+    mongoClient.getDatabase(BenchmarkSupport.DATABASE_NAME).drop();
+    mongoClient.close();
+  }
+
+  @Benchmark
+  public Map<String, List<String>> baselineContextAccess() {
+    return fullyFilteredCtx.queryParamMap();
+  }
+
+  @Benchmark
+  public Bson constructFilterUnfiltered() {
+    return huntController.constructFilter(unfilteredCtx);
+  }
+
+  @Benchmark
+  public Bson constructFilterAllKeys() {
+    return huntController.constructFilter(fullyFilteredCtx);
+  }
+
+  @Benchmark
+  public Bson constructSortingOrderDefault() {
+    return huntController.constructSortingOrder(unfilteredCtx);
+  }
+
+  @Benchmark
+  public Bson constructSortingOrderDescending() {
+    return huntController.constructSortingOrder(descendingCtx);
+  }
+}
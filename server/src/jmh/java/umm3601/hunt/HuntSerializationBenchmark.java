@@ -0,0 +1,55 @@
+package umm3601.hunt;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.javalin.json.JavalinJackson;
+
+/**
+ * Benchmarks for turning hunts into JSON and back, using the same Jackson
+ * setup as the server, for lists of hunts of various sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HuntSerializationBenchmark {
+
+  // JMH sets parameters by writing to the field, so it can't be private.
+  @Param({ "1", "100", "10000" })
+  @SuppressWarnings({"VisibilityModifier"})
+  public int listSize;
+
+  private final JavalinJackson jackson = new JavalinJackson();
+
+  private List<Hunt> hunts;
+  private String huntsJson;
+
+  @Setup
+  public void setup() {
+    hunts = BenchmarkSupport.generateHunts(listSize);
+    for (Hunt hunt : hunts) {
+      hunt._id = new ObjectId().toHexString();
+    }
+    huntsJson = jackson.toJsonString(hunts, List.class);
+  }
+
+  @Benchmark
+  public String serializeHunts() {
+    return jackson.toJsonString(hunts, List.class);
+  }
+
+  @Benchmark
+  public Hunt[] deserializeHunts() {
+    return jackson.fromJsonString(huntsJson, Hunt[].class);
+  }
+}
@@ -0,0 +1,247 @@
+package umm3601;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import umm3601.LoadProfile.Operation;
+import umm3601.metrics.LatencyHistogram;
+
+/**
+ * Sends requests to a running server at a fixed rate (an "open loop"), and
+ * records how long each one took.
+ *
+ * A closed-loop load generator, where each client waits for its last
+ * response before sending its next request, slows down along with the
+ * server, so it sends fewer requests just when they'd be slowest and
+ * under-reports the latencies users would see (this is "coordinated
+ * omission"). Here every request has a scheduled start time, fixed by the
+ * rate before the test begins, and is sent on its own virtual thread at
+ * that time, however many earlier requests are still waiting. Its latency
+ * is measured from when it was *scheduled* to start, so any time it spent
+ * waiting because the load generator fell behind counts too.
+ */
+public class LoadGenerator {
+
+  private static final int NOT_FOUND = 404;
+  private static final int LAST_SUCCESS = 299;
+
+  // How many of the hunts to list at once, as the client does.
+  private static final String LIST_LIMIT = "limit=20";
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  private final HttpClient client = HttpClient.newBuilder()
+    .version(HttpClient.Version.HTTP_1_1)
+    .build();
+
+  private final URI huntsUri;
+  private final LoadProfile profile;
+  private final List<String> seededIds;
+  private final List<String> hosts;
+
+  // The hunts added by the load test, which the deletes take from.
+  private final Queue<String> addedIds = new ConcurrentLinkedQueue<>();
+
+  private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+  private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+  private final LatencyHistogram allLatencies = new LatencyHistogram();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  /**
+   * Construct a load generator.
+   *
+   * @param baseUri where the server is, like `http://localhost:4567`
+   * @param profile the rate, duration, and mix of requests to send
+   * @param seededIds the ids of the hunts in the database, to get
+   * @param hosts the hosts of the hunts in the database, to filter by
+   */
+  public LoadGenerator(URI baseUri, LoadProfile profile, List<String> seededIds, List<String> hosts) {
+    this.huntsUri = baseUri.resolve("/api/hunts");
+    this.profile = profile;
+    this.seededIds = List.copyOf(seededIds);
+    this.hosts = List.copyOf(hosts);
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new LatencyHistogram());
+      errors.put(operation, new LongAdder());
+    }
+  }
+
+  /**
+   * Send the requests: first for the warmup, whose latencies aren't
+   * recorded, and then for the duration of the test. Returns once every
+   * request has finished.
+   *
+   * @return how long the measured part of the test took, in nanoseconds,
+   *   from its first scheduled request to its last response
+   * @throws InterruptedException if interrupted while waiting for requests to finish
+   */
+  public long run() throws InterruptedException {
+    long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / profile.requestsPerSecond());
+    long warmupRequests = (long) (profile.requestsPerSecond() * profile.warmupSeconds());
+    long totalRequests = warmupRequests + (long) (profile.requestsPerSecond() * profile.durationSeconds());
+    Random random = new Random();
+
+    long start = System.nanoTime();
+    long measureFrom = start + warmupRequests * intervalNanos;
+    try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (long i = 0; i < totalRequests; i++) {
+        long scheduledAt = start + i * intervalNanos;
+        long wait = scheduledAt - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+        Operation operation = profile.pick(random);
+        boolean measured = i >= warmupRequests;
+        requests.execute(() -> send(operation, scheduledAt, measured));
+      }
+      // Closing the executor waits for the requests still going.
+    }
+    return System.nanoTime() - measureFrom;
+  }
+
+  /**
+   * Send one request, and record how long it took from when it was
+   * scheduled to start.
+   *
+   * @param operation the kind of request
+   * @param scheduledAt the `System.nanoTime()` it was meant to start at
+   * @param measured whether to record its latency (false during the warmup)
+   */
+  private void send(Operation operation, long scheduledAt, boolean measured) {
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    boolean ok;
+    try {
+      ok = perform(operation);
+    } catch (IOException e) {
+      ok = false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      ok = false;
+    } finally {
+      inFlight.decrementAndGet();
+    }
+    if (measured) {
+      long latency = System.nanoTime() - scheduledAt;
+      latencies.get(operation).record(latency);
+      allLatencies.record(latency);
+      if (!ok) {
+        errors.get(operation).increment();
+      }
+    }
+  }
+
+  /**
+   * Make one request of the given kind.
+   *
+   * @param operation the kind of request
+   * @return whether the server responded successfully
+   * @throws IOException if the request couldn't be sent
+   * @throws InterruptedException if interrupted while waiting for the response
+   */
+  private boolean perform(Operation operation) throws IOException, InterruptedException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    switch (operation) {
+      case LIST:
+        return succeeded(get(URI.create(huntsUri + "?" + listQuery(random))));
+      case GET:
+        return succeeded(get(URI.create(huntsUri + "/" + seededIds.get(random.nextInt(seededIds.size())))));
+      case ADD:
+        HttpResponse<String> added = client.send(HttpRequest.newBuilder(huntsUri)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(newHuntJson(random)))
+            .build(), HttpResponse.BodyHandlers.ofString());
+        if (succeeded(added)) {
+          JsonNode addedId = JSON.readTree(added.body()).get("id");
+          if (addedId != null) {
+            addedIds.add(addedId.asText());
+          }
+          return true;
+        }
+        return false;
+      case DELETE:
+        // Only the hunts the load test added are deleted, so the gets
+        // always find the hunt they ask for. Until one has been added,
+        // delete one that doesn't exist (which is still a trip to the
+        // database).
+        String id = addedIds.poll();
+        HttpResponse<String> deleted = client.send(HttpRequest.newBuilder(
+            URI.create(huntsUri + "/" + (id == null ? "000000000000000000000000" : id)))
+            .DELETE()
+            .build(), HttpResponse.BodyHandlers.ofString());
+        return succeeded(deleted) || id == null && deleted.statusCode() == NOT_FOUND;
+      default:
+        throw new IllegalStateException("Unknown kind of request " + operation);
+    }
+  }
+
+  private HttpResponse<String> get(URI uri) throws IOException, InterruptedException {
+    return client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static boolean succeeded(HttpResponse<?> response) {
+    return response.statusCode() <= LAST_SUCCESS;
+  }
+
+  /**
+   * A listing like the client asks for: a page of all the hunts, a host's
+   * hunts, or the hunts sorted by title.
+   *
+   * @param random the random numbers to pick with
+   * @return the query string
+   */
+  private String listQuery(Random random) {
+    switch (random.nextInt(3)) {
+      case 0:
+        return LIST_LIMIT + "&hostid=" + hosts.get(random.nextInt(hosts.size()));
+      case 1:
+        return LIST_LIMIT + "&sortby=title&sortorder=desc";
+      default:
+        return LIST_LIMIT;
+    }
+  }
+
+  private String newHuntJson(Random random) throws IOException {
+    int n = random.nextInt(Integer.MAX_VALUE);
+    return JSON.writeValueAsString(Map.of(
+      "title", "Load Test Hunt " + n,
+      "hostid", hosts.get(random.nextInt(hosts.size())),
+      "description", "A hunt added by the load test",
+      "task", "Find thing " + n));
+  }
+
+  public LatencyHistogram latencies(Operation operation) {
+    return latencies.get(operation);
+  }
+
+  public LatencyHistogram allLatencies() {
+    return allLatencies;
+  }
+
+  public long errors(Operation operation) {
+    return errors.get(operation).sum();
+  }
+
+  public int maxInFlight() {
+    return maxInFlight.get();
+  }
+}
@@ -0,0 +1,118 @@
+package umm3601;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * What traffic a load test sends: how fast, for how long, and in what mix
+ * of requests, along with how many hunts the database is seeded with.
+ *
+ * @param requestsPerSecond how many requests to start each second, whether
+ *   or not earlier ones have finished
+ * @param warmupSeconds how long to send requests before recording their latencies
+ * @param durationSeconds how long to record latencies for, after the warmup
+ * @param seedHunts how many hunts to seed the database with
+ * @param seedFile the JSON array of hunts the seeded hunts are made from
+ * @param mix how many of each kind of request to send, relative to the others
+ */
+public record LoadProfile(
+    double requestsPerSecond,
+    int warmupSeconds,
+    int durationSeconds,
+    int seedHunts,
+    String seedFile,
+    Map<LoadProfile.Operation, Integer> mix) {
+
+  /**
+   * The kinds of request a load test sends.
+   */
+  public enum Operation {
+    // `GET /api/hunts`, sometimes filtered by host or sorted by title.
+    LIST,
+    // `GET /api/hunts/{id}` for one of the seeded hunts.
+    GET,
+    // `POST /api/hunts` with a new hunt.
+    ADD,
+    // `DELETE /api/hunts/{id}` for one of the hunts the load test added.
+    DELETE
+  }
+
+  private static final String DEFAULT_RATE = "200";
+  private static final String DEFAULT_WARMUP_SECONDS = "10";
+  private static final String DEFAULT_DURATION_SECONDS = "30";
+  private static final String DEFAULT_SEED_HUNTS = "10000";
+  private static final String DEFAULT_SEED_FILE = "../database/seed/hunts.json";
+  private static final String DEFAULT_MIX = "list=40,get=50,add=5,delete=5";
+
+  /**
+   * Read the profile from these environment variables:
+   *
+   * - `LOAD_RATE`: requests started per second (200).
+   * - `LOAD_WARMUP_SECONDS`: how long to warm the server up first (10).
+   * - `LOAD_DURATION_SECONDS`: how long to measure for (30).
+   * - `LOAD_SEED_HUNTS`: how many hunts to seed the database with (10000).
+   * - `LOAD_SEED_FILE`: the hunts to copy when seeding, in the same
+   *   format as `database/seed/hunts.json` (which is the default).
+   * - `LOAD_MIX`: the relative weights of each kind of request
+   *   ("list=40,get=50,add=5,delete=5").
+   *
+   * @param env the environment variables
+   * @return the load profile
+   */
+  public static LoadProfile fromEnvironment(Map<String, String> env) {
+    return new LoadProfile(
+      Double.parseDouble(env.getOrDefault("LOAD_RATE", DEFAULT_RATE)),
+      Integer.parseInt(env.getOrDefault("LOAD_WARMUP_SECONDS", DEFAULT_WARMUP_SECONDS)),
+      Integer.parseInt(env.getOrDefault("LOAD_DURATION_SECONDS", DEFAULT_DURATION_SECONDS)),
+      Integer.parseInt(env.getOrDefault("LOAD_SEED_HUNTS", DEFAULT_SEED_HUNTS)),
+      env.getOrDefault("LOAD_SEED_FILE", DEFAULT_SEED_FILE),
+      parseMix(env.getOrDefault("LOAD_MIX", DEFAULT_MIX)));
+  }
+
+  /**
+   * Parse a mix of requests like "list=40,get=50,add=5,delete=5". Kinds of
+   * request that aren't mentioned aren't sent.
+   *
+   * @param mix the comma separated weights
+   * @return the weight of each kind of request
+   * @throws IllegalArgumentException if the mix isn't in that format, or
+   *   its weights don't add up to anything
+   */
+  static Map<Operation, Integer> parseMix(String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String entry : mix.split(",")) {
+      String[] parts = entry.split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Expected kind=weight in the request mix, not '" + entry + "'");
+      }
+      int weight = Integer.parseInt(parts[1].trim());
+      if (weight < 0) {
+        throw new IllegalArgumentException("Request weights can't be negative: '" + entry + "'");
+      }
+      weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), weight);
+    }
+    if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+      throw new IllegalArgumentException("The request mix '" + mix + "' doesn't include any requests");
+    }
+    return weights;
+  }
+
+  /**
+   * Pick the kind of the next request, in proportion to the mix.
+   *
+   * @param random the random numbers to pick with
+   * @return the kind of request to send
+   */
+  Operation pick(Random random) {
+    int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+    int choice = random.nextInt(total);
+    for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+      choice -= entry.getValue();
+      if (choice < 0) {
+        return entry.getKey();
+      }
+    }
+    throw new IllegalStateException("The request mix is empty");
+  }
+}
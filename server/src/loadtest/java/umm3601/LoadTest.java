@@ -0,0 +1,201 @@
+package umm3601;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonArray;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import io.javalin.Javalin;
+import umm3601.LoadProfile.Operation;
+import umm3601.admission.AdmissionControl;
+import umm3601.admission.AdmissionLimits;
+import umm3601.hunt.HuntReadModel;
+import umm3601.hunt.HuntSchema;
+import umm3601.metrics.LatencyHistogram;
+import umm3601.metrics.ServerMetrics;
+import umm3601.progress.ProgressTracker;
+
+/**
+ * Load test the server: seed a database with hunts, start a `Server` on
+ * it, send it a steady stream of requests (see `LoadGenerator`), and
+ * report the latencies and throughput.
+ *
+ * Run it with `./gradlew loadTest` from the `server` directory. Like the
+ * server tests, it uses the MongoDB at `MONGO_ADDR` (default `localhost`),
+ * in a `loadtest` database that's dropped when it's done. The traffic is
+ * set by the `LOAD_*` environment variables (see `LoadProfile`), and the
+ * server is configured by the same `MONGO_*` and `USE_VIRTUAL_THREADS`
+ * environment variables as `Main`. It has no rate limits or concurrency
+ * limits unless `LOAD_ADMISSION_LIMITS` is "true".
+ */
+public final class LoadTest {
+
+  static final String DATABASE_NAME = "loadtest";
+
+  // How many different hosts the seeded hunts are spread across.
+  private static final int HOST_COUNT = 50;
+
+  // How many hunts to insert at once when seeding.
+  private static final int SEED_BATCH_SIZE = 1000;
+
+  private static final double P50 = 0.5;
+  private static final double P99 = 0.99;
+  private static final double P999 = 0.999;
+
+  private LoadTest() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    LoadProfile profile = LoadProfile.fromEnvironment(System.getenv());
+    String mongoAddr = Main.getEnvOrDefault("MONGO_ADDR", "localhost");
+    boolean useVirtualThreads = Boolean.parseBoolean(Main.getEnvOrDefault("USE_VIRTUAL_THREADS", "false"));
+    DatabaseOptions databaseOptions = DatabaseOptions.fromEnvironment();
+
+    ServerMetrics metrics = new ServerMetrics();
+    MongoClient mongoClient = Server.configureDatabase(mongoAddr, databaseOptions, metrics);
+    MongoDatabase database = mongoClient.getDatabase(DATABASE_NAME);
+
+    List<String> hosts = new ArrayList<>();
+    for (int i = 0; i < HOST_COUNT; i++) {
+      hosts.add("host" + i);
+    }
+    System.out.printf("Seeding %d hunts from %s%n", profile.seedHunts(), profile.seedFile());
+    List<String> seededIds = seedHunts(database, readSeedHunts(Path.of(profile.seedFile())), hosts,
+      profile.seedHunts());
+    HuntSchema.bootstrap(database, false);
+
+    AdmissionLimits limits = Boolean.parseBoolean(Main.getEnvOrDefault("LOAD_ADMISSION_LIMITS", "false"))
+      ? AdmissionLimits.fromEnvironment(System.getenv())
+      : new AdmissionLimits(0, 1, 0, 1, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, false);
+    // The read model can be load tested too, with `HUNT_READ_MODEL=true`.
+    HuntReadModel.Settings readModel = Boolean.parseBoolean(Main.getEnvOrDefault("HUNT_READ_MODEL", "false"))
+      ? HuntReadModel.Settings.fromEnvironment(System.getenv())
+      : null;
+    Server server = new Server(mongoClient,
+      Main.getControllers(database, databaseOptions.requestReadPreference(), null, readModel,
+        ProgressTracker.Settings.fromEnvironment(System.getenv())),
+      metrics, useVirtualThreads, new AdmissionControl(limits, metrics::recentMongoLatencyNanos));
+    Javalin javalin = server.startServer(0);
+
+    try {
+      System.out.printf("Sending %.0f requests a second (%s) for %ds, after a %ds warmup%n",
+        profile.requestsPerSecond(), profile.mix(), profile.durationSeconds(), profile.warmupSeconds());
+      LoadGenerator generator = new LoadGenerator(
+        URI.create("http://localhost:" + javalin.port()), profile, seededIds, hosts);
+      long elapsedNanos = generator.run();
+      report(generator, elapsedNanos);
+    } finally {
+      database.drop();
+      // Stopping the server closes the MongoDB client too.
+      javalin.stop();
+    }
+  }
+
+  /**
+   * Read hunts in the format of `database/seed/hunts.json`: a JSON array of
+   * hunt documents, in MongoDB's extended JSON.
+   *
+   * @param seedFile the file to read
+   * @return the hunts in the file
+   * @throws IOException if the file can't be read
+   */
+  static List<Document> readSeedHunts(Path seedFile) throws IOException {
+    List<Document> hunts = new ArrayList<>();
+    for (BsonValue value : BsonArray.parse(Files.readString(seedFile))) {
+      hunts.add(Document.parse(value.asDocument().toJson()));
+    }
+    if (hunts.isEmpty()) {
+      throw new IllegalArgumentException("There are no hunts in " + seedFile);
+    }
+    return hunts;
+  }
+
+  /**
+   * Replace the hunts in the database with `count` copies of the seed
+   * hunts, each with its own id, title, and (one of the) hosts.
+   *
+   * @param database the load test database
+   * @param seeds the hunts to copy
+   * @param hosts the hosts to spread the hunts across
+   * @param count how many hunts to create
+   * @return the ids of the hunts
+   */
+  static List<String> seedHunts(MongoDatabase database, List<Document> seeds, List<String> hosts, int count) {
+    MongoCollection<Document> hunts = database.getCollection("hunts");
+    hunts.drop();
+    List<String> ids = new ArrayList<>(count);
+    List<Document> batch = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Document hunt = Document.parse(seeds.get(i % seeds.size()).toJson());
+      ObjectId id = new ObjectId();
+      String title = hunt.getString("title") + " " + i;
+      hunt.put("_id", id);
+      hunt.put("title", title);
+      hunt.put("titleLower", title.toLowerCase(Locale.ROOT));
+      hunt.put("hostid", hosts.get(i % hosts.size()));
+      batch.add(hunt);
+      ids.add(id.toHexString());
+      if (batch.size() == SEED_BATCH_SIZE) {
+        hunts.insertMany(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      hunts.insertMany(batch);
+    }
+    return ids;
+  }
+
+  /**
+   * Print the latencies at the 50th, 99th, and 99.9th percentiles, the
+   * throughput, and the error count, for each kind of request and overall.
+   *
+   * @param generator the load generator, after its run
+   * @param elapsedNanos how long the measured part of the run took
+   */
+  private static void report(LoadGenerator generator, long elapsedNanos) {
+    double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    System.out.printf("%n%-8s %9s %9s %10s %10s %10s %10s %8s%n",
+      "request", "count", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+    long totalErrors = 0;
+    for (Operation operation : Operation.values()) {
+      long errors = generator.errors(operation);
+      totalErrors += errors;
+      printRow(operation.name().toLowerCase(Locale.ROOT), generator.latencies(operation), errors, elapsedSeconds);
+    }
+    printRow("all", generator.allLatencies(), totalErrors, elapsedSeconds);
+    System.out.printf("%nAt most %d requests were waiting for a response at once.%n", generator.maxInFlight());
+  }
+
+  private static void printRow(String name, LatencyHistogram histogram, long errors, double elapsedSeconds) {
+    if (histogram.count() == 0) {
+      return;
+    }
+    System.out.printf("%-8s %9d %9.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+      name,
+      histogram.count(),
+      histogram.count() / elapsedSeconds,
+      millis(histogram.valueAtQuantile(P50)),
+      millis(histogram.valueAtQuantile(P99)),
+      millis(histogram.valueAtQuantile(P999)),
+      millis(histogram.valueAtQuantile(1)),
+      errors);
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
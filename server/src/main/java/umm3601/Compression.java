@@ -0,0 +1,146 @@
+package umm3601;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+
+import io.javalin.compression.Brotli;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+
+/**
+ * How (and when) the server compresses its responses.
+ *
+ * Javalin compresses responses on the fly, using Brotli or gzip depending
+ * on what the client says it accepts. Responses smaller than
+ * `MIN_SIZE_FOR_COMPRESSION` aren't compressed at all, since they already
+ * fit in a packet or two and compressing them would just cost CPU time.
+ *
+ * Responses we cache (see `CachedResponse`) are compressed just once, with
+ * the methods here, and sent as is.
+ */
+public final class Compression {
+
+  /** The smallest response body (in bytes) worth compressing. */
+  public static final int MIN_SIZE_FOR_COMPRESSION = 1500;
+
+  public static final String GZIP = "gzip";
+  public static final String BROTLI = "br";
+
+  // Levels for compressing responses on the fly, which trade a little
+  // compression for a lot less CPU time per request.
+  private static final int DYNAMIC_GZIP_LEVEL = 6;
+  private static final int DYNAMIC_BROTLI_LEVEL = 4;
+
+  // Cached responses are compressed once and sent many times, so they're
+  // worth compressing harder.
+  private static final int CACHED_GZIP_LEVEL = Deflater.BEST_COMPRESSION;
+  private static final int CACHED_BROTLI_LEVEL = 8;
+
+  private Compression() {
+  }
+
+  /**
+   * Is Brotli available? It's implemented in native code, which only
+   * ships for some platforms; without it we just use gzip.
+   *
+   * @return true if responses can be Brotli compressed
+   */
+  public static boolean brotliAvailable() {
+    return Brotli4jLoader.isAvailable();
+  }
+
+  /**
+   * The compression strategy for Javalin to compress responses on the fly.
+   *
+   * @return Brotli and gzip compression (or just gzip if Brotli isn't
+   *   available) for responses of at least `MIN_SIZE_FOR_COMPRESSION` bytes
+   */
+  public static CompressionStrategy strategy() {
+    CompressionStrategy strategy = new CompressionStrategy(
+      brotliAvailable() ? new Brotli(DYNAMIC_BROTLI_LEVEL) : null,
+      new Gzip(DYNAMIC_GZIP_LEVEL));
+    strategy.setMinSizeForCompression(MIN_SIZE_FOR_COMPRESSION);
+    return strategy;
+  }
+
+  /**
+   * Pick the encoding to send a response in, given the request's
+   * `Accept-Encoding` header. Brotli is preferred to gzip when the
+   * client accepts both, since it compresses JSON noticeably better.
+   *
+   * @param acceptEncoding the value of the `Accept-Encoding` header (may be `null`)
+   * @return `br`, `gzip`, or `null` to send the response uncompressed
+   */
+  public static String negotiate(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    boolean brotli = false;
+    boolean gzip = false;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      if (isRefused(parts)) {
+        continue;
+      }
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      brotli |= name.equals(BROTLI) || name.equals("*");
+      gzip |= name.equals(GZIP) || name.equals("*");
+    }
+    if (brotli && brotliAvailable()) {
+      return BROTLI;
+    }
+    return gzip ? GZIP : null;
+  }
+
+  // Is this coding (e.g., `gzip;q=0`) given a weight of zero, meaning the
+  // client won't accept it?
+  private static boolean isRefused(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String param = parts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Double.parseDouble(param.substring(2)) <= 0;
+        } catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compress a (cached) response body with the given encoding.
+   *
+   * @param body the response body
+   * @param encoding `br` or `gzip`
+   * @return the compressed body
+   */
+  public static byte[] compress(byte[] body, String encoding) {
+    try {
+      if (BROTLI.equals(encoding)) {
+        return Encoder.compress(body, new Encoder.Parameters().setQuality(CACHED_BROTLI_LEVEL));
+      }
+      if (GZIP.equals(encoding)) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed) {
+          {
+            def.setLevel(CACHED_GZIP_LEVEL);
+          }
+        }) {
+          out.write(body);
+        }
+        return compressed.toByteArray();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+  }
+}
@@ -0,0 +1,151 @@
+package umm3601;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+
+/**
+ * The tunable settings for the server's connection to MongoDB, which are
+ * read from environment variables (see `fromEnvironment()`). Anything
+ * that isn't set keeps the MongoDB driver's default.
+ *
+ * @param maxPoolSize the most connections to keep open to each MongoDB server
+ * @param minPoolSize the fewest connections to keep open to each MongoDB server
+ * @param maxWaitMillis how long a request waits for a free connection before failing
+ * @param connectTimeoutMillis how long to wait for a new connection to open
+ * @param socketTimeoutMillis how long to wait for a reply from the database (0 for no limit)
+ * @param compressors the names of the wire compressors to offer the database, in order of preference
+ * @param readPreference where reads go by default
+ * @param requestReadPreference where the reads for `GET` requests go
+ * @param writeConcern how many of the database's servers have to acknowledge a write
+ */
+public record DatabaseOptions(
+    int maxPoolSize,
+    int minPoolSize,
+    long maxWaitMillis,
+    long connectTimeoutMillis,
+    long socketTimeoutMillis,
+    List<String> compressors,
+    ReadPreference readPreference,
+    ReadPreference requestReadPreference,
+    WriteConcern writeConcern) {
+
+  // The MongoDB driver's defaults.
+  private static final String DEFAULT_MAX_POOL_SIZE = "100";
+  private static final String DEFAULT_MIN_POOL_SIZE = "0";
+  private static final String DEFAULT_MAX_WAIT_MS = "120000";
+  private static final String DEFAULT_CONNECT_TIMEOUT_MS = "10000";
+  private static final String DEFAULT_SOCKET_TIMEOUT_MS = "0";
+
+  public DatabaseOptions {
+    compressors = List.copyOf(compressors);
+  }
+
+  /**
+   * Read the database options from these environment variables:
+   *
+   * - `MONGO_MAX_POOL_SIZE` and `MONGO_MIN_POOL_SIZE`: the size of the
+   *   connection pool (100 and 0).
+   * - `MONGO_MAX_WAIT_MS`: how long to wait for a free connection (120000).
+   * - `MONGO_CONNECT_TIMEOUT_MS` and `MONGO_SOCKET_TIMEOUT_MS`: how long to
+   *   wait to connect (10000), and for replies (0, no limit).
+   * - `MONGO_COMPRESSORS`: a comma separated list of `zstd`, `snappy`, and
+   *   `zlib` (none). Compression only pays off when the database is on
+   *   another machine.
+   * - `MONGO_READ_PREFERENCE`: where reads go (`primary`).
+   * - `MONGO_GET_READ_PREFERENCE`: where the reads for `GET` requests go
+   *   (`primary`). `secondaryPreferred` lets a replica set's secondaries
+   *   take some of the load, but a secondary can lag behind, so a client
+   *   might not see a hunt it has just added or changed. With a single
+   *   database server they're the same.
+   * - `MONGO_WRITE_CONCERN`: how many of the database's servers have to
+   *   acknowledge a write before it counts as done (`acknowledged`, just
+   *   the primary). `majority` means a write can't be lost if the primary
+   *   fails, at the cost of waiting for a secondary too.
+   *
+   * @return the options
+   */
+  public static DatabaseOptions fromEnvironment() {
+    return new DatabaseOptions(
+      Integer.parseInt(Main.getEnvOrDefault("MONGO_MAX_POOL_SIZE", DEFAULT_MAX_POOL_SIZE)),
+      Integer.parseInt(Main.getEnvOrDefault("MONGO_MIN_POOL_SIZE", DEFAULT_MIN_POOL_SIZE)),
+      Long.parseLong(Main.getEnvOrDefault("MONGO_MAX_WAIT_MS", DEFAULT_MAX_WAIT_MS)),
+      Long.parseLong(Main.getEnvOrDefault("MONGO_CONNECT_TIMEOUT_MS", DEFAULT_CONNECT_TIMEOUT_MS)),
+      Long.parseLong(Main.getEnvOrDefault("MONGO_SOCKET_TIMEOUT_MS", DEFAULT_SOCKET_TIMEOUT_MS)),
+      parseList(Main.getEnvOrDefault("MONGO_COMPRESSORS", "")),
+      ReadPreference.valueOf(Main.getEnvOrDefault("MONGO_READ_PREFERENCE", "primary")),
+      ReadPreference.valueOf(Main.getEnvOrDefault("MONGO_GET_READ_PREFERENCE", "primary")),
+      parseWriteConcern(Main.getEnvOrDefault("MONGO_WRITE_CONCERN", "acknowledged")));
+  }
+
+  /**
+   * Apply these options to the settings for a MongoDB client.
+   *
+   * @param builder the builder for the client's settings
+   * @return the same builder
+   */
+  public MongoClientSettings.Builder applyTo(MongoClientSettings.Builder builder) {
+    return builder
+      .applyToConnectionPoolSettings(pool -> pool
+        .maxSize(maxPoolSize)
+        .minSize(minPoolSize)
+        .maxWaitTime(maxWaitMillis, TimeUnit.MILLISECONDS))
+      .applyToSocketSettings(socket -> socket
+        .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+        .readTimeout(socketTimeoutMillis, TimeUnit.MILLISECONDS))
+      .compressorList(mongoCompressors())
+      .readPreference(readPreference)
+      .writeConcern(writeConcern);
+  }
+
+  /**
+   * Parse a write concern by name (e.g., `majority` or `w2`).
+   *
+   * @param name the name of the write concern
+   * @return the write concern
+   * @throws IllegalArgumentException if there's no write concern by that name
+   */
+  public static WriteConcern parseWriteConcern(String name) {
+    WriteConcern writeConcern = WriteConcern.valueOf(name);
+    if (writeConcern == null) {
+      throw new IllegalArgumentException("Unknown MongoDB write concern: " + name);
+    }
+    return writeConcern;
+  }
+
+  /**
+   * The compressors to offer the database, which uses the first one that
+   * it also supports.
+   *
+   * @return the compressors
+   * @throws IllegalArgumentException if a compressor isn't one MongoDB supports
+   */
+  List<MongoCompressor> mongoCompressors() {
+    List<MongoCompressor> mongoCompressors = new ArrayList<>();
+    for (String name : compressors) {
+      mongoCompressors.add(switch (name.toLowerCase(Locale.ROOT)) {
+        case "zstd" -> MongoCompressor.createZstdCompressor();
+        case "snappy" -> MongoCompressor.createSnappyCompressor();
+        case "zlib" -> MongoCompressor.createZlibCompressor();
+        default -> throw new IllegalArgumentException("Unknown MongoDB compressor: " + name);
+      });
+    }
+    return mongoCompressors;
+  }
+
+  private static List<String> parseList(String value) {
+    List<String> items = new ArrayList<>();
+    for (String item : value.split(",")) {
+      if (!item.isBlank()) {
+        items.add(item.trim());
+      }
+    }
+    return items;
+  }
+}
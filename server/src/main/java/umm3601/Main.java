@@ -1,10 +1,19 @@
 package umm3601;
 
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoDatabase;
 
 
+import umm3601.admission.AdmissionControl;
+import umm3601.admission.AdmissionLimits;
 import umm3601.hunt.HuntController;
+import umm3601.hunt.HuntReadModel;
+import umm3601.hunt.HuntSchema;
+import umm3601.hunt.HuntWriteBehind;
+import umm3601.metrics.ServerMetrics;
+import umm3601.progress.ProgressController;
+import umm3601.progress.ProgressTracker;
 
 public class Main {
 
@@ -13,19 +22,59 @@ public class Main {
     // if they aren't set, use the defaults of "localhost" and "dev".
     String mongoAddr = Main.getEnvOrDefault("MONGO_ADDR", "localhost");
     String databaseName = Main.getEnvOrDefault("MONGO_DB", "dev");
+    // Set `USE_VIRTUAL_THREADS` to "true" to handle each request on its own
+    // virtual thread instead of Jetty's fixed pool of platform threads.
+    boolean useVirtualThreads = Boolean.parseBoolean(Main.getEnvOrDefault("USE_VIRTUAL_THREADS", "false"));
+    // The connection pool, timeouts, and other settings for the database
+    // connection (see `DatabaseOptions` for the environment variables).
+    DatabaseOptions databaseOptions = DatabaseOptions.fromEnvironment();
+    // Set `STRICT_QUERY_PLANS` to "true" to refuse to start if any of the
+    // hunt listings would scan the whole collection or sort in memory,
+    // rather than just logging a warning.
+    boolean strictQueryPlans = Boolean.parseBoolean(Main.getEnvOrDefault("STRICT_QUERY_PLANS", "false"));
+    // Set `HUNT_WRITE_BEHIND` to "true" to acknowledge new hunts before
+    // they're written, and write them in batches in the background (see
+    // `HuntWriteBehind.Settings` for how many can be waiting, for how long,
+    // and with what write concern). Hunts still waiting are lost if the
+    // server dies.
+    HuntWriteBehind.Settings writeBehind = Boolean.parseBoolean(Main.getEnvOrDefault("HUNT_WRITE_BEHIND", "false"))
+      ? HuntWriteBehind.Settings.fromEnvironment(System.getenv())
+      : null;
+    // Set `HUNT_READ_MODEL` to "true" to keep all the hunts in memory, and
+    // answer `GET` requests from there rather than the database. The hunts
+    // are checked against the database every `HUNT_READ_MODEL_CHECK_SECONDS`.
+    HuntReadModel.Settings readModel = Boolean.parseBoolean(Main.getEnvOrDefault("HUNT_READ_MODEL", "false"))
+      ? HuntReadModel.Settings.fromEnvironment(System.getenv())
+      : null;
+    // How often the players' task completions, which are counted in memory,
+    // are written to the database (`PROGRESS_FLUSH_MS`).
+    ProgressTracker.Settings progress = ProgressTracker.Settings.fromEnvironment(System.getenv());
+
+    // The metrics for the server, which record how long requests and
+    // database commands take.
+    ServerMetrics metrics = new ServerMetrics();
 
     // Set up the MongoDB client
-    MongoClient mongoClient = Server.configureDatabase(mongoAddr);
+    MongoClient mongoClient = Server.configureDatabase(mongoAddr, databaseOptions, metrics);
     // Get the database
     MongoDatabase database = mongoClient.getDatabase(databaseName);
+    // Create the indexes the queries need, and check that they use them.
+    HuntSchema.bootstrap(database, strictQueryPlans);
 
     // The implementations of `Controller` used for the server. These will presumably
     // be one or more controllers, each of which implements the `Controller` interface.
     // You'll add your own controllers in `getControllers` as you create them.
-    final Controller[] controllers = Main.getControllers(database);
+    final Controller[] controllers = Main.getControllers(
+      database, databaseOptions.requestReadPreference(), writeBehind, readModel, progress);
+
+    // The rate limits for each client, and the limit on concurrent requests
+    // (see `AdmissionLimits` for the environment variables). The concurrency
+    // limit is lowered while MongoDB is slow.
+    AdmissionControl admission = new AdmissionControl(
+      AdmissionLimits.fromEnvironment(System.getenv()), metrics::recentMongoLatencyNanos);
 
     // Construct the server
-    Server server = new Server(mongoClient, controllers);
+    Server server = new Server(mongoClient, controllers, metrics, useVirtualThreads, admission);
 
     // Start the server
     server.startServer();
@@ -52,16 +101,25 @@ public class Main {
    *
    * @param database The MongoDB database object used by the controllers
    *               to access the database.
+   * @param requestReadPreference Where the controllers should send the reads
+   *               for `GET` requests.
+   * @param writeBehind How to write new hunts in the background, or `null`
+   *               to write them before responding.
+   * @param readModel How often to check the hunts kept in memory against
+   *               the database, or `null` to read hunts from the database.
+   * @param progress How often to write the players' progress to the database.
    * @return An array of implementations of `Controller` for the server.
    */
-  static Controller[] getControllers(MongoDatabase database) {
+  static Controller[] getControllers(MongoDatabase database, ReadPreference requestReadPreference,
+      HuntWriteBehind.Settings writeBehind, HuntReadModel.Settings readModel, ProgressTracker.Settings progress) {
     Controller[] controllers = new Controller[] {
       // You would add additional controllers here, as you create them,
       // although you need to make sure that each of your new controllers implements
       // the `Controller` interface.
       //
       // You can also remove this UserController once you don't need it.
-      new HuntController(database)
+      new HuntController(database, requestReadPreference, writeBehind, readModel),
+      new ProgressController(database, progress)
     };
     return controllers;
   }
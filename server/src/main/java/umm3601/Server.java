@@ -12,6 +12,8 @@ import org.bson.UuidRepresentation;
 import io.javalin.Javalin;
 import io.javalin.plugin.bundled.RouteOverviewPlugin;
 import io.javalin.http.InternalServerErrorResponse;
+import umm3601.admission.AdmissionControl;
+import umm3601.metrics.ServerMetrics;
 
 /**
  * The class used to configure and start a Javalin server.
@@ -28,15 +30,34 @@ public class Server {
   // for the server. This is used to add routes to the server.
   private Controller[] controllers;
 
+  // The `metrics` field collects request latencies and other metrics,
+  // which are served from `/metrics`.
+  private final ServerMetrics metrics;
+
+  // Whether requests should be handled on virtual threads rather than
+  // Jetty's (bounded) pool of platform threads.
+  private final boolean useVirtualThreads;
+
+  // The `admission` field decides which API requests the server takes on
+  // (rate limits for each client, and a limit on concurrent requests).
+  private final AdmissionControl admission;
+
   /**
    * Construct a `Server` object that we'll use (via `startServer()`) to configure
    * and start the server.
    *
    * @param mongoClient The MongoDB client object used to access to the database
    * @param controllers The implementations of `Controller` used for this server
+   * @param metrics The metrics to record the server's requests in
+   * @param useVirtualThreads Whether to handle requests on virtual threads
+   * @param admission The rate and concurrency limits for API requests
    */
-  public Server(MongoClient mongoClient, Controller[] controllers) {
+  public Server(MongoClient mongoClient, Controller[] controllers, ServerMetrics metrics, boolean useVirtualThreads,
+      AdmissionControl admission) {
     this.mongoClient = mongoClient;
+    this.metrics = metrics;
+    this.useVirtualThreads = useVirtualThreads;
+    this.admission = admission;
     // This is what is known as a "defensive copy". We make a copy of
     // the array so that if the caller modifies the array after passing
     // it in, we don't have to worry about it. If we didn't do this,
@@ -56,19 +77,28 @@ public class Server {
    *
    * This sets both the `mongoClient` and `database` fields
    * so they can be used when setting up the Javalin server.
+   * The connection pool, timeouts, compression, and read preference come
+   * from `options` (see `DatabaseOptions.fromEnvironment()`).
+   *
    * @param mongoAddr The address of the MongoDB server
+   * @param options The connection pool and other settings for the client
+   * @param metrics The metrics to record the timings of database commands,
+   *   and the connection pool's activity, in
    *
    * @return The MongoDB client object
    */
-  static MongoClient configureDatabase(String mongoAddr) {
+  static MongoClient configureDatabase(String mongoAddr, DatabaseOptions options, ServerMetrics metrics) {
     // Setup the MongoDB client object with the information we set earlier
-    MongoClient mongoClient = MongoClients.create(MongoClientSettings
-      .builder()
+    MongoClient mongoClient = MongoClients.create(options.applyTo(MongoClientSettings.builder())
       .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
       // Old versions of the mongodb-driver-sync package encoded UUID values (universally unique identifiers) in
       // a non-standard way. This option says to use the standard encoding.
       // See: https://studio3t.com/knowledge-base/articles/mongodb-best-practices-uuid-data/
       .uuidRepresentation(UuidRepresentation.STANDARD)
+      // Time every command we send to the database.
+      .addCommandListener(metrics.mongoCommandListener())
+      // Keep track of how busy the connection pool is.
+      .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(metrics.mongoConnectionPoolListener()))
       .build());
 
     return mongoClient;
@@ -82,9 +112,22 @@ public class Server {
    * JVM is shut down.
    */
   void startServer() {
+    startServer(SERVER_PORT);
+  }
+
+  /**
+   * Configure and start the server on the given port.
+   *
+   * The load tests (in `src/loadtest`) use this to start a server on any
+   * free port (0), which they stop when they're done.
+   *
+   * @param port The port to listen on, or 0 for any free port
+   * @return The started Javalin server instance
+   */
+  Javalin startServer(int port) {
     Javalin javalin = configureJavalin();
     setupRoutes(javalin);
-    javalin.start(SERVER_PORT);
+    return javalin.start(port);
   }
 
   /**
@@ -92,10 +135,16 @@ public class Server {
    *
    * - Adding a route overview plugin to make it easier to see what routes
    *   are available.
+   * - Optionally, handling requests on virtual threads.
+   * - Compressing large responses.
    * - Setting it up to shut down gracefully if it's killed or if the
    *   JVM is shut down.
    * - Setting up a handler for uncaught exceptions to return an HTTP 500
    *   error.
+   * - Installing the handlers that time every request, and the `/metrics`
+   *   endpoint that reports those timings.
+   * - Installing the handlers that turn away API requests over the rate
+   *   and concurrency limits (see `AdmissionControl`).
    *
    * @return The Javalin server instance
    */
@@ -113,10 +162,21 @@ public class Server {
      * `http://localhost:4567/api` shows all of the available endpoints and
      * what HTTP methods they use. (Replace `localhost` and `4567` with whatever server
      * and  port you're actually using, if they are different.)
+     *
+     * If `useVirtualThreads` is set, Jetty runs each request on its own
+     * virtual thread. All of our handlers block while they wait for MongoDB,
+     * and a blocked virtual thread doesn't tie up a platform thread, so
+     * a burst of slow database calls can't starve the server of threads.
+     *
+     * Responses are compressed with Brotli or gzip, whichever the client
+     * accepts, unless they're too small for it to be worth the CPU time
+     * (see `Compression`).
      */
-    Javalin server = Javalin.create(config ->
-      config.plugins.register(new RouteOverviewPlugin("/api"))
-    );
+    Javalin server = Javalin.create(config -> {
+      config.plugins.register(new RouteOverviewPlugin("/api"));
+      config.useVirtualThreads = useVirtualThreads;
+      config.compression.custom(Compression.strategy());
+    });
 
     // Configure the MongoDB client and the Javalin server to shut down gracefully.
     configureShutdowns(server);
@@ -134,6 +194,16 @@ public class Server {
       throw new InternalServerErrorResponse(e.toString());
     });
 
+    // Time every request, and report the results (along with the database
+    // and JVM metrics) at `/metrics` in the Prometheus text format.
+    metrics.install(server);
+
+    // Turn away API requests from clients over their rate limits (429), or
+    // once the server is handling as many requests as it can (503). This
+    // comes after the metrics, so the requests turned away are still
+    // counted in them.
+    admission.install(server);
+
     return server;
   }
 
@@ -0,0 +1,226 @@
+package umm3601.admission;
+
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+import io.javalin.http.HttpStatus;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * Decides which API requests the server takes on, so one misbehaving
+ * client can't tie up the database for everyone, and so that when the
+ * database is struggling we turn requests away quickly rather than
+ * letting them queue up.
+ *
+ * - Each client has a rate limit (a `TokenBucket`) for cheap requests,
+ *   like getting a single hunt, and a separate, smaller one for expensive
+ *   requests: filtered listings (which can be regular expression scans),
+ *   searches, and writes to the hunts (see `costOf()`). A client over its
+ *   limit gets a 429 (Too Many Requests).
+ * - There's a limit on how many API requests are handled at once, which
+ *   is lowered while MongoDB commands are slow. A request over the limit
+ *   gets a 503 (Service Unavailable).
+ *
+ * Both responses have a `Retry-After` header saying when to try again.
+ */
+public class AdmissionControl {
+
+  static final String API_PREFIX = "/api";
+  static final String RETRY_AFTER = "Retry-After";
+  static final String FORWARDED_FOR = "X-Forwarded-For";
+
+  // Requests that stay open for as long as the client is listening, which
+  // would otherwise use up the concurrency limit. They're still rate limited.
+  static final Set<String> LONG_LIVED_PATHS = Set.of("/api/hunts/events");
+
+  // Query parameters that filter a listing, making it expensive.
+  static final Set<String> FILTER_PARAMS = Set.of("title", "hostid", "description", "task");
+  static final String SEARCH_SUFFIX = "/search";
+
+  // Routes that change something, but only in memory, so they're as cheap
+  // as a read: completing a task just adds to a player's count, which is
+  // written to the database later, in batches.
+  static final List<Pattern> CHEAP_WRITE_PATHS = List.of(
+    Pattern.compile("/api/progress/[^/]+/players/[^/]+/completions"));
+
+  // How many clients' rate limits to keep track of before throwing away
+  // those of clients that have gone quiet.
+  static final int MAX_CLIENTS = 10_000;
+
+  // The request attribute set when a request counts against the concurrency limit.
+  private static final String ADMITTED = "admission.admitted";
+
+  /**
+   * How much a request costs, which decides which rate limit it counts against.
+   */
+  enum Cost {
+    CHEAP, EXPENSIVE
+  }
+
+  private final AdmissionLimits limits;
+  private final LongSupplier mongoLatencyNanos;
+  private final long slowMongoNanos;
+  // `null` if there's no limit on that kind of request.
+  private final RateLimiter cheapLimiter;
+  private final RateLimiter expensiveLimiter;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  /**
+   * Construct the admission control for a server.
+   *
+   * @param limits the rate and concurrency limits
+   * @param mongoLatencyNanos how long MongoDB commands have been taking lately, on average
+   */
+  public AdmissionControl(AdmissionLimits limits, LongSupplier mongoLatencyNanos) {
+    this.limits = limits;
+    this.mongoLatencyNanos = mongoLatencyNanos;
+    this.slowMongoNanos = TimeUnit.MILLISECONDS.toNanos(limits.slowMongoMillis());
+    this.cheapLimiter = limits.cheapPerSecond() > 0
+      ? new RateLimiter(limits.cheapPerSecond(), limits.cheapBurst(), MAX_CLIENTS)
+      : null;
+    this.expensiveLimiter = limits.expensivePerSecond() > 0
+      ? new RateLimiter(limits.expensivePerSecond(), limits.expensiveBurst(), MAX_CLIENTS)
+      : null;
+  }
+
+  /**
+   * Install the admission control on a Javalin server, as a before handler
+   * that turns away requests over the limits, and an after handler that
+   * counts the request as finished.
+   *
+   * @param server the Javalin server
+   */
+  public void install(Javalin server) {
+    server.before(this::admit);
+    server.after(this::release);
+  }
+
+  /**
+   * Let a request through, or turn it away if it's over the client's rate
+   * limit or the server is already handling as many requests as it can.
+   *
+   * @param ctx a Javalin HTTP context
+   * @throws HttpResponseException a 429 if the client is over its rate limit
+   * @throws ServiceUnavailableResponse if too many requests are already being handled
+   */
+  void admit(Context ctx) {
+    if (!ctx.path().startsWith(API_PREFIX)) {
+      return;
+    }
+
+    RateLimiter limiter = costOf(ctx) == Cost.EXPENSIVE ? expensiveLimiter : cheapLimiter;
+    if (limiter != null) {
+      long waitNanos = limiter.tryAcquire(clientOf(ctx), System.nanoTime());
+      if (waitNanos > 0) {
+        ctx.header(RETRY_AFTER, Long.toString(TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+        throw new HttpResponseException(HttpStatus.TOO_MANY_REQUESTS.getCode(),
+          "Too many requests; please slow down.");
+      }
+    }
+
+    if (LONG_LIVED_PATHS.contains(ctx.path())) {
+      return;
+    }
+    if (inFlight.incrementAndGet() > concurrencyLimit()) {
+      inFlight.decrementAndGet();
+      ctx.header(RETRY_AFTER, "1");
+      throw new ServiceUnavailableResponse("The server is busy; please try again in a moment.");
+    }
+    ctx.attribute(ADMITTED, true);
+  }
+
+  /**
+   * Count a request as finished, if it was counted against the
+   * concurrency limit.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  void release(Context ctx) {
+    if (Boolean.TRUE.equals(ctx.attribute(ADMITTED))) {
+      ctx.attribute(ADMITTED, false);
+      inFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * The most requests to handle at once right now: fewer while MongoDB is
+   * slow, since more requests would just wait longer for it.
+   *
+   * @return the concurrency limit
+   */
+  int concurrencyLimit() {
+    return mongoLatencyNanos.getAsLong() > slowMongoNanos
+      ? limits.degradedConcurrentRequests()
+      : limits.maxConcurrentRequests();
+  }
+
+  int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * How much a request costs, by its route:
+   *
+   * - CORS preflight (`OPTIONS`) requests never reach the database, so
+   *   they're cheap.
+   * - Reads (`GET` and `HEAD`) are cheap, except for searches and
+   *   filtered listings.
+   * - Other requests write to the database, so they're expensive, except
+   *   for the `CHEAP_WRITE_PATHS`, which are only written in memory.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the cost of the request
+   */
+  static Cost costOf(Context ctx) {
+    HandlerType method = ctx.method();
+    if (method == HandlerType.OPTIONS) {
+      return Cost.CHEAP;
+    }
+    if (method != HandlerType.GET && method != HandlerType.HEAD) {
+      for (Pattern path : CHEAP_WRITE_PATHS) {
+        if (path.matcher(ctx.path()).matches()) {
+          return Cost.CHEAP;
+        }
+      }
+      return Cost.EXPENSIVE;
+    }
+    if (ctx.path().endsWith(SEARCH_SUFFIX)) {
+      return Cost.EXPENSIVE;
+    }
+    for (String param : ctx.queryParamMap().keySet()) {
+      if (FILTER_PARAMS.contains(param)) {
+        return Cost.EXPENSIVE;
+      }
+    }
+    return Cost.CHEAP;
+  }
+
+  /**
+   * Who made a request: the address it came from or, if we trust our proxy
+   * to set it, the address the proxy added to the end of `X-Forwarded-For`.
+   * (Anything before that in the header came from the client, so could
+   * be anything.)
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the client's address
+   */
+  String clientOf(Context ctx) {
+    String forwardedFor = limits.trustForwardedFor() ? ctx.header(FORWARDED_FOR) : null;
+    if (forwardedFor != null) {
+      String[] hops = forwardedFor.split(",");
+      String client = hops[hops.length - 1].trim();
+      if (!client.isEmpty()) {
+        return client;
+      }
+    }
+    return ctx.ip();
+  }
+}
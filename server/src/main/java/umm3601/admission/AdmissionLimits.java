@@ -0,0 +1,69 @@
+package umm3601.admission;
+
+import java.util.Map;
+
+/**
+ * The limits `AdmissionControl` enforces, which are read from environment
+ * variables (see `fromEnvironment()`).
+ *
+ * @param cheapPerSecond how many cheap requests a second each client can make (0 for no limit)
+ * @param cheapBurst how large a burst of cheap requests each client can make
+ * @param expensivePerSecond how many expensive requests a second each client can make (0 for no limit)
+ * @param expensiveBurst how large a burst of expensive requests each client can make
+ * @param maxConcurrentRequests the most API requests to handle at once
+ * @param degradedConcurrentRequests the most API requests to handle at once while MongoDB is slow
+ * @param slowMongoMillis how slow (on average, lately) MongoDB commands have to be to count as slow
+ * @param trustForwardedFor whether to identify clients by the `X-Forwarded-For` header our proxy adds
+ */
+public record AdmissionLimits(
+    double cheapPerSecond,
+    int cheapBurst,
+    double expensivePerSecond,
+    int expensiveBurst,
+    int maxConcurrentRequests,
+    int degradedConcurrentRequests,
+    long slowMongoMillis,
+    boolean trustForwardedFor) {
+
+  private static final String DEFAULT_CHEAP_PER_SECOND = "50";
+  private static final String DEFAULT_CHEAP_BURST = "100";
+  private static final String DEFAULT_EXPENSIVE_PER_SECOND = "5";
+  private static final String DEFAULT_EXPENSIVE_BURST = "20";
+  private static final String DEFAULT_MAX_CONCURRENT_REQUESTS = "200";
+  private static final String DEFAULT_DEGRADED_CONCURRENT_REQUESTS = "20";
+  private static final String DEFAULT_SLOW_MONGO_MS = "250";
+
+  /**
+   * Read the limits from these environment variables:
+   *
+   * - `RATE_LIMIT_CHEAP_PER_SECOND` and `RATE_LIMIT_CHEAP_BURST`: the rate
+   *   limit for each client's cheap requests, like getting a single hunt
+   *   (50 a second, in bursts of up to 100).
+   * - `RATE_LIMIT_EXPENSIVE_PER_SECOND` and `RATE_LIMIT_EXPENSIVE_BURST`:
+   *   the rate limit for each client's expensive requests, like filtered
+   *   listings and searches (5 a second, in bursts of up to 20).
+   * - `MAX_CONCURRENT_REQUESTS`: the most API requests to handle at once
+   *   (200).
+   * - `DEGRADED_CONCURRENT_REQUESTS` and `SLOW_MONGO_MS`: the most API
+   *   requests to handle at once (20) once MongoDB commands have been
+   *   taking more than `SLOW_MONGO_MS` milliseconds (250) on average.
+   * - `TRUST_FORWARDED_FOR`: whether clients are identified by the
+   *   `X-Forwarded-For` header rather than the address the request came
+   *   from (false). Only turn this on when the server is behind a proxy
+   *   that sets the header, since clients can set it to anything.
+   *
+   * @param env the environment variables
+   * @return the limits
+   */
+  public static AdmissionLimits fromEnvironment(Map<String, String> env) {
+    return new AdmissionLimits(
+      Double.parseDouble(env.getOrDefault("RATE_LIMIT_CHEAP_PER_SECOND", DEFAULT_CHEAP_PER_SECOND)),
+      Integer.parseInt(env.getOrDefault("RATE_LIMIT_CHEAP_BURST", DEFAULT_CHEAP_BURST)),
+      Double.parseDouble(env.getOrDefault("RATE_LIMIT_EXPENSIVE_PER_SECOND", DEFAULT_EXPENSIVE_PER_SECOND)),
+      Integer.parseInt(env.getOrDefault("RATE_LIMIT_EXPENSIVE_BURST", DEFAULT_EXPENSIVE_BURST)),
+      Integer.parseInt(env.getOrDefault("MAX_CONCURRENT_REQUESTS", DEFAULT_MAX_CONCURRENT_REQUESTS)),
+      Integer.parseInt(env.getOrDefault("DEGRADED_CONCURRENT_REQUESTS", DEFAULT_DEGRADED_CONCURRENT_REQUESTS)),
+      Long.parseLong(env.getOrDefault("SLOW_MONGO_MS", DEFAULT_SLOW_MONGO_MS)),
+      Boolean.parseBoolean(env.getOrDefault("TRUST_FORWARDED_FOR", "false")));
+  }
+}
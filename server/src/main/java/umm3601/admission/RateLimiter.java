@@ -0,0 +1,77 @@
+package umm3601.admission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A rate limit for each client: every client gets its own `TokenBucket`,
+ * all with the same rate and capacity.
+ *
+ * The buckets are kept in a `ConcurrentHashMap`, so looking up a client's
+ * bucket doesn't lock, and taking a token doesn't either. Once there are
+ * more than `maxClients` buckets, the full ones (clients that haven't made
+ * a request for a while) are thrown away, at most once a second; a full
+ * bucket is the same as a new one, so no client gains anything from this.
+ */
+public class RateLimiter {
+
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final double tokensPerSecond;
+  private final int capacity;
+  private final int maxClients;
+
+  private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+  /**
+   * Construct a rate limiter.
+   *
+   * @param tokensPerSecond how many requests a second each client can make
+   * @param capacity how large a burst of requests each client can make
+   * @param maxClients how many clients to keep track of before throwing away idle ones
+   */
+  public RateLimiter(double tokensPerSecond, int capacity, int maxClients) {
+    this.tokensPerSecond = tokensPerSecond;
+    this.capacity = capacity;
+    this.maxClients = maxClients;
+  }
+
+  /**
+   * Let a client make a request, if it's within its rate limit.
+   *
+   * @param client the client making the request
+   * @param nowNanos the current `System.nanoTime()`
+   * @return 0 if the request is allowed, otherwise how many nanoseconds
+   *   until the client can make another one
+   */
+  public long tryAcquire(String client, long nowNanos) {
+    if (buckets.size() > maxClients) {
+      sweep(nowNanos);
+    }
+    return buckets
+      .computeIfAbsent(client, key -> new TokenBucket(tokensPerSecond, capacity, nowNanos))
+      .tryAcquire(nowNanos);
+  }
+
+  /**
+   * Throw away the full buckets, unless that was done less than a second
+   * ago (so a server with lots of active clients doesn't do it on every
+   * request).
+   *
+   * @param nowNanos the current `System.nanoTime()`
+   */
+  void sweep(long nowNanos) {
+    long last = lastSweep.get();
+    if (nowNanos - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, nowNanos)) {
+      return;
+    }
+    buckets.values().removeIf(bucket -> bucket.isFull(nowNanos));
+  }
+
+  int clientCount() {
+    return buckets.size();
+  }
+}
@@ -0,0 +1,78 @@
+package umm3601.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket: it holds up to `capacity` tokens, gains `tokensPerSecond`
+ * tokens a second, and each request takes one token (or is refused if
+ * there aren't any).
+ *
+ * Rather than a token count and a last-refill time, which would have to be
+ * updated together under a lock, the whole state is one number: the time
+ * at which the bucket will be full again (as in the "generic cell rate
+ * algorithm"). Taking a token pushes that time one token's worth into the
+ * future, and the bucket is empty when it's `capacity` tokens' worth in
+ * the future. So taking a token is a single compare-and-set, and many
+ * request threads can share a bucket without locking.
+ */
+public final class TokenBucket {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  // How long it takes to gain one token.
+  private final long nanosPerToken;
+  // How far in the future the bucket can be full again before it's empty.
+  private final long capacityNanos;
+  // The `System.nanoTime()` at which the bucket will be full again.
+  private final AtomicLong fullAt;
+
+  /**
+   * Construct a full bucket.
+   *
+   * @param tokensPerSecond how fast tokens are added
+   * @param capacity the most tokens the bucket can hold (the largest burst of requests)
+   * @param nowNanos the current `System.nanoTime()`
+   */
+  public TokenBucket(double tokensPerSecond, int capacity, long nowNanos) {
+    if (tokensPerSecond <= 0 || capacity < 1) {
+      throw new IllegalArgumentException("A token bucket needs a positive rate and capacity");
+    }
+    nanosPerToken = Math.max(1, (long) (NANOS_PER_SECOND / tokensPerSecond));
+    capacityNanos = nanosPerToken * capacity;
+    fullAt = new AtomicLong(nowNanos);
+  }
+
+  /**
+   * Take a token from the bucket, if there is one.
+   *
+   * @param nowNanos the current `System.nanoTime()`
+   * @return 0 if a token was taken, otherwise how many nanoseconds until
+   *   there will be one
+   */
+  public long tryAcquire(long nowNanos) {
+    while (true) {
+      long current = fullAt.get();
+      // A bucket that filled up a while ago doesn't keep gaining tokens.
+      long next = Math.max(current, nowNanos) + nanosPerToken;
+      long wait = next - nowNanos - capacityNanos;
+      if (wait > 0) {
+        return wait;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Is the bucket full? A full bucket is just the same as a new one, so it
+   * can be thrown away and made again when it's needed.
+   *
+   * @param nowNanos the current `System.nanoTime()`
+   * @return true if the bucket is full
+   */
+  public boolean isFull(long nowNanos) {
+    return fullAt.get() - nowNanos <= 0;
+  }
+}
@@ -0,0 +1,126 @@
+package umm3601.hunt;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import umm3601.Compression;
+
+/**
+ * An already serialized JSON response body, ready to be sent as is,
+ * along with a strong ETag computed from its bytes.
+ *
+ * Clients that send the ETag back in an `If-None-Match` header can then
+ * be told their copy is still good (a 304) without sending the body again.
+ *
+ * The body is also compressed (at most once per encoding, the first time
+ * a client asks for it), so a popular cached response is compressed once
+ * rather than on every request. Since the compressed bodies live and die
+ * with the cached response, they're thrown away whenever it is.
+ */
+public final class CachedResponse {
+
+  private final byte[] body;
+  private final String etag;
+  private final Map<String, byte[]> compressedBodies = new ConcurrentHashMap<>();
+
+  private CachedResponse(byte[] body, String etag) {
+    this.body = body;
+    this.etag = etag;
+  }
+
+  /**
+   * Wrap a serialized response body, computing its ETag.
+   *
+   * @param body the serialized response body
+   * @return the cacheable response
+   */
+  public static CachedResponse of(byte[] body) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+      return new CachedResponse(body, "\"" + HexFormat.of().formatHex(digest) + "\"");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The serialized body. This is shared, not copied, so it must not be
+   * modified.
+   *
+   * @return the serialized response body
+   */
+  public byte[] getBody() {
+    return body;
+  }
+
+  /**
+   * The body compressed with the given encoding. This is compressed the
+   * first time it's asked for, and shared (not copied) after that, so it
+   * must not be modified.
+   *
+   * @param encoding the content encoding (`br` or `gzip`), or `null` for
+   *   the uncompressed body
+   * @return the (compressed) response body
+   */
+  public byte[] getBody(String encoding) {
+    if (encoding == null) {
+      return body;
+    }
+    return compressedBodies.computeIfAbsent(encoding, enc -> Compression.compress(body, enc));
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * The ETag for the body in the given encoding. Each encoding of the body
+   * is a different sequence of bytes, so each gets its own (strong) ETag,
+   * made by tagging the encoding onto the uncompressed body's ETag.
+   *
+   * @param encoding the content encoding, or `null` for the uncompressed body
+   * @return the ETag for that encoding of the body
+   */
+  public String getEtag(String encoding) {
+    if (encoding == null) {
+      return etag;
+    }
+    return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+  }
+
+  /**
+   * Does the client already have this response, according to the value
+   * of its `If-None-Match` header? The header holds either `*` or a
+   * comma separated list of ETags, possibly marked weak (`W/`); for a GET
+   * a weak match is good enough. The ETag of any encoding of the body
+   * matches, since they all decode to the same thing.
+   *
+   * @param ifNoneMatch the value of the request's `If-None-Match` header (may be `null`)
+   * @return true if the client's copy matches this response
+   */
+  public boolean matches(String ifNoneMatch) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      String trimmed = tag.trim();
+      if (trimmed.startsWith("W/")) {
+        trimmed = trimmed.substring(2);
+      }
+      if (trimmed.equals("*") || trimmed.equals(etag) || isEncodedEtag(trimmed)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Is this our ETag, tagged with an encoding (see `getEtag(String)`)?
+  private boolean isEncodedEtag(String tag) {
+    String prefix = etag.substring(0, etag.length() - 1) + "-";
+    return tag.startsWith(prefix) && tag.endsWith("\"");
+  }
+}
@@ -1,8 +1,13 @@
 package umm3601.hunt;
 
+import java.util.List;
+import java.util.Locale;
+
 import org.mongojack.Id;
 import org.mongojack.ObjectId;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 // There are two examples of suppressing CheckStyle
 // warnings in this class. If you create new classes
 // that mirror data in MongoDB and that will be managed
@@ -19,8 +24,16 @@ import org.mongojack.ObjectId;
 // check in CheckStyle so that we don't get a failed
 // build when Gradle runs CheckStyle.
 @SuppressWarnings({"VisibilityModifier"})
+// `titleLower` is computed from `title`, and is only there for Mongo's
+// sake (where it's indexed), so it's ignored both when reading a hunt and
+// when sending one to a client. Only the mapper MongoJack stores hunts
+// with writes it out (see `HuntSchema.collection()`).
+@JsonIgnoreProperties({ Hunt.TITLE_LOWER_KEY })
 public class Hunt {
 
+  static final String TITLE_LOWER_KEY = "titleLower";
+  static final String VERSION_KEY = "version";
+
   @ObjectId @Id
   // By default Java field names shouldn't start with underscores.
   // Here, though, we *have* to use the name `_id` to match the
@@ -31,7 +44,28 @@ public class Hunt {
   public String description;
   public String title;
   public String task;
+  // The hunt's tasks, in order. Every new hunt has a `task`, and its list
+  // starts out with just that one; after that the host can add, rename,
+  // move, and remove tasks (see `HuntController.addTask()` and friends).
+  // `task` is always the name of the first task: every change to the list
+  // updates it (`HuntController.SYNC_TASK`), and a `PATCH` of `task`
+  // renames the first task (`HuntUpdate.toPipeline()`). It's kept so the
+  // `?task=` filter and old clients still work.
+  public List<HuntTask> tasks;
+  // Bumped by every `PATCH`, so an update can say which version of the
+  // hunt it was made to. Hunts that have never been updated (including
+  // those stored without a version) are at version 0.
+  public long version;
 
+  /**
+   * The title in lowercase. This is stored alongside the title so that
+   * case-insensitive title lookups can use an ordinary index.
+   *
+   * @return the lowercase title, or `null` if there's no title
+   */
+  public String getTitleLower() {
+    return title == null ? null : title.toLowerCase(Locale.ROOT);
+  }
 
   @Override
   public boolean equals(Object obj) {
@@ -0,0 +1,44 @@
+package umm3601.hunt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a bulk import of hunts (`POST /api/hunts/bulk`): how many
+ * hunts were added, how many weren't, and for each hunt in the request
+ * (identified by its position) either its new id or what went wrong.
+ */
+// The fields are public so Jackson can serialize them, just as in `Hunt`.
+@SuppressWarnings({"VisibilityModifier"})
+public class HuntBulkResult {
+
+  /**
+   * What happened to a single hunt in the request.
+   */
+  @SuppressWarnings({"VisibilityModifier"})
+  public static class Item {
+    public int index;
+    public String id;
+    public String error;
+  }
+
+  public int inserted;
+  public int failed;
+  public List<Item> results = new ArrayList<>();
+
+  void addSuccess(int index, String id) {
+    Item item = new Item();
+    item.index = index;
+    item.id = id;
+    results.add(item);
+    inserted++;
+  }
+
+  void addFailure(int index, String error) {
+    Item item = new Item();
+    item.index = index;
+    item.error = error;
+    results.add(item);
+    failed++;
+  }
+}
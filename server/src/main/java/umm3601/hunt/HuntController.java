@@ -1,150 +1,955 @@
 package umm3601.hunt;
 
+import static com.mongodb.client.model.Filters.all;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
-import static com.mongodb.client.model.Filters.regex;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.size;
+import static com.mongodb.client.model.Filters.text;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
+import org.bson.BsonDocument;
 import org.bson.Document;
-import org.bson.UuidRepresentation;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.mongojack.JacksonMongoCollection;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.Sorts;
-import com.mongodb.client.result.DeleteResult;
 
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ConflictResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.sse.SseClient;
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+import io.javalin.validation.BodyValidator;
+import umm3601.Compression;
 import umm3601.Controller;
 
 public class HuntController implements Controller {
 
   private static final String API_HUNTS = "/api/hunts";
   private static final String API_HUNT_BY_ID = "/api/hunts/{id}";
+  private static final String API_HUNT_SEARCH = "/api/hunts/search";
+  private static final String API_HUNTS_BULK = "/api/hunts/bulk";
+  private static final String API_HUNTS_BATCH_GET = "/api/hunts/batch-get";
+  private static final String API_HUNTS_BATCH_DELETE = "/api/hunts/batch-delete";
+  private static final String API_HUNT_CACHE_STATS = "/api/hunts/cache/stats";
+  private static final String API_HUNT_EVENTS = "/api/hunts/events";
+  private static final String API_HUNT_TASKS = "/api/hunts/{id}/tasks";
+  private static final String API_HUNT_TASK_BY_ID = "/api/hunts/{id}/tasks/{taskId}";
 
   static final String HOST_KEY = "hostid";
   static final String TITLE_KEY = "title";
   static final String TASK_KEY = "task";
+  static final String TASKS_KEY = "tasks";
+  static final String TASK_NAMES_KEY = TASKS_KEY + "." + HuntTask.NAME_KEY;
   static final String DESCRIPTION_KEY = "description";
   static final String SORT_ORDER_KEY = "sortorder";
+  static final String SORT_BY_KEY = "sortby";
+  static final String STREAM_KEY = "stream";
+  static final String LIMIT_KEY = "limit";
+  static final String PAGE_TOKEN_KEY = "pageToken";
+  static final String MATCH_KEY = "match";
+  static final String SEARCH_KEY = "q";
+  static final String SCORE_KEY = "score";
+  static final String POSITION_KEY = "position";
+
+  static final String MATCH_EXACT = "exact";
+
+  static final int MAX_PAGE_SIZE = 500;
+  // How many hunts a search sends, unless it asks (with `limit`) for a
+  // different number, up to `MAX_PAGE_SIZE`.
+  static final int DEFAULT_SEARCH_LIMIT = 50;
+
+  static final String FIELDS_KEY = "fields";
+  static final String CHUNK_SIZE_KEY = "chunkSize";
+  static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+  static final int MAX_BULK_CHUNK_SIZE = 5000;
+
+  // The most ids a single batch get or delete can ask for.
+  static final int MAX_BATCH_SIZE = 1000;
+
+  // How many serialized hunts `getHunt` keeps around, and for how long.
+  static final int HUNT_CACHE_SIZE = 1000;
+  static final Duration HUNT_CACHE_TTL = Duration.ofMinutes(5);
+
+  // How many serialized listings `getHunts` keeps around, and for how long.
+  static final int LISTING_CACHE_SIZE = 200;
+  static final Duration LISTING_CACHE_TTL = Duration.ofMinutes(1);
+
+  static final String STREAM_NDJSON = "ndjson";
+  static final String STREAM_ARRAY = "array";
+  static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+  // The fields a paginated listing can be sorted by (the single field
+  // `HuntSchema.SORT_ORDERS`), along with how to read that field's value
+  // out of a `Hunt` when building the token for the next page.
+  static final Map<String, Function<Hunt, String>> PAGEABLE_FIELDS = Map.of(
+    TITLE_KEY, hunt -> hunt.title,
+    HOST_KEY, hunt -> hunt.hostid);
+
+  /**
+   * A rule every new hunt has to follow, and the error message for
+   * a hunt that breaks it.
+   */
+  record HuntRule(Predicate<Hunt> check, String message) {
+  }
+
+  // The rules checked (in order) for every new hunt, whether it's added
+  // on its own or in bulk.
+  static final List<HuntRule> NEW_HUNT_RULES = List.of(
+    new HuntRule(hunt -> hunt.title != null && hunt.title.length() > 0, "Hunt must have a non-empty hunt title"),
+    new HuntRule(hunt -> hunt.hostid != null && hunt.hostid.length() > 0, "Hunt must have a non-empty host id"),
+    new HuntRule(hunt -> hunt.description != null && hunt.description.length() > 0,
+      "Hunt must have a non-empty description"),
+    new HuntRule(hunt -> hunt.task != null && hunt.task.length() > 0, "Hunt must have a non-empty task"),
+    new HuntRule(hunt -> hunt._id == null || ObjectId.isValid(hunt._id),
+      "A new hunt's id, if it has one, must be a legal Mongo Object ID"),
+    new HuntRule(hunt -> hunt.tasks == null || hunt.tasks.stream().allMatch(HuntController::isLegalTask),
+      "Every task in a hunt's list must have a non-empty name"),
+    new HuntRule(hunt -> hunt.tasks == null || hunt.tasks.isEmpty() || !isLegalTask(hunt.tasks.get(0))
+      || hunt.tasks.get(0).name.equals(hunt.task),
+      "A hunt's `task` must be the name of the first task in its list"));
+
+  private static boolean isLegalTask(HuntTask task) {
+    return task != null && task.name != null && task.name.length() > 0;
+  }
+
+  // In a pipeline update, the hunt's next version (hunts stored without
+  // a version are at version 0).
+  static final Document NEXT_VERSION = new Document("$add", List.of(
+    new Document("$ifNull", List.of("$" + Hunt.VERSION_KEY, 0L)), 1L));
+
+  // The last stage of every update to a hunt's tasks: keep `task` the
+  // name of the first task (see `Hunt.tasks`), and bump the version, as
+  // `updateHunt` does.
+  static final Document SYNC_TASK = new Document("$set", new Document()
+    .append(TASK_KEY, new Document("$ifNull", List.of(
+      new Document("$arrayElemAt", List.of("$" + TASK_NAMES_KEY, 0)), "$" + TASK_KEY)))
+    .append(Hunt.VERSION_KEY, NEXT_VERSION));
+
+  /**
+   * A value to use as it is in a pipeline update, even if it's a string
+   * that starts with `$` (which would otherwise be read as a field).
+   *
+   * @param value the value
+   * @return a `$literal` expression for the value
+   */
+  static Document literal(Object value) {
+    return new Document("$literal", value);
+  }
 
   private final JacksonMongoCollection<Hunt> huntCollection;
 
+  // The same collection, for the reads behind `GET` requests, which go to
+  // the primary unless secondary reads are turned on. Reads whose results get cached
+  // (and writes) still use `huntCollection`, so a lagging secondary can't
+  // leave stale hunts in the caches after a write.
+  private final JacksonMongoCollection<Hunt> huntReads;
+
+  // Serialized hunts, keyed by their `_id`.
+  private final LruCache<String, CachedResponse> huntCache = new LruCache<>(HUNT_CACHE_SIZE, HUNT_CACHE_TTL);
+
+  // Serialized listings, keyed by `listingCacheKey()`.
+  private final LruCache<String, CachedResponse> listingCache =
+    new LruCache<>(LISTING_CACHE_SIZE, LISTING_CACHE_TTL);
+
+  // The reads going for whole hunts (keyed by `_id`) and for listings
+  // (keyed by `listingCacheKey()`), which concurrent cache misses for the
+  // same hunt or listing share rather than each going to the database.
+  private final SingleFlight<String, CachedResponse> huntLoads = new SingleFlight<>();
+  private final SingleFlight<String, CachedResponse> listingLoads = new SingleFlight<>();
+
+  // Bumped on every write to the hunts, which retires all cached listings.
+  private final AtomicLong listingGeneration = new AtomicLong();
+
+  // Bumped on every write to the hunts, before their cached copies are
+  // invalidated. A hunt that was read before a write only gets cached if
+  // no write has happened since the read, so a stale copy can't get into
+  // the cache after the invalidation meant to remove it.
+  private final AtomicLong huntGeneration = new AtomicLong();
+
+  // The hunts being added and deleted, for `/api/hunts/events`.
+  private final HuntEventFeed huntEvents;
+
+  // Writes new hunts in the background, or `null` if they're written
+  // before the request that adds them returns.
+  private final HuntWriteBehind huntWrites;
+
+  // All the hunts, in memory, which `GET` requests are answered from, or
+  // `null` if they're read from the database.
+  private final HuntReadModel huntModel;
+
+  /**
+   * Construct a controller for hunts, whose `GET` requests read from
+   * the primary, so they always see the latest writes.
+   *
+   * @param database the database containing hunt data
+   */
+  public HuntController(MongoDatabase database) {
+    this(database, ReadPreference.primary());
+  }
+
+  /**
+   * Construct a controller for hunts, which writes new hunts before the
+   * requests that add them return.
+   *
+   * @param database the database containing hunt data
+   * @param requestReadPreference where to send the (uncached) reads for `GET` requests
+   */
+  public HuntController(MongoDatabase database, ReadPreference requestReadPreference) {
+    this(database, requestReadPreference, null, null);
+  }
+
+  /**
+   * Construct a controller for hunts, which reads hunts from the database.
+   *
+   * @param database the database containing hunt data
+   * @param requestReadPreference where to send the (uncached) reads for `GET` requests
+   * @param writeBehind how to write new hunts in the background, or `null`
+   *   to write them before the requests that add them return
+   */
+  public HuntController(MongoDatabase database, ReadPreference requestReadPreference,
+      HuntWriteBehind.Settings writeBehind) {
+    this(database, requestReadPreference, writeBehind, null);
+  }
+
  /**
    * Construct a controller for hunts.
    *
    * @param database the database containing hunt data
+   * @param requestReadPreference where to send the (uncached) reads for `GET` requests
+   * @param writeBehind how to write new hunts in the background, or `null`
+   *   to write them before the requests that add them return
+   * @param readModel how often to check the hunts kept in memory against
+   *   the database, or `null` to read hunts from the database instead
    */
 
-public HuntController(MongoDatabase database) {
-  huntCollection = JacksonMongoCollection.builder().build(
-  database,
-  "hunts",
-  Hunt.class,
-  UuidRepresentation.STANDARD);
+public HuntController(MongoDatabase database, ReadPreference requestReadPreference, HuntWriteBehind.Settings writeBehind,
+    HuntReadModel.Settings readModel) {
+  huntCollection = HuntSchema.collection(database);
+  huntReads = HuntSchema.collection(database.withReadPreference(requestReadPreference));
+  huntEvents = new HuntEventFeed(huntCollection);
+  if (writeBehind == null) {
+    huntWrites = null;
+  } else {
+    huntWrites = new HuntWriteBehind(huntCollection, writeBehind, this::huntsWritten);
+    huntWrites.start();
+  }
+  if (readModel == null) {
+    huntModel = null;
+  } else {
+    // This loads all the hunts, before the server starts taking requests.
+    huntModel = new HuntReadModel(huntCollection, readModel, this::huntsReloaded);
+    huntModel.start();
+  }
+
+  // The indexes these queries rely on are created (and checked) when the
+  // server starts, by `HuntSchema.bootstrap()`.
 }
 
   /**
    * Set the JSON body of the response to be the single hunt
    * specified by the `id` parameter in the request
    *
+   * Serialized hunts are kept in a small cache, so repeated requests for
+   * a popular hunt don't each go to the database. The response carries
+   * an ETag, and if the request's `If-None-Match` header shows the client
+   * already has the current version, we just send a 304 (Not Modified).
+   * When a hunt isn't cached, all the requests for it that arrive while
+   * it's being read share that one read (and serialization).
+   *
+   * With a `fields` query parameter, only those fields of the hunt are
+   * fetched and sent. Those responses aren't cached.
+   *
+   * With the read model on, the hunt comes from memory rather than the
+   * database.
+   *
    * @param ctx a Javalin HTTP context
    */
 
 public void getHunt(Context ctx) {
   String id = ctx.pathParam("id");
-  Hunt hunt;
-  try {
-    hunt = huntCollection.find(eq("_id", new ObjectId(id))).first();
+  HuntProjection projection = HuntProjection.parse(ctx.queryParam(FIELDS_KEY));
+  if (projection != null) {
+    sendCachedResponse(ctx, CachedResponse.of(
+      projection.toJson(findHunt(id, projection.toBson())).getBytes(StandardCharsets.UTF_8)));
+    return;
+  }
 
-  } catch (IllegalArgumentException e) {
-    throw new BadRequestResponse("The requested hunt id wasn't a legal Mongo Object ID.");
+  CachedResponse response = huntCache.get(id);
+  if (response == null) {
+    response = huntLoads.load(id, () -> {
+      long generation = huntGeneration.get();
+      Hunt hunt = findHunt(id, null);
+      CachedResponse loaded =
+        CachedResponse.of(ctx.jsonMapper().toJsonString(hunt, Hunt.class).getBytes(StandardCharsets.UTF_8));
+      huntCache.putIf(id, loaded, () -> huntGeneration.get() == generation);
+      return loaded;
+    });
   }
-  if (hunt == null) {
-    throw new NotFoundResponse("The requested hunt was not found");
-  } else {
-    ctx.json(hunt);
+
+  sendCachedResponse(ctx, response);
+}
+
+  /**
+   * Get the hunt with the given id from the database.
+   *
+   * @param id the hunt's id
+   * @param projection the fields to fetch, or `null` for all of them
+   * @return the hunt
+   * @throws BadRequestResponse if the id isn't a legal Mongo Object ID
+   * @throws NotFoundResponse if there's no hunt with that id
+   */
+  private Hunt findHunt(String id, Bson projection) {
+    if (huntModel != null) {
+      if (!ObjectId.isValid(id)) {
+        throw new BadRequestResponse("The requested hunt id wasn't a legal Mongo Object ID.");
+      }
+      Hunt hunt = huntModel.snapshot().get(id);
+      if (hunt == null) {
+        throw new NotFoundResponse("The requested hunt was not found");
+      }
+      // A projection is applied when the hunt is serialized.
+      return hunt;
+    }
+    // Only whole hunts are cached, so only those have to come from the primary.
+    JacksonMongoCollection<Hunt> collection = projection == null ? huntCollection : huntReads;
+    Hunt hunt;
+    try {
+      hunt = collection.find(eq("_id", new ObjectId(id))).projection(projection).first();
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestResponse("The requested hunt id wasn't a legal Mongo Object ID.");
+    }
+    if (hunt == null) {
+      throw new NotFoundResponse("The requested hunt was not found");
+    }
+    return hunt;
+  }
+
+  /**
+   * Send an already serialized response, along with its ETag. If the
+   * request's `If-None-Match` header shows the client already has this
+   * exact response, just send a 304 (Not Modified) with no body.
+   *
+   * Large responses are sent compressed if the client accepts it, using
+   * the compressed body kept with the cached response, so Javalin doesn't
+   * compress the same bytes again on every request.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param response the serialized response to send
+   */
+  void sendCachedResponse(Context ctx, CachedResponse response) {
+    String encoding = response.getBody().length >= Compression.MIN_SIZE_FOR_COMPRESSION
+      ? Compression.negotiate(ctx.header(Header.ACCEPT_ENCODING))
+      : null;
+    ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+    ctx.header(Header.ETAG, response.getEtag(encoding));
+    if (response.matches(ctx.header(Header.IF_NONE_MATCH))) {
+      ctx.status(HttpStatus.NOT_MODIFIED);
+      return;
+    }
+    ctx.contentType(ContentType.APPLICATION_JSON);
+    if (encoding != null) {
+      // Javalin leaves responses that already have a content encoding alone.
+      ctx.header(Header.CONTENT_ENCODING, encoding);
+    }
+    ctx.result(response.getBody(encoding));
     ctx.status(HttpStatus.OK);
   }
-}
 
  /**
    * Set the JSON body of the response to be a list of all the hunts returned from the database
    * that match any requested filters and ordering
    *
+   * Since the same few listings get asked for over and over, serialized
+   * listings are cached until the next time a hunt is added or deleted.
+   * When a listing isn't cached, all the requests for it that arrive while
+   * it's being read share that one query (and serialization).
+   *
+   * A `fields` query parameter (e.g., `fields=title,hostid`) limits the
+   * hunts to just those fields, which makes for much smaller listings
+   * when the client doesn't need the (long) descriptions and tasks.
+   *
+   * With the read model on, the hunts are found (and sorted) in memory
+   * rather than by the database, whether they're listed all at once, a
+   * page at a time, or streamed.
+   *
    * @param ctx a Javalin HTTP context
    */
 
 public void getHunts(Context ctx) {
   Bson combinedFilter = constructFilter(ctx); // Not sure if needed.
   Bson sortingOrder = constructSortingOrder(ctx);
+  HuntProjection projection = HuntProjection.parse(ctx.queryParam(FIELDS_KEY));
+
+  // A `limit` means the client wants the listing one page at a time.
+  if (ctx.queryParamMap().containsKey(LIMIT_KEY)) {
+    getHuntsPage(ctx, combinedFilter, projection);
+    return;
+  }
+
+  // If the client asked for a streamed response (`?stream=ndjson` or
+  // `?stream=array`), write the hunts out as they come off the cursor
+  // rather than building the whole list in memory first.
+  String streamMode = ctx.queryParam(STREAM_KEY);
+  if (streamMode != null && !STREAM_NDJSON.equals(streamMode) && !STREAM_ARRAY.equals(streamMode)) {
+    throw new BadRequestResponse("The stream mode must be " + STREAM_NDJSON + " or " + STREAM_ARRAY);
+  }
+  if (streamMode != null && huntModel != null) {
+    writeHunts(ctx, modelHunts(ctx).iterator(), streamMode, projection);
+    return;
+  }
+  if (streamMode != null) {
+    FindIterable<Hunt> hunts = huntReads.find(combinedFilter).sort(sortingOrder);
+    if (projection != null) {
+      hunts = hunts.projection(projection.toBson());
+    }
+    streamHunts(ctx, hunts, streamMode, projection);
+    return;
+  }
+
+  // Listings are cached by their (normalized) filter and sorting order.
+  // The key also includes the current write generation, so once a hunt
+  // is added or deleted, every listing cached before that is simply
+  // never looked up again, and ages out of the cache.
+  String cacheKey = listingCacheKey(listingGeneration.get(), combinedFilter, sortingOrder, projection);
+  CachedResponse response = listingCache.get(cacheKey);
+  if (response == null) {
+    response = listingLoads.load(cacheKey, () -> loadListing(ctx, cacheKey, combinedFilter, sortingOrder, projection));
+  }
 
-  // All three of the find, sort, and into steps happen "in parallel" inside the
-  // database system. So MongoDB is going to find the hunts with the specified
-  // properties, return those sorted in the specified manner, and put the
-  // results into an initially empty ArrayList.
-  ArrayList<Hunt> matchingHunts = huntCollection
-    .find(combinedFilter)
-    .sort(sortingOrder)
-    .into(new ArrayList<>());
-
-  // Set the JSON body of the response to be the list of todos returned by the database.
-  // According to the Javalin documentation (https://javalin.io/documentation#context),
-  // this calls result(jsonString), and also sets content type to json
-  ctx.json(matchingHunts);
-
-  // Explicitly set the context status to OK
-  ctx.status(HttpStatus.OK);
+  // Set the JSON body of the response to be the list of hunts returned by
+  // the database (and set the content type to JSON and the status to OK).
+  sendCachedResponse(ctx, response);
 }
 
+  /**
+   * Read and serialize a listing, and cache it.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param cacheKey the key to cache the listing under
+   * @param combinedFilter the listing's filter
+   * @param sortingOrder the listing's sorting order
+   * @param projection the listing's fields, or `null` for all of them
+   * @return the serialized listing
+   */
+  private CachedResponse loadListing(Context ctx, String cacheKey, Bson combinedFilter, Bson sortingOrder,
+      HuntProjection projection) {
+    // All three of the find, sort, and into steps happen "in parallel" inside the
+    // database system. So MongoDB is going to find the hunts with the specified
+    // properties, return those sorted in the specified manner, and put the
+    // results into an initially empty ArrayList.
+    List<Hunt> matchingHunts = huntModel != null
+      ? modelHunts(ctx)
+      : huntCollection
+        .find(combinedFilter)
+        .sort(sortingOrder)
+        .projection(projection == null ? null : projection.toBson())
+        .into(new ArrayList<>());
+
+    // Serialize the list just once, and keep the bytes for the next time
+    // someone asks for the same listing.
+    String json = projection == null
+      ? ctx.jsonMapper().toJsonString(matchingHunts, List.class)
+      : projection.toJson(matchingHunts);
+    CachedResponse response = CachedResponse.of(json.getBytes(StandardCharsets.UTF_8));
+    listingCache.put(cacheKey, response);
+    return response;
+  }
+
+  /**
+   * Build the key a listing is cached under: the write generation plus
+   * the filter and sorting order rendered as (canonical) JSON, and the
+   * fields the listing was projected to.
+   *
+   * @param generation the write generation the listing was read in
+   * @param filter the listing's filter
+   * @param sortingOrder the listing's sorting order
+   * @param projection the listing's fields, or `null` for all of them
+   * @return the cache key for the listing
+   */
+  static String listingCacheKey(long generation, Bson filter, Bson sortingOrder, HuntProjection projection) {
+    CodecRegistry codecs = MongoClientSettings.getDefaultCodecRegistry();
+    return generation
+      + "|" + filter.toBsonDocument(BsonDocument.class, codecs).toJson()
+      + "|" + sortingOrder.toBsonDocument(BsonDocument.class, codecs).toJson()
+      + "|" + (projection == null ? "*" : projection.toString());
+  }
 
-  // *
-  // * @param ctx a Javalin HTTP context, which contains the query parameters
-  // *    used to construct the filter
-  // * @return a Bson filter document that can be used in the `find` method
-  // *   to filter the database collection of hunts
-  // */
+  /**
+   * Record that the hunts have changed, so any cached listings are stale.
+   */
+  void huntsChanged() {
+    listingGeneration.incrementAndGet();
+  }
 
- Bson constructFilter(Context ctx) {
-  List<Bson> filters = new ArrayList<>();
-  // starts with an empty list of filer.
-  if (ctx.queryParamMap().containsKey(HOST_KEY)) {
-    Pattern pattern = Pattern.compile(Pattern.quote(ctx.queryParam(HOST_KEY)), Pattern.CASE_INSENSITIVE);
-    filters.add(regex(HOST_KEY, pattern));
+  /**
+   * Record that hunts have been added (in the background, or not) or
+   * updated in the database.
+   *
+   * @param hunts the hunts, as they now are in the database
+   */
+  void huntsWritten(List<Hunt> hunts) {
+    if (huntModel != null) {
+      huntModel.added(hunts);
     }
+    huntGeneration.incrementAndGet();
+    for (Hunt hunt : hunts) {
+      huntCache.invalidate(hunt._id);
+      huntLoads.forget(hunt._id);
+    }
+    huntsChanged();
+  }
 
-  if (ctx.queryParamMap().containsKey(TITLE_KEY)) {
-    Pattern pattern = Pattern.compile(Pattern.quote(ctx.queryParam(TITLE_KEY)), Pattern.CASE_INSENSITIVE);
-    filters.add(regex(TITLE_KEY, pattern));
+  /**
+   * Record that hunts have been deleted from the database.
+   *
+   * @param ids the ids of the hunts that were deleted
+   */
+  void huntsDeleted(List<String> ids) {
+    if (huntModel != null) {
+      huntModel.removed(ids);
+    }
+    huntGeneration.incrementAndGet();
+    for (String id : ids) {
+      huntCache.invalidate(id);
+      huntLoads.forget(id);
+    }
+    huntsChanged();
+  }
+
+  /**
+   * Record that the read model's consistency check found hunts that had
+   * been changed in the database by someone else, and reloaded them.
+   *
+   * @param ids the ids of the hunts that had changed
+   */
+  void huntsReloaded(Set<String> ids) {
+    huntGeneration.incrementAndGet();
+    for (String id : ids) {
+      huntCache.invalidate(id);
+      huntLoads.forget(id);
+    }
+    huntsChanged();
+  }
+
+  /**
+   * Write any new hunts that are still waiting to be written, before the
+   * server (and its database connection) stops.
+   */
+  void flushNewHunts() {
+    if (huntWrites != null) {
+      huntWrites.close();
+    }
+  }
+
+  /**
+   * Stop checking the hunts in memory against the database.
+   */
+  void closeReadModel() {
+    if (huntModel != null) {
+      huntModel.close();
+    }
+  }
+
+  /**
+   * Stop watching for changes to the hunts, before the server (and its
+   * database connection) stops.
+   */
+  void stopHuntEvents() {
+    huntEvents.stop();
+  }
+
+  HuntReadModel getReadModel() {
+    return huntModel;
+  }
+
+  /**
+   * Set the JSON body of the response to be the hit, miss, and eviction
+   * counts for the hunt caches, so we can see how much load they're
+   * actually taking off the database, along with how many of the reads
+   * behind cache misses were shared by concurrent requests.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getCacheStats(Context ctx) {
+    Map<String, Map<String, Long>> stats = new HashMap<>();
+    stats.put("hunts", cacheStats(huntCache));
+    stats.put("listings", cacheStats(listingCache));
+    stats.put("huntLoads", loadStats(huntLoads));
+    stats.put("listingLoads", loadStats(listingLoads));
+    if (huntModel != null) {
+      stats.put("readModel", Map.of(
+        "size", (long) huntModel.snapshot().size(),
+        "checks", huntModel.checks(),
+        "repairs", huntModel.repairs()));
     }
+    ctx.json(stats);
+    ctx.status(HttpStatus.OK);
+  }
+
+  private static Map<String, Long> cacheStats(LruCache<?, ?> cache) {
+    return Map.of(
+      "size", (long) cache.size(),
+      "hits", cache.hits(),
+      "misses", cache.misses(),
+      "evictions", cache.evictions());
+  }
+
+  private static Map<String, Long> loadStats(SingleFlight<?, ?> loads) {
+    return Map.of(
+      "loads", loads.loads(),
+      "shared", loads.shared(),
+      "inFlight", (long) loads.inFlight());
+  }
+
+  /**
+   * Send the client a server-sent event for each hunt that's added
+   * (`insert`, with the hunt) or deleted (`delete`, with its id) from now
+   * on, so it can keep its list of hunts up to date without fetching
+   * the whole list again. A client that falls too far behind is sent
+   * a `resync` event and disconnected, and should fetch the hunts again.
+   *
+   * All the clients share the one `HuntEventFeed`, which watches the
+   * database for changes. Each client's events are sent on a virtual
+   * thread of its own, so a slow client only holds up itself.
+   *
+   * @param client the client to send the events to
+   */
+  void streamHuntEvents(SseClient client) {
+    HuntEventFeed.Subscriber subscriber = huntEvents.subscribe();
+    client.onClose(() -> huntEvents.unsubscribe(subscriber));
+    client.keepAlive();
+    Thread.ofVirtual().name("hunt-events").start(() -> huntEvents.deliver(subscriber, client));
+  }
+
+  HuntEventFeed getHuntEvents() {
+    return huntEvents;
+  }
 
-  if (ctx.queryParamMap().containsKey(DESCRIPTION_KEY)) {
-  Pattern pattern = Pattern.compile(Pattern.quote(ctx.queryParam(DESCRIPTION_KEY)), Pattern.CASE_INSENSITIVE);
-  filters.add(regex(DESCRIPTION_KEY, pattern));
+  /**
+   * Set the JSON body of the response to be the hunts whose title,
+   * description, or any of whose tasks contain the words in the `q` query
+   * parameter, most relevant first.
+   *
+   * This is answered from the collection's text index, so unlike the
+   * `description` and `task` filters in `getHunts` it doesn't have to
+   * look at every hunt. (So searches go to the database even when the
+   * read model is on.) Only the `limit` most relevant hunts are sent
+   * (`DEFAULT_SEARCH_LIMIT` unless the request says otherwise), so a
+   * common word doesn't send back the whole collection.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void searchHunts(Context ctx) {
+    String query = ctx.queryParam(SEARCH_KEY);
+    if (query == null || query.isBlank()) {
+      throw new BadRequestResponse("A search needs a non-empty `q` parameter.");
     }
+    int limit = DEFAULT_SEARCH_LIMIT;
+    if (ctx.queryParam(LIMIT_KEY) != null) {
+      limit = ctx.queryParamAsClass(LIMIT_KEY, Integer.class)
+        .check(it -> it > 0 && it <= MAX_PAGE_SIZE, "The number of results must be between 1 and " + MAX_PAGE_SIZE)
+        .get();
+    }
+
+    ArrayList<Hunt> matchingHunts = huntReads
+      .find(text(query))
+      .sort(Sorts.metaTextScore(SCORE_KEY))
+      .limit(limit)
+      .into(new ArrayList<>());
+
+    ctx.json(matchingHunts);
+    ctx.status(HttpStatus.OK);
+  }
 
-  if (ctx.queryParamMap().containsKey(TASK_KEY)) {
-    Pattern pattern = Pattern.compile(Pattern.quote(ctx.queryParam(TASK_KEY)), Pattern.CASE_INSENSITIVE);
-    filters.add(regex(TASK_KEY, pattern));
+  /**
+   * Set the JSON body of the response to be one page of the hunts that
+   * match the requested filters, along with a token for the next page.
+   *
+   * Rather than skipping past the earlier pages, each page picks up
+   * right after the (sort value, `_id`) position recorded in the
+   * `pageToken` query parameter, so fetching any page is a bounded
+   * range scan over the (sort field, `_id`) index.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param combinedFilter the filter built from the request's query parameters
+   * @param projection the fields to send, or `null` for all of them
+   */
+  void getHuntsPage(Context ctx, Bson combinedFilter, HuntProjection projection) {
+    int limit = ctx.queryParamAsClass(LIMIT_KEY, Integer.class)
+      .check(it -> it > 0 && it <= MAX_PAGE_SIZE, "The page size must be between 1 and " + MAX_PAGE_SIZE)
+      .get();
+    List<String> sortKeys = sortKeys(ctx);
+    if (sortKeys.size() != 1 || !PAGEABLE_FIELDS.containsKey(sortKeys.get(0))) {
+      throw new BadRequestResponse("Paginated hunts can't be sorted by " + String.join(",", sortKeys));
+    }
+    String sortBy = sortKeys.get(0);
+    boolean descending = "desc".equals(ctx.queryParam(SORT_ORDER_KEY));
+
+    Bson pageFilter = combinedFilter;
+    HuntPageToken after = null;
+    String pageToken = ctx.queryParam(PAGE_TOKEN_KEY);
+    if (pageToken != null) {
+      after = HuntPageToken.decode(pageToken);
+      if (!after.matches(sortBy, descending)) {
+        throw new BadRequestResponse("The page token is for a differently sorted listing.");
       }
+      pageFilter = and(combinedFilter, afterPosition(after));
+    }
+
+    // Ask for one extra hunt so we know whether there is another page.
+    List<Hunt> hunts = huntModel != null
+      ? huntModel.snapshot().page(constructCriteria(ctx), sortBy, descending, after, limit + 1)
+      : huntReads
+        .find(pageFilter)
+        .sort(HuntSchema.sortingOrder(sortKeys, descending))
+        // The sort field is always fetched, since the next page token needs it.
+        .projection(projection == null ? null : projection.toBson(sortBy))
+        .limit(limit + 1)
+        .into(new ArrayList<>());
+
+    String nextPageToken = null;
+    if (hunts.size() > limit) {
+      hunts.remove(limit);
+      Hunt last = hunts.get(limit - 1);
+      nextPageToken = new HuntPageToken(
+        sortBy, descending, PAGEABLE_FIELDS.get(sortBy).apply(last), new ObjectId(last._id)).encode();
+    }
+
+    HuntPage page = new HuntPage(hunts, nextPageToken);
+    if (projection == null) {
+      ctx.json(page);
+    } else {
+      ctx.contentType(ContentType.APPLICATION_JSON);
+      ctx.result(projection.toJson(page));
+    }
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Construct a filter matching the hunts that come after the position
+   * recorded in a page token, i.e., those with a later sort value, or
+   * with the same sort value and a later `_id`.
+   *
+   * @param after the position the previous page stopped at
+   * @return a Bson filter for the hunts after that position
+   */
+  static Bson afterPosition(HuntPageToken after) {
+    String sortBy = after.getSortBy();
+    if (after.isDescending()) {
+      return or(
+        lt(sortBy, after.getLastValue()),
+        and(eq(sortBy, after.getLastValue()), lt("_id", after.getLastId())));
+    }
+    return or(
+      gt(sortBy, after.getLastValue()),
+      and(eq(sortBy, after.getLastValue()), gt("_id", after.getLastId())));
+  }
+
+  /**
+   * Write the given hunts straight from the Mongo cursor to the response
+   * output stream, one hunt at a time, so we never hold the full result
+   * set in memory and the first bytes go out as soon as the first hunt
+   * comes back from the database.
+   *
+   * With `mode` set to `ndjson` each hunt is written as its own line of
+   * JSON (`application/x-ndjson`); with `array` it writes a regular JSON
+   * array, element by element.
+   *
+   * @param ctx a Javalin HTTP context
+   * @param hunts the (not yet executed) query for the hunts to write
+   * @param mode the requested streaming format
+   * @param projection the fields to write, or `null` for all of them
+   */
+  void streamHunts(Context ctx, FindIterable<Hunt> hunts, String mode, HuntProjection projection) {
+    try (MongoCursor<Hunt> cursor = hunts.iterator()) {
+      writeHunts(ctx, cursor, mode, projection);
+    }
+  }
+
+  /**
+   * Write hunts to the response output stream as they come from `hunts`,
+   * either as newline delimited JSON (with `mode` set to `ndjson`) or as
+   * a JSON array (with `array`).
+   *
+   * @param ctx a Javalin HTTP context
+   * @param hunts the hunts to write
+   * @param mode the requested streaming format
+   * @param projection the fields to write, or `null` for all of them
+   */
+  void writeHunts(Context ctx, Iterator<Hunt> hunts, String mode, HuntProjection projection) {
+    boolean ndjson = STREAM_NDJSON.equals(mode);
+    JsonMapper jsonMapper = ctx.jsonMapper();
+
+    // The status and content type have to be set before anything is
+    // written, since the headers go out with the first chunk of the body.
+    ctx.status(HttpStatus.OK);
+    if (ndjson) {
+      ctx.contentType(NDJSON_CONTENT_TYPE);
+    } else {
+      ctx.contentType(ContentType.APPLICATION_JSON);
+    }
+
+    try {
+      OutputStream out = ctx.outputStream();
+      if (!ndjson) {
+        out.write('[');
+      }
+      boolean first = true;
+      while (hunts.hasNext()) {
+        if (!first && !ndjson) {
+          out.write(',');
+        }
+        Hunt hunt = hunts.next();
+        String json = projection == null ? jsonMapper.toJsonString(hunt, Hunt.class) : projection.toJson(hunt);
+        out.write(json.getBytes(StandardCharsets.UTF_8));
+        if (ndjson) {
+          out.write('\n');
+        }
+        first = false;
+      }
+      if (!ndjson) {
+        out.write(']');
+      }
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+
+  /**
+   * Construct a Bson filter document to use in the `find` method based on the
+   * query parameters from the context.
+   *
+   * The `hostid` and `title` filters are written so MongoDB can answer them
+   * with an index seek rather than a collection scan:
+   *
+   * - `hostid` must match exactly.
+   * - `title` matches case-insensitively against the lowercase `titleLower`
+   *   copy of the title, either as a prefix (the default) or, with
+   *   `match=exact`, as the whole title. An anchored, case-sensitive
+   *   prefix regex is turned into a range scan over the index.
+   *
+   * `description` and `task` are still case-insensitive substring matches,
+   * which have to look at every hunt. `task` matches a hunt if any of the
+   * tasks in its list match, and reads the task names from their
+   * (multikey) index rather than from each hunt.
+   *
+   * @param ctx a Javalin HTTP context, which contains the query parameters
+   *    used to construct the filter
+   * @return a Bson filter document that can be used in the `find` method
+   *   to filter the database collection of hunts
+   */
+  Bson constructFilter(Context ctx) {
+    return constructCriteria(ctx).toBson();
+  }
 
-  // Combine list of filters into a single filtering document.
-  Bson combinedFilter = filters.isEmpty() ? new Document() : and(filters);
+  /**
+   * Collect the filters asked for by the query parameters (see
+   * `constructFilter()`), in a form that can also be checked against
+   * hunts in memory.
+   *
+   * @param ctx a Javalin HTTP context, which contains the query parameters
+   * @return the requested filters
+   */
+  HuntCriteria constructCriteria(Context ctx) {
+    String title = ctx.queryParam(TITLE_KEY);
+    return new HuntCriteria(
+      ctx.queryParam(HOST_KEY),
+      title == null ? null : title.toLowerCase(Locale.ROOT),
+      MATCH_EXACT.equals(ctx.queryParam(MATCH_KEY)),
+      containsPattern(ctx.queryParam(DESCRIPTION_KEY)),
+      containsPattern(ctx.queryParam(TASK_KEY)));
+  }
+
+  // A case-insensitive pattern matching any text that contains `text`.
+  private static Pattern containsPattern(String text) {
+    return text == null ? null : Pattern.compile(Pattern.quote(text), Pattern.CASE_INSENSITIVE);
+  }
 
-  return combinedFilter;
+  /**
+   * The hunts in the read model that match the request's filters, in the
+   * requested order.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the matching hunts
+   */
+  private List<Hunt> modelHunts(Context ctx) {
+    boolean descending = "desc".equals(ctx.queryParam(SORT_ORDER_KEY));
+    return huntModel.snapshot().find(constructCriteria(ctx), sortKeys(ctx), descending);
+  }
+
+  /**
+   * Escape every character in `text` that has a special meaning in a
+   * regular expression.
+   *
+   * We use this instead of `Pattern.quote()` for prefix matches because
+   * MongoDB only recognizes a regex as a plain prefix (and so turns it
+   * into bounds on an index) if it's made up of literal characters.
+   *
+   * @param text the literal text to match
+   * @return a regular expression that matches exactly `text`
+   */
+  static String escapeRegex(String text) {
+    StringBuilder escaped = new StringBuilder();
+    for (char c : text.toCharArray()) {
+      if (!Character.isLetterOrDigit(c) && !Character.isWhitespace(c)) {
+        escaped.append('\\');
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
   }
 
     /**
@@ -153,35 +958,70 @@ public void getHunts(Context ctx) {
    *
    * This checks for the presence of the `sortby` and `sortorder` query
    * parameters and constructs a sorting document that will sort hunts by
-   * the specified field in the specified order. If the `sortby` query
-   * parameter is not present, it defaults to "name". If the `sortorder`
-   * query parameter is not present, it defaults to "asc".
+   * the specified fields in the specified order. `sortby` can list more
+   * than one field (e.g., `sortby=hostid,title`), but only in one of the
+   * `HuntSchema.SORT_ORDERS`, which an index can produce. The hunts are
+   * sorted by `_id` last, so hunts that tie on the other fields always
+   * come out in the same order. If the `sortby` query parameter is not
+   * present, it defaults to "title". If the `sortorder` query parameter
+   * is not present, it defaults to "asc".
    *
    * @param ctx a Javalin HTTP context, which contains the query parameters
    *   used to construct the sorting order
    * @return a Bson sorting document that can be used in the `sort` method
    *  to sort the database collection of hunts
+   * @throws BadRequestResponse if the hunts can't be sorted by the `sortby` fields
    */
 
-   private Bson constructSortingOrder(Context ctx) {
-    // Sort the results. Use the `sortby` query param (default "name")
-    // as the field to sort by, and the query param `sortorder` (default
+   Bson constructSortingOrder(Context ctx) {
+    // Sort the results. Use the `sortby` query param (default "title")
+    // as the fields to sort by, and the query param `sortorder` (default
     // "asc") to specify the sort order.
-    String sortBy = Objects.requireNonNullElse(ctx.queryParam("sortby"), "title");
-    String sortOrder = Objects.requireNonNullElse(ctx.queryParam("sortorder"), "asc");
-    Bson sortingOrder = sortOrder.equals("desc") ?  Sorts.descending(sortBy) : Sorts.ascending(sortBy);
-    return sortingOrder;
+    String sortOrder = Objects.requireNonNullElse(ctx.queryParam(SORT_ORDER_KEY), "asc");
+    return HuntSchema.sortingOrder(sortKeys(ctx), sortOrder.equals("desc"));
   }
 
   /**
+   * The fields to sort hunts by, from the comma separated `sortby` query
+   * parameter (default "title").
    *
-   * @param server // The javalin server instance
-   * @param HuntController The controller handles the hunt endpoints
-   *
+   * @param ctx a Javalin HTTP context
+   * @return the fields to sort by, which are one of the `HuntSchema.SORT_ORDERS`
+   * @throws BadRequestResponse if they aren't one of the `HuntSchema.SORT_ORDERS`
    */
+  static List<String> sortKeys(Context ctx) {
+    String sortBy = Objects.requireNonNullElse(ctx.queryParam(SORT_BY_KEY), TITLE_KEY);
+    List<String> sortKeys = new ArrayList<>();
+    for (String key : sortBy.split(",")) {
+      sortKeys.add(key.trim());
+    }
+    if (!HuntSchema.SORT_ORDERS.contains(sortKeys)) {
+      List<String> supported = new ArrayList<>();
+      for (List<String> sortOrder : HuntSchema.SORT_ORDERS) {
+        supported.add(String.join(",", sortOrder));
+      }
+      throw new BadRequestResponse("Hunts can't be sorted by " + sortBy
+        + "; they can be sorted by " + String.join(" or ", supported));
+    }
+    return sortKeys;
+  }
 
-
-
+  /**
+   * Add the hunt in the request body, and set the JSON body of the
+   * response to be its new `id`.
+   *
+   * The hunt keeps the id the client gave it, if any (in the lowercase
+   * form ids are stored in, as in `addNewHunts`), or is given one here.
+   *
+   * In write-behind mode, a hunt without an id of its own is handed to
+   * `HuntWriteBehind` to be written with other new hunts in the
+   * background. The response is a 202 (Accepted) rather than a 201
+   * (Created), since the hunt may not be in the database just yet. If
+   * the write-behind buffer is full, or the client chose the hunt's id,
+   * the hunt is written right away, as usual.
+   *
+   * @param ctx a Javalin HTTP context
+   */
   public void addNewHunt(Context ctx) {
     /*
      * The follow chain of statements uses the Javalin validator system
@@ -198,22 +1038,31 @@ public void getHunts(Context ctx) {
      * `BadRequestResponse` with an appropriate error message.
       */
 
-    Hunt newHunt = ctx.bodyValidator(Hunt.class)
-      .check(usr -> usr.title != null && usr.title.length() > 0, "Hunt must have a non-empty hunt title")
-      .check(usr -> usr.hostid != null && usr.hostid.length() > 0, "Hunt must have a non-empty hunt title")
-      .check(usr -> usr.description != null && usr.description.length() > 0, "Hunt must have a non-empty hunt title")
-      .check(usr -> usr.task != null && usr.task.length() > 0, "Hunt must have a non-empty hunt title")
-
-      // .check(usr -> usr.email.matches(EMAIL_REGEX), "User must have a legal email")
-      // .check(usr -> usr.age > 0, "User's age must be greater than zero")
-      // .check(usr -> usr.age < REASONABLE_AGE_LIMIT, "User's age must be less than " + REASONABLE_AGE_LIMIT)
-      // .check(usr -> usr.role.matches(ROLE_REGEX), "User must have a legal user role")
-      // .check(usr -> usr.company != null && usr.company.length() > 0, "User must have a non-empty company name")
-      .get();
+    BodyValidator<Hunt> validator = ctx.bodyValidator(Hunt.class);
+    for (HuntRule rule : NEW_HUNT_RULES) {
+      validator = validator.check(rule.check()::test, rule.message());
+    }
+    Hunt newHunt = validator.get();
+    fillInTasks(newHunt);
+    // Every new hunt starts at version 0 (see `atVersion()`), whatever the
+    // client sent.
+    newHunt.version = 0;
 
+    // A hunt the client gave an id to might clash with one that's already
+    // there, which only a write made right away can tell the client.
+    boolean clientId = newHunt._id != null;
+    newHunt._id = clientId ? new ObjectId(newHunt._id).toHexString() : new ObjectId().toHexString();
+    if (huntWrites != null && !clientId) {
+      if (huntWrites.offer(newHunt)) {
+        ctx.json(Map.of("id", newHunt._id));
+        ctx.status(HttpStatus.ACCEPTED);
+        return;
+      }
+    }
 
     // Add the new user to the database
     huntCollection.insertOne(newHunt);
+    huntsWritten(List.of(newHunt));
 
     // Set the JSON response to be the `_id` of the newly created user.
     // This gives the client the opportunity to know the ID of the new user,
@@ -228,22 +1077,589 @@ public void getHunts(Context ctx) {
   }
 
 
+  /**
+   * Add many new hunts at once, from a request body that's either a JSON
+   * array of hunts or a stream of newline delimited JSON hunts (NDJSON).
+   *
+   * Each hunt is read with the same JSON mapper, and checked against the
+   * same rules, as in `addNewHunt`. The body is read one hunt at a time,
+   * and valid hunts are written to the database in unordered `insertMany`
+   * batches of `chunkSize` hunts (500 by default), so only one batch of
+   * hunts is in memory at a time, no matter how big the request is. (The
+   * per-hunt results in the response are just an index and an id or
+   * error.) Cached listings are retired after each batch, so they never
+   * miss hunts that are already in the database.
+   *
+   * The response lists, for each hunt in the request (by position), either
+   * the id it was given or why it wasn't added. A hunt that isn't even
+   * well formed JSON stops the import at that point, since there's no
+   * reliable way to find where the next hunt starts. So does a batch that
+   * fails for some reason other than the hunts in it (say, the database
+   * is unreachable); the response still lists the hunts read until then.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void addNewHunts(Context ctx) {
+    int chunkSize = DEFAULT_BULK_CHUNK_SIZE;
+    if (ctx.queryParam(CHUNK_SIZE_KEY) != null) {
+      chunkSize = ctx.queryParamAsClass(CHUNK_SIZE_KEY, Integer.class)
+        .check(it -> it > 0 && it <= MAX_BULK_CHUNK_SIZE, "The chunk size must be between 1 and " + MAX_BULK_CHUNK_SIZE)
+        .get();
+    }
+
+    HuntBulkResult result = new HuntBulkResult();
+    List<Hunt> chunk = new ArrayList<>(chunkSize);
+    List<Integer> chunkPositions = new ArrayList<>(chunkSize);
+    int position = 0;
+    boolean written = true;
+    try (MappingIterator<Hunt> hunts = bulkHuntReader(ctx).readValues(ctx.bodyInputStream())) {
+      while (written && hunts.hasNextValue()) {
+        Hunt hunt = hunts.nextValue();
+        String error = brokenRule(hunt);
+        if (error != null) {
+          result.addFailure(position, error);
+        } else {
+          chunk.add(hunt);
+          chunkPositions.add(position);
+          if (chunk.size() == chunkSize) {
+            written = insertChunk(chunk, chunkPositions, result);
+          }
+        }
+        position++;
+      }
+    } catch (IOException e) {
+      result.addFailure(position, "The hunt couldn't be read: " + e.getMessage());
+    }
+    written = insertChunk(chunk, chunkPositions, result) && written;
+
+    result.results.sort(Comparator.comparingInt(item -> item.index));
+    ctx.json(result);
+    if (result.inserted > 0) {
+      ctx.status(HttpStatus.CREATED);
+    } else {
+      // Nothing was added, either because none of the hunts were valid or
+      // because the database failed.
+      ctx.status(written ? HttpStatus.BAD_REQUEST : HttpStatus.SERVICE_UNAVAILABLE);
+    }
+  }
+
+  /**
+   * A reader for the hunts in a bulk import, one at a time, from either
+   * a JSON array or a stream of JSON hunts. It reads with Javalin's own
+   * Jackson mapper, just as `ctx.bodyValidator()` does for `addNewHunt`.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return a reader for hunts
+   */
+  private static ObjectReader bulkHuntReader(Context ctx) {
+    if (!(ctx.jsonMapper() instanceof JavalinJackson javalinJackson)) {
+      throw new IllegalStateException("Bulk imports read hunts with Javalin's Jackson mapper");
+    }
+    return javalinJackson.getMapper().readerFor(Hunt.class);
+  }
+
+  /**
+   * Write a batch of (valid) hunts to the database with a single unordered
+   * `insertMany`, recording which ones made it into the database and
+   * which didn't, and then empty the batch.
+   *
+   * Each hunt is given its `_id` here (unless it already has one), so we
+   * know every hunt's id even if some of the batch fails. Because the
+   * insert is unordered, one failure doesn't stop the rest of the batch.
+   *
+   * @param chunk the hunts to insert
+   * @param positions the position in the request of each hunt in `chunk`
+   * @param result the results to record the outcome for each hunt in
+   * @return false if the whole batch failed (say, the database couldn't be
+   *   reached), so the import should stop
+   */
+  private boolean insertChunk(List<Hunt> chunk, List<Integer> positions, HuntBulkResult result) {
+    if (chunk.isEmpty()) {
+      return true;
+    }
+    for (Hunt hunt : chunk) {
+      hunt._id = hunt._id == null ? new ObjectId().toHexString() : new ObjectId(hunt._id).toHexString();
+      fillInTasks(hunt);
+      hunt.version = 0;
+    }
+
+    Map<Integer, String> errors = new HashMap<>();
+    boolean written = true;
+    try {
+      huntCollection.insertMany(chunk, new InsertManyOptions().ordered(false));
+    } catch (MongoBulkWriteException e) {
+      for (BulkWriteError error : e.getWriteErrors()) {
+        errors.put(error.getIndex(), error.getMessage());
+      }
+    } catch (MongoException e) {
+      // There's no telling which of the batch (if any) made it in, so
+      // retire the cached listings anyway.
+      for (int i = 0; i < chunk.size(); i++) {
+        errors.put(i, "The hunt may not have been added: " + e.getMessage());
+      }
+      written = false;
+      huntsChanged();
+    }
+
+    List<Hunt> inserted = new ArrayList<>();
+    for (int i = 0; i < chunk.size(); i++) {
+      if (errors.containsKey(i)) {
+        result.addFailure(positions.get(i), errors.get(i));
+      } else {
+        result.addSuccess(positions.get(i), chunk.get(i)._id);
+        inserted.add(chunk.get(i));
+      }
+    }
+    if (!inserted.isEmpty()) {
+      huntsWritten(inserted);
+    }
+    chunk.clear();
+    positions.clear();
+    return written;
+  }
+
+  /**
+   * Check a hunt against the rules for new hunts.
+   *
+   * @param hunt the hunt to check
+   * @return the message for the first rule the hunt breaks, or `null` if it's fine
+   */
+  static String brokenRule(Hunt hunt) {
+    for (HuntRule rule : NEW_HUNT_RULES) {
+      if (!rule.check().test(hunt)) {
+        return rule.message();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Give a new hunt its list of tasks: just its `task`, if it didn't come
+   * with a list, and otherwise the list it came with. Either way, every
+   * task gets a new id from the server; any ids the client sent are
+   * replaced, so they can't clash with each other (or be reused later).
+   *
+   * @param hunt the new hunt
+   */
+  static void fillInTasks(Hunt hunt) {
+    if (hunt.tasks == null || hunt.tasks.isEmpty()) {
+      hunt.tasks = new ArrayList<>(List.of(HuntTask.named(hunt.task)));
+      return;
+    }
+    for (HuntTask task : hunt.tasks) {
+      task.id = new ObjectId().toHexString();
+    }
+  }
+
+  /**
+   * Set the JSON body of the response to be all the hunts whose ids are
+   * listed in the request body (`{"ids": [...]}`), fetched with a single
+   * `$in` query rather than one request per hunt.
+   *
+   * The response has the hunts that were `found` (in the order they were
+   * asked for) and the ids that are `missing`, either because there's no
+   * such hunt or because the id isn't a legal Mongo Object ID.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getHuntsById(Context ctx) {
+    Set<String> requestedIds = requestedIds(ctx);
+    List<ObjectId> objectIds = legalObjectIds(requestedIds);
+
+    Map<String, Hunt> foundById = new HashMap<>();
+    if (huntModel != null) {
+      HuntSnapshot snapshot = huntModel.snapshot();
+      for (ObjectId id : objectIds) {
+        Hunt hunt = snapshot.get(id.toHexString());
+        if (hunt != null) {
+          foundById.put(hunt._id, hunt);
+        }
+      }
+    } else {
+      for (Hunt hunt : huntReads.find(in("_id", objectIds))) {
+        foundById.put(hunt._id, hunt);
+      }
+    }
+
+    List<Hunt> found = new ArrayList<>();
+    List<String> missing = new ArrayList<>();
+    for (String id : requestedIds) {
+      if (foundById.containsKey(id)) {
+        found.add(foundById.get(id));
+      } else {
+        missing.add(id);
+      }
+    }
+
+    ctx.json(Map.of("found", found, "missing", missing));
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Delete all the hunts whose ids are listed in the request body
+   * (`{"ids": [...]}`).
+   *
+   * The response has the ids that were `deleted` and those that are
+   * `missing`, either because there's no such hunt or because the id isn't
+   * a legal Mongo Object ID. The hunts that exist are found with one
+   * `find`, and then deleted with one `deleteMany`, so a batch is two
+   * round trips to the database however many ids it has. (If another
+   * request deletes one of the hunts in between, both report it as
+   * `deleted`, just as deleting a hunt that's already gone is harmless.)
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void deleteHuntsById(Context ctx) {
+    Set<String> requestedIds = requestedIds(ctx);
+
+    FindIterable<Hunt> existing = huntCollection.find(in("_id", legalObjectIds(requestedIds)))
+      .projection(Projections.include("_id"));
+    List<ObjectId> found = new ArrayList<>();
+    for (Hunt hunt : existing) {
+      found.add(new ObjectId(hunt._id));
+    }
+    List<String> deleted = new ArrayList<>();
+    if (!found.isEmpty()) {
+      huntCollection.deleteMany(in("_id", found));
+      for (ObjectId id : found) {
+        deleted.add(id.toHexString());
+      }
+      huntsDeleted(deleted);
+    }
+    List<String> missing = new ArrayList<>(requestedIds);
+    missing.removeAll(deleted);
+
+    ctx.json(Map.of("deleted", deleted, "missing", missing));
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Get the (distinct) hunt ids listed in the body of a batch request.
+   * Legal ids are put in the lowercase form hunts' ids are stored in, so
+   * an id written in uppercase still matches its hunt.
+   *
+   * @param ctx a Javalin HTTP context
+   * @return the requested ids, in the order they were listed
+   */
+  private static Set<String> requestedIds(Context ctx) {
+    HuntIdList idList = ctx.bodyValidator(HuntIdList.class)
+      .check(body -> body.ids != null, "The request must have a list of `ids`")
+      .check(body -> body.ids == null || body.ids.size() <= MAX_BATCH_SIZE,
+        "A batch can have at most " + MAX_BATCH_SIZE + " ids")
+      .get();
+    Set<String> ids = new LinkedHashSet<>();
+    for (String id : idList.ids) {
+      ids.add(id != null && ObjectId.isValid(id) ? new ObjectId(id).toHexString() : id);
+    }
+    return ids;
+  }
+
+  /**
+   * Convert the ids that are legal Mongo Object IDs to `ObjectId`s,
+   * skipping the rest.
+   *
+   * @param ids the ids to convert
+   * @return the legal ids, as `ObjectId`s
+   */
+  private static List<ObjectId> legalObjectIds(Collection<String> ids) {
+    List<ObjectId> objectIds = new ArrayList<>();
+    for (String id : ids) {
+      if (id != null && ObjectId.isValid(id)) {
+        objectIds.add(new ObjectId(id));
+      }
+    }
+    return objectIds;
+  }
+
+  /**
+   * Change some of the fields of the hunt specified by the `id` parameter
+   * in the request, in place, so it keeps its `_id` (and every link to it
+   * keeps working). Changing the `task` renames the hunt's first task, which
+   * `task` is always the name of.
+   *
+   * The body has just the fields to change, along with the `version` of
+   * the hunt the client last saw (see `HuntUpdate`). The change is made by
+   * a single `findOneAndUpdate` that only matches the hunt while it's still
+   * at that version, and bumps the version as it sets the fields. So if
+   * someone else changed the hunt first, this fails with a 409 (Conflict)
+   * rather than overwriting their change, and the client should get the
+   * hunt again and redo its edit.
+   *
+   * The response is the updated hunt, with its new version.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void updateHunt(Context ctx) {
+    String id = ctx.pathParam("id");
+    if (!ObjectId.isValid(id)) {
+      throw new BadRequestResponse("The requested hunt id wasn't a legal Mongo Object ID.");
+    }
+    HuntUpdate update = ctx.bodyValidator(HuntUpdate.class)
+      .check(body -> body.version != null, "The update must include the `version` of the hunt it changes")
+      .check(body -> !body.changes().isEmpty(), "The update must change at least one field")
+      .check(body -> !body.changes().containsValue(""), "A hunt's fields can't be changed to be empty")
+      .get();
+
+    Hunt updated = huntCollection.findOneAndUpdate(
+      and(eq("_id", new ObjectId(id)), atVersion(update.version)),
+      update.toPipeline(),
+      new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+    if (updated == null) {
+      // Either there's no such hunt, or it's moved on to another version.
+      Hunt current = huntCollection.find(eq("_id", new ObjectId(id)))
+        .projection(Projections.include(Hunt.VERSION_KEY))
+        .first();
+      if (current == null) {
+        throw new NotFoundResponse("The requested hunt was not found");
+      }
+      throw new ConflictResponse("The hunt was changed after version " + update.version
+        + "; it's now at version " + current.version);
+    }
+    huntsWritten(List.of(updated));
+
+    ctx.json(updated);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Add a task to the end of the task list of the hunt specified by the
+   * `id` parameter (or, with a `position` query parameter, at that
+   * position in the list). The body is the task, `{"name": ...}`.
+   *
+   * The task is spliced into the hunt's `tasks` array by a single
+   * pipeline update, so adding a task never sends the rest of the hunt
+   * anywhere, and two hosts adding tasks at once can't lose either one.
+   * Each change to the tasks bumps the hunt's `version`, as `updateHunt`
+   * does, and keeps `task` the name of the first task (see `SYNC_TASK`).
+   *
+   * The response has the new task's `id`.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void addTask(Context ctx) {
+    ObjectId huntId = huntObjectId(ctx);
+    HuntTask task = taskFromBody(ctx);
+    task.id = new ObjectId().toHexString();
+
+    Integer position = null;
+    if (ctx.queryParam(POSITION_KEY) != null) {
+      position = ctx.queryParamAsClass(POSITION_KEY, Integer.class)
+        .check(it -> it >= 0, "The position must not be negative")
+        .get();
+    }
+    Document tasks = new Document("$ifNull", List.of("$" + TASKS_KEY, List.of()));
+    List<Document> newTask = List.of(new Document()
+      .append(HuntTask.ID_KEY, task.id)
+      .append(HuntTask.NAME_KEY, literal(task.name)));
+    // The tasks before the position, the new one, and then the rest. (A
+    // position past the end just adds the task at the end, as `$push`
+    // would.)
+    List<Object> parts;
+    if (position == null) {
+      parts = List.of(tasks, newTask);
+    } else if (position == 0) {
+      parts = List.of(newTask, tasks);
+    } else {
+      parts = List.of(
+        new Document("$slice", List.of(tasks, position)),
+        newTask,
+        new Document("$slice", List.of(tasks, position,
+          new Document("$max", List.of(new Document("$size", tasks), 1)))));
+    }
+    Hunt updated = huntCollection.findOneAndUpdate(
+      eq("_id", huntId),
+      List.of(new Document("$set", new Document(TASKS_KEY, new Document("$concatArrays", parts))), SYNC_TASK),
+      new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+    tasksChanged(updated);
+
+    ctx.json(Map.of("id", task.id));
+    ctx.status(HttpStatus.CREATED);
+  }
+
+  /**
+   * Rename the task specified by the `taskId` parameter, in the hunt
+   * specified by the `id` parameter. The body is the task's new name,
+   * `{"name": ...}`.
+   *
+   * Only that one task is changed, by a pipeline update that maps the
+   * hunt's tasks to themselves, except for the one with that id. The
+   * response is the hunt's updated list of tasks.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void renameTask(Context ctx) {
+    ObjectId huntId = huntObjectId(ctx);
+    String taskId = ctx.pathParam("taskId");
+    HuntTask task = taskFromBody(ctx);
+
+    Document renamed = new Document("$map", new Document()
+      .append("input", "$" + TASKS_KEY)
+      .append("in", new Document("$cond", List.of(
+        new Document("$eq", List.of("$$this." + HuntTask.ID_KEY, literal(taskId))),
+        new Document("$mergeObjects", List.of("$$this", new Document(HuntTask.NAME_KEY, literal(task.name)))),
+        "$$this"))));
+    Hunt updated = huntCollection.findOneAndUpdate(
+      and(eq("_id", huntId), eq(TASKS_KEY + "." + HuntTask.ID_KEY, taskId)),
+      List.of(new Document("$set", new Document(TASKS_KEY, renamed)), SYNC_TASK),
+      new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+    tasksChanged(updated);
+
+    ctx.json(updated.tasks);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Remove the task specified by the `taskId` parameter from the hunt
+   * specified by the `id` parameter, with a pipeline update that filters
+   * it out of the `tasks` array. The response is the hunt's updated list
+   * of tasks.
+   *
+   * A hunt always keeps at least one task (its `task`), so removing the
+   * last one fails with a 409 (Conflict).
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void removeTask(Context ctx) {
+    ObjectId huntId = huntObjectId(ctx);
+    String taskId = ctx.pathParam("taskId");
+
+    Bson withTheTask = and(eq("_id", huntId), eq(TASKS_KEY + "." + HuntTask.ID_KEY, taskId));
+    Document remaining = new Document("$filter", new Document()
+      .append("input", "$" + TASKS_KEY)
+      .append("cond", new Document("$ne", List.of("$$this." + HuntTask.ID_KEY, literal(taskId)))));
+    Hunt updated = huntCollection.findOneAndUpdate(
+      and(withTheTask, exists(TASKS_KEY + ".1")),
+      List.of(new Document("$set", new Document(TASKS_KEY, remaining)), SYNC_TASK),
+      new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+    if (updated == null && huntCollection.countDocuments(withTheTask) > 0) {
+      throw new ConflictResponse("A hunt must have at least one task");
+    }
+    tasksChanged(updated);
+
+    ctx.json(updated.tasks);
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Put the tasks of the hunt specified by the `id` parameter in a new
+   * order. The body lists the ids of all the hunt's tasks, in the new
+   * order, `{"ids": [...]}`.
+   *
+   * The tasks are rearranged by the database, in a single pipeline update
+   * that builds the new array from the one it has, so the tasks' names
+   * never make a round trip. If a different task ends up first, it
+   * becomes the hunt's `task`. The update only matches a hunt whose tasks
+   * are exactly the ones listed, so if a task was added or removed in the
+   * meantime, this fails with a 409 (Conflict) rather than dropping (or
+   * duplicating) a task. The response is the reordered list of tasks.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void reorderTasks(Context ctx) {
+    ObjectId huntId = huntObjectId(ctx);
+    HuntIdList order = ctx.bodyValidator(HuntIdList.class)
+      .check(body -> body.ids != null, "The request must have a list of task `ids`")
+      .check(body -> body.ids == null || new HashSet<>(body.ids).size() == body.ids.size(),
+        "Each task can only be listed once")
+      .get();
+
+    String taskIds = TASKS_KEY + "." + HuntTask.ID_KEY;
+    Bson sameTasks = order.ids.isEmpty()
+      ? size(TASKS_KEY, 0)
+      : and(size(TASKS_KEY, order.ids.size()), all(taskIds, order.ids));
+    // For each id, in order, the task in the current array with that id.
+    Document reordered = new Document("$map", new Document()
+      .append("input", order.ids)
+      .append("as", "taskId")
+      .append("in", new Document("$arrayElemAt", List.of(
+        new Document("$filter", new Document()
+          .append("input", "$" + TASKS_KEY)
+          .append("cond", new Document("$eq", List.of("$$this." + HuntTask.ID_KEY, "$$taskId")))),
+        0))));
+    Hunt updated = huntCollection.findOneAndUpdate(
+      and(eq("_id", huntId), sameTasks),
+      List.of(new Document("$set", new Document(TASKS_KEY, reordered)), SYNC_TASK),
+      new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+    if (updated == null) {
+      if (huntCollection.countDocuments(eq("_id", huntId)) == 0) {
+        throw new NotFoundResponse("The requested hunt was not found");
+      }
+      throw new ConflictResponse("The ids listed aren't exactly the hunt's tasks; get the hunt again and retry");
+    }
+    huntsWritten(List.of(updated));
+
+    ctx.json(updated.tasks);
+    ctx.status(HttpStatus.OK);
+  }
+
+  private static ObjectId huntObjectId(Context ctx) {
+    String id = ctx.pathParam("id");
+    if (!ObjectId.isValid(id)) {
+      throw new BadRequestResponse("The requested hunt id wasn't a legal Mongo Object ID.");
+    }
+    return new ObjectId(id);
+  }
+
+  private static HuntTask taskFromBody(Context ctx) {
+    return ctx.bodyValidator(HuntTask.class)
+      .check(HuntController::isLegalTask, "A task must have a non-empty name")
+      .get();
+  }
+
+  /**
+   * Record that a hunt's tasks were changed, or if no hunt (with the task
+   * being changed) was found, say so.
+   *
+   * @param updated the hunt after the change, or `null` if there wasn't one
+   * @throws NotFoundResponse if there's no such hunt (or task)
+   */
+  private void tasksChanged(Hunt updated) {
+    if (updated == null) {
+      throw new NotFoundResponse("The requested hunt (or task) was not found");
+    }
+    huntsWritten(List.of(updated));
+  }
+
+  /**
+   * A filter for hunts at the given version. Hunts stored without a
+   * version (say, by the seed script) are at version 0.
+   *
+   * @param version the version
+   * @return a Bson filter on the hunts' `version`
+   */
+  static Bson atVersion(long version) {
+    if (version == 0) {
+      return or(eq(Hunt.VERSION_KEY, 0L), exists(Hunt.VERSION_KEY, false));
+    }
+    return eq(Hunt.VERSION_KEY, version);
+  }
+
   /**
    * Delete the hunt specified by the `id` parameter in the request.
    *
+   * In write-behind mode, a hunt that hasn't been written yet is first
+   * withdrawn from `HuntWriteBehind`, so it never gets written (or is
+   * deleted as soon as it is). Otherwise it's deleted from the database,
+   * where by then it either is or never will be.
+   *
    * @param ctx a Javalin HTTP context
    */
   public void deleteHunt(Context ctx) {
     String id = ctx.pathParam("id");
-    DeleteResult deleteResult = huntCollection.deleteOne(eq("_id", new ObjectId(id)));
+    ObjectId objectId = new ObjectId(id);
+    boolean deleted = (huntWrites != null && huntWrites.withdraw(objectId.toHexString()))
+      || huntCollection.deleteOne(eq("_id", objectId)).getDeletedCount() == 1;
     // We should have deleted 1 or 0 hunts, depending on whether `id` is a valid hunt ID.
-    if (deleteResult.getDeletedCount() != 1) {
+    if (!deleted) {
       ctx.status(HttpStatus.NOT_FOUND);
       throw new NotFoundResponse(
         "Was unable to delete ID "
           + id
           + "; perhaps illegal ID or an ID for an item not in the system?");
     }
+    // Only a hunt that was there to delete changes the caches (or makes an
+    // event).
+    huntsDeleted(List.of(objectId.toHexString()));
     ctx.status(HttpStatus.OK);
   }
 
@@ -265,6 +1681,16 @@ public void getHunts(Context ctx) {
 
   public void addRoutes(Javalin server) {
 
+    // Search the hunts. This has to come before the route for a specific
+    // hunt, or "search" would be taken to be a hunt id.
+    server.get(API_HUNT_SEARCH, this::searchHunts);
+
+    // See how well the hunt caches are working
+    server.get(API_HUNT_CACHE_STATS, this::getCacheStats);
+
+    // Follow the hunts being added and deleted (server-sent events)
+    server.sse(API_HUNT_EVENTS, this::streamHuntEvents);
+
     // get the specified Hunt
     server.get(API_HUNT_BY_ID, this::getHunt);
     // List hunts, filtered using query parameters
@@ -272,8 +1698,32 @@ public void getHunts(Context ctx) {
 
     server.post(API_HUNTS, this::addNewHunt);
 
+    // Change some of the fields of the specified hunt
+    server.patch(API_HUNT_BY_ID, this::updateHunt);
+
+    // Add, reorder, rename, and remove the tasks of the specified hunt
+    server.post(API_HUNT_TASKS, this::addTask);
+    server.put(API_HUNT_TASKS, this::reorderTasks);
+    server.patch(API_HUNT_TASK_BY_ID, this::renameTask);
+    server.delete(API_HUNT_TASK_BY_ID, this::removeTask);
+
+    // Add many hunts at once
+    server.post(API_HUNTS_BULK, this::addNewHunts);
+
+    // Get or delete many hunts at once
+    server.post(API_HUNTS_BATCH_GET, this::getHuntsById);
+    server.post(API_HUNTS_BATCH_DELETE, this::deleteHuntsById);
+
     //Delete the specified user
     server.delete(API_HUNT_BY_ID, this::deleteHunt);
+
+    // Write any new hunts still waiting to be written, stop checking the
+    // hunts in memory, and stop watching for changes, before shutting down
+    server.events(event -> {
+      event.serverStopping(this::flushNewHunts);
+      event.serverStopping(this::closeReadModel);
+      event.serverStopping(this::stopHuntEvents);
+    });
   }
 
 }
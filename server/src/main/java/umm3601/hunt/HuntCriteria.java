@@ -0,0 +1,97 @@
+package umm3601.hunt;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * The filters a hunt listing asks for (see `HuntController.constructFilter()`),
+ * which can be turned into a Mongo filter, or checked against a hunt in
+ * memory (for the `HuntReadModel`), with the same meaning either way.
+ *
+ * @param hostid the exact host id, or `null` for any host
+ * @param titleLower the lowercase title, or its prefix, or `null` for any title
+ * @param exactTitle whether `titleLower` is the whole title rather than a prefix
+ * @param description a case-insensitive pattern for the description, or `null`
+ * @param task a case-insensitive pattern for any of the hunt's tasks, or `null`
+ */
+public record HuntCriteria(
+    String hostid,
+    String titleLower,
+    boolean exactTitle,
+    Pattern description,
+    Pattern task) {
+
+  /**
+   * The Mongo filter for these criteria.
+   *
+   * @return a Bson filter document for the `find` method
+   */
+  public Bson toBson() {
+    List<Bson> filters = new ArrayList<>();
+    if (hostid != null) {
+      filters.add(eq(HuntController.HOST_KEY, hostid));
+    }
+    if (titleLower != null) {
+      if (exactTitle) {
+        filters.add(eq(Hunt.TITLE_LOWER_KEY, titleLower));
+      } else {
+        filters.add(regex(Hunt.TITLE_LOWER_KEY, "^" + HuntController.escapeRegex(titleLower)));
+      }
+    }
+    if (description != null) {
+      filters.add(regex(HuntController.DESCRIPTION_KEY, description));
+    }
+    if (task != null) {
+      // Matches a hunt if any one of its tasks matches, using the
+      // (multikey) index of the task names.
+      filters.add(regex(HuntController.TASK_NAMES_KEY, task));
+    }
+    return filters.isEmpty() ? new Document() : and(filters);
+  }
+
+  /**
+   * Does a hunt meet these criteria? This matches exactly the hunts that
+   * `toBson()` does (a missing field never matches a filter on it).
+   *
+   * @param hunt the hunt to check
+   * @return true if the hunt meets every criterion
+   */
+  public boolean matches(Hunt hunt) {
+    if (hostid != null && !hostid.equals(hunt.hostid)) {
+      return false;
+    }
+    if (titleLower != null) {
+      String huntTitle = hunt.getTitleLower();
+      if (huntTitle == null || !(exactTitle ? huntTitle.equals(titleLower) : huntTitle.startsWith(titleLower))) {
+        return false;
+      }
+    }
+    return found(description, hunt.description) && anyTaskFound(hunt);
+  }
+
+  private boolean anyTaskFound(Hunt hunt) {
+    if (task == null) {
+      return true;
+    }
+    if (hunt.tasks != null) {
+      for (HuntTask huntTask : hunt.tasks) {
+        if (huntTask != null && found(task, huntTask.name)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean found(Pattern pattern, String text) {
+    return pattern == null || text != null && pattern.matcher(text).find();
+  }
+}
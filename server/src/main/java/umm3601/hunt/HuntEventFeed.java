@@ -0,0 +1,425 @@
+package umm3601.hunt;
+
+import static com.mongodb.client.model.Filters.in;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+import org.mongojack.JacksonMongoCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import io.javalin.http.sse.SseClient;
+
+/**
+ * A feed of the hunts being added and deleted, for the clients listening
+ * to `/api/hunts/events`.
+ *
+ * A single watcher thread follows a MongoDB change stream on the hunts
+ * (or, on a standalone `mongod`, which doesn't have change streams,
+ * polls the hunt ids every `pollInterval` and compares them to the last
+ * ones it saw). Each change is serialized once and handed to every
+ * subscriber's queue without blocking. A subscriber that falls so far
+ * behind that its queue fills up is sent a `resync` event (telling it to
+ * fetch the hunts again) and disconnected, rather than holding up the
+ * watcher or the other subscribers.
+ *
+ * The watcher only runs while someone is listening: it's started by the
+ * first subscriber, and stops once the last one leaves (and then starts
+ * afresh, from the current state of the hunts, with the next one).
+ */
+public class HuntEventFeed {
+
+  static final String INSERT_EVENT = "insert";
+  static final String DELETE_EVENT = "delete";
+  static final String RESYNC_EVENT = "resync";
+
+  // How many events each subscriber can fall behind by before it's dropped.
+  static final int DEFAULT_QUEUE_SIZE = 256;
+  static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(2);
+  // How often an idle connection gets a comment, so dead connections are
+  // noticed (and proxies don't time out live ones).
+  static final Duration DEFAULT_KEEP_ALIVE_INTERVAL = Duration.ofSeconds(15);
+  // How long to wait before watching again after the database has an error.
+  static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+  // How long the change stream waits for a change before checking whether
+  // the feed has been stopped.
+  static final Duration MAX_AWAIT_TIME = Duration.ofSeconds(1);
+
+  // The error MongoDB gives for a change stream on a standalone server.
+  static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HuntEventFeed.class);
+
+  private static final ObjectMapper EVENT_WRITER = new ObjectMapper();
+
+  /**
+   * A change to the hunts, already serialized for sending to clients.
+   *
+   * @param sequence where this event comes in the feed (its SSE `id`)
+   * @param type `insert` or `delete`
+   * @param data the JSON body of the event
+   */
+  record HuntEvent(long sequence, String type, String data) {
+  }
+
+  // What a subscriber that has fallen too far behind is left with in
+  // place of its queued events, so a `deliver()` waiting for the next
+  // event wakes up to send the `resync` straight away.
+  static final HuntEvent RESYNC = new HuntEvent(0, RESYNC_EVENT, "{}");
+
+  /**
+   * One client's place in the feed: the events that haven't been sent to
+   * it yet.
+   */
+  static final class Subscriber {
+    private final BlockingQueue<HuntEvent> queue;
+    private volatile boolean overflowed;
+    private volatile boolean closed;
+
+    Subscriber(int queueSize) {
+      queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Queue an event for this subscriber, without waiting. If the queue is
+     * full, the subscriber has fallen too far behind, and gets no more
+     * events: its queue is emptied, except for the `RESYNC` event.
+     *
+     * @param event the event to queue
+     * @return false if the subscriber has overflowed its queue
+     */
+    boolean offer(HuntEvent event) {
+      if (overflowed) {
+        return false;
+      }
+      if (!queue.offer(event)) {
+        overflowed = true;
+        // Only the watcher thread offers events, so with the queue just
+        // emptied there's room for this.
+        queue.clear();
+        queue.offer(RESYNC);
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Wait for the next event.
+     *
+     * @param timeout how long to wait
+     * @return the next event, or `null` if there wasn't one in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    HuntEvent next(Duration timeout) throws InterruptedException {
+      return queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    boolean overflowed() {
+      return overflowed;
+    }
+
+    boolean closed() {
+      return closed;
+    }
+  }
+
+  private final JacksonMongoCollection<Hunt> hunts;
+  private final int queueSize;
+  private final Duration pollInterval;
+  private final Duration keepAliveInterval;
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final AtomicLong sequence = new AtomicLong();
+
+  // The watcher thread, or `null` when the feed isn't being watched. A
+  // watcher that's no longer this one stops as soon as it notices.
+  private volatile Thread watcher;
+  // Whether the database has change streams; if not, we poll.
+  private volatile boolean changeStreams = true;
+  private BsonDocument resumeToken;
+  // The hunt ids as of the last poll, or `null` before the first one.
+  private Set<ObjectId> knownIds;
+
+  /**
+   * Construct a feed of the changes to the given hunts, with the default
+   * queue size and intervals.
+   *
+   * @param hunts the hunts collection
+   */
+  public HuntEventFeed(JacksonMongoCollection<Hunt> hunts) {
+    this(hunts, DEFAULT_QUEUE_SIZE, DEFAULT_POLL_INTERVAL, DEFAULT_KEEP_ALIVE_INTERVAL);
+  }
+
+  /**
+   * Construct a feed of the changes to the given hunts.
+   *
+   * @param hunts the hunts collection
+   * @param queueSize how many events a subscriber can fall behind by
+   * @param pollInterval how often to poll for changes without change streams
+   * @param keepAliveInterval how often to send something on an idle connection
+   */
+  public HuntEventFeed(JacksonMongoCollection<Hunt> hunts, int queueSize, Duration pollInterval,
+      Duration keepAliveInterval) {
+    this.hunts = hunts;
+    this.queueSize = queueSize;
+    this.pollInterval = pollInterval;
+    this.keepAliveInterval = keepAliveInterval;
+  }
+
+  /**
+   * Add a subscriber to the feed, starting the watcher if this is the
+   * first one.
+   *
+   * @return the new subscriber
+   */
+  Subscriber subscribe() {
+    Subscriber subscriber = new Subscriber(queueSize);
+    subscribers.add(subscriber);
+    start();
+    return subscriber;
+  }
+
+  /**
+   * Remove a subscriber from the feed, stopping the watcher if that was
+   * the last one.
+   *
+   * @param subscriber the subscriber to remove
+   */
+  void unsubscribe(Subscriber subscriber) {
+    subscriber.closed = true;
+    subscribers.remove(subscriber);
+    stopIfIdle();
+  }
+
+  int subscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Start the watcher thread, unless it's already running. A new watcher
+   * starts from the hunts as they are now, not from where the last one
+   * stopped.
+   */
+  synchronized void start() {
+    if (watcher != null) {
+      return;
+    }
+    resumeToken = null;
+    knownIds = null;
+    Thread started = new Thread(this::watch, "hunt-event-feed");
+    started.setDaemon(true);
+    watcher = started;
+    started.start();
+  }
+
+  /**
+   * Stop the watcher thread (when the server stops).
+   */
+  synchronized void stop() {
+    if (watcher != null) {
+      watcher.interrupt();
+      watcher = null;
+    }
+  }
+
+  /**
+   * Stop the watcher thread if nobody is listening any more. Subscribers
+   * are added before `start()` is called, and both this and `start()`
+   * hold the feed's lock, so a new subscriber always has a watcher.
+   *
+   * The watcher isn't interrupted, since it may be in the middle of
+   * talking to the database; it stops by itself within `MAX_AWAIT_TIME`
+   * (or `pollInterval`).
+   */
+  synchronized void stopIfIdle() {
+    if (subscribers.isEmpty()) {
+      watcher = null;
+    }
+  }
+
+  boolean watching() {
+    return watcher != null;
+  }
+
+  // Whether the calling thread is (still) the feed's watcher.
+  private boolean isWatcher() {
+    return watcher == Thread.currentThread() && !Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Send a subscriber's events to its client as they come, until the
+   * client goes away or the subscriber falls too far behind. This blocks,
+   * so it runs on a thread of its own for each client.
+   *
+   * @param subscriber the subscriber whose events to send
+   * @param client the client to send them to
+   */
+  void deliver(Subscriber subscriber, SseClient client) {
+    try {
+      // Sending to a client that has gone away closes it, which (through
+      // its `onClose` callback) unsubscribes it.
+      while (!subscriber.closed()) {
+        HuntEvent event = subscriber.next(keepAliveInterval);
+        if (subscriber.overflowed()) {
+          client.sendEvent(RESYNC.type(), RESYNC.data());
+          break;
+        } else if (event == null) {
+          client.sendComment("keep-alive");
+        } else {
+          client.sendEvent(event.type(), event.data(), Long.toString(event.sequence()));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      unsubscribe(subscriber);
+      client.close();
+    }
+  }
+
+  /**
+   * Hand an event to every subscriber. Subscribers whose queues are full
+   * are dropped from the feed.
+   *
+   * @param type `insert` or `delete`
+   * @param huntId the id of the hunt that changed
+   * @param hunt the added hunt, or `null` for a deletion
+   */
+  void publish(String type, String huntId, Hunt hunt) {
+    Map<String, Object> body = hunt == null ? Map.of("id", huntId) : Map.of("id", huntId, "hunt", hunt);
+    String data;
+    try {
+      data = EVENT_WRITER.writeValueAsString(body);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Couldn't serialize the event for hunt " + huntId, e);
+    }
+    HuntEvent event = new HuntEvent(sequence.incrementAndGet(), type, data);
+    subscribers.removeIf(subscriber -> !subscriber.offer(event));
+  }
+
+  // The watcher thread: follow the change stream (or poll) until stopped,
+  // starting over after any database errors.
+  private void watch() {
+    while (isWatcher()) {
+      try {
+        if (changeStreams) {
+          followChangeStream();
+        } else {
+          if (subscribers.isEmpty()) {
+            // Nobody is listening, so there's no point scanning the ids.
+            knownIds = null;
+          } else {
+            pollOnce();
+          }
+          Thread.sleep(pollInterval.toMillis());
+        }
+      } catch (MongoCommandException e) {
+        if (e.getErrorCode() == CHANGE_STREAMS_UNSUPPORTED) {
+          LOGGER.info("The database doesn't have change streams, so hunt events will be polled for");
+          changeStreams = false;
+        } else {
+          retryAfter(e);
+        }
+      } catch (MongoException e) {
+        retryAfter(e);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void retryAfter(MongoException e) {
+    LOGGER.warn("Watching for hunt changes failed; trying again", e);
+    try {
+      Thread.sleep(RETRY_DELAY.toMillis());
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Follow the change stream of hunt insertions and deletions, picking up
+   * where we left off if we've followed it before, until the feed stops.
+   */
+  private void followChangeStream() {
+    ChangeStreamIterable<Hunt> changes = hunts
+      .watch(List.of(Aggregates.match(in("operationType",
+        OperationType.INSERT.getValue(), OperationType.DELETE.getValue()))))
+      .maxAwaitTime(MAX_AWAIT_TIME.toMillis(), TimeUnit.MILLISECONDS);
+    if (resumeToken != null) {
+      changes = changes.resumeAfter(resumeToken);
+    }
+    try (MongoChangeStreamCursor<ChangeStreamDocument<Hunt>> cursor = changes.cursor()) {
+      while (isWatcher()) {
+        ChangeStreamDocument<Hunt> change = cursor.tryNext();
+        if (!isWatcher()) {
+          // Stopped while waiting; a new watcher (if any) has its own stream.
+          break;
+        }
+        if (change != null) {
+          String huntId = change.getDocumentKey().getObjectId("_id").getValue().toHexString();
+          if (change.getOperationType() == OperationType.INSERT) {
+            publish(INSERT_EVENT, huntId, change.getFullDocument());
+          } else {
+            publish(DELETE_EVENT, huntId, null);
+          }
+        }
+        // Even without a change, the resume token moves forward.
+        if (cursor.getResumeToken() != null) {
+          resumeToken = cursor.getResumeToken();
+        }
+      }
+    }
+  }
+
+  /**
+   * Compare the hunt ids to the ones from the last poll, and publish an
+   * event for each hunt that's been added or deleted since. This only
+   * reads the ids (from the `_id` index), plus the added hunts.
+   */
+  void pollOnce() {
+    Set<ObjectId> currentIds = new HashSet<>();
+    hunts.find()
+      .projection(Projections.include("_id"))
+      .forEach(hunt -> currentIds.add(new ObjectId(hunt._id)));
+
+    if (knownIds != null) {
+      List<ObjectId> added = new ArrayList<>(currentIds);
+      added.removeAll(knownIds);
+      if (!added.isEmpty()) {
+        for (Hunt hunt : hunts.find(in("_id", added))) {
+          publish(INSERT_EVENT, hunt._id, hunt);
+        }
+      }
+      for (ObjectId id : knownIds) {
+        if (!currentIds.contains(id)) {
+          publish(DELETE_EVENT, id.toHexString(), null);
+        }
+      }
+    }
+    knownIds = currentIds;
+  }
+}
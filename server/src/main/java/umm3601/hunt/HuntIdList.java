@@ -0,0 +1,15 @@
+package umm3601.hunt;
+
+import java.util.List;
+
+/**
+ * The body of a batch request (`POST /api/hunts/batch-get` or
+ * `POST /api/hunts/batch-delete`): the ids of the hunts to act on. Also
+ * the body of `PUT /api/hunts/{id}/tasks`: the ids of a hunt's tasks, in
+ * their new order.
+ */
+// The field is public so Jackson can fill it in, just as in `Hunt`.
+@SuppressWarnings({"VisibilityModifier"})
+public class HuntIdList {
+  public List<String> ids;
+}
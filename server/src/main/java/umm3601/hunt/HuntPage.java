@@ -0,0 +1,22 @@
+package umm3601.hunt;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated hunt listing, as returned by
+ * `GET /api/hunts?limit=...`.
+ *
+ * `nextPageToken` is the token to pass back as `pageToken` to get the
+ * following page, or `null` if this is the last page.
+ */
+// The fields are public so Jackson can serialize them, just as in `Hunt`.
+@SuppressWarnings({"VisibilityModifier"})
+public class HuntPage {
+  public List<Hunt> hunts;
+  public String nextPageToken;
+
+  public HuntPage(List<Hunt> hunts, String nextPageToken) {
+    this.hunts = hunts;
+    this.nextPageToken = nextPageToken;
+  }
+}
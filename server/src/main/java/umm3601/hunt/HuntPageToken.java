@@ -0,0 +1,116 @@
+package umm3601.hunt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.bson.types.ObjectId;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * The continuation token handed back with each page of hunts.
+ *
+ * A token remembers where the previous page stopped: the field and order
+ * the listing was sorted by, plus the sort value and `_id` of the last hunt
+ * on that page. The next page then starts *after* that position with a
+ * range query on the (sort field, `_id`) index, rather than skipping over
+ * all the hunts that came before it.
+ *
+ * To clients the token is just an opaque string; it's the JSON form of
+ * the position, Base64 (URL safe) encoded.
+ */
+public class HuntPageToken {
+
+  private static final String SORT_BY = "s";
+  private static final String DESCENDING = "d";
+  private static final String LAST_VALUE = "v";
+  private static final String LAST_ID = "id";
+
+  private final String sortBy;
+  private final boolean descending;
+  private final String lastValue;
+  private final ObjectId lastId;
+
+  /**
+   * Construct a token for the position just after the given hunt.
+   *
+   * @param sortBy the field the listing is sorted by
+   * @param descending whether the listing is in descending order
+   * @param lastValue the value of `sortBy` in the last hunt of the page
+   * @param lastId the `_id` of the last hunt of the page
+   */
+  public HuntPageToken(String sortBy, boolean descending, String lastValue, ObjectId lastId) {
+    this.sortBy = sortBy;
+    this.descending = descending;
+    this.lastValue = lastValue;
+    this.lastId = lastId;
+  }
+
+  public String getSortBy() {
+    return sortBy;
+  }
+
+  public boolean isDescending() {
+    return descending;
+  }
+
+  public String getLastValue() {
+    return lastValue;
+  }
+
+  public ObjectId getLastId() {
+    return lastId;
+  }
+
+  /**
+   * Does this token belong to a listing with the given sorting order?
+   * A token from a listing sorted one way can't be used to continue
+   * a listing sorted a different way.
+   *
+   * @param otherSortBy the field the current listing is sorted by
+   * @param otherDescending whether the current listing is descending
+   * @return true if the token was issued for the same sorting order
+   */
+  public boolean matches(String otherSortBy, boolean otherDescending) {
+    return sortBy.equals(otherSortBy) && descending == otherDescending;
+  }
+
+  /**
+   * Encode this token as the opaque string sent to the client.
+   *
+   * @return the encoded token
+   */
+  public String encode() {
+    String json = new Document(SORT_BY, sortBy)
+      .append(DESCENDING, descending)
+      .append(LAST_VALUE, lastValue)
+      .append(LAST_ID, lastId.toHexString())
+      .toJson();
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decode a token previously produced by `encode()`.
+   *
+   * @param token the encoded token from the client
+   * @return the decoded token
+   * @throws BadRequestResponse if the token wasn't one of ours
+   */
+  public static HuntPageToken decode(String token) {
+    try {
+      String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      Document position = Document.parse(json);
+      String sortBy = position.getString(SORT_BY);
+      Boolean descending = position.getBoolean(DESCENDING);
+      String lastId = position.getString(LAST_ID);
+      if (sortBy == null || descending == null || lastId == null) {
+        throw new BadRequestResponse("The page token was not recognized.");
+      }
+      return new HuntPageToken(sortBy, descending, position.getString(LAST_VALUE), new ObjectId(lastId));
+    } catch (IllegalArgumentException | JsonParseException | ClassCastException e) {
+      throw new BadRequestResponse("The page token was not recognized.");
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package umm3601.hunt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bson.conversions.Bson;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.mongodb.client.model.Projections;
+
+import io.javalin.http.BadRequestResponse;
+
+/**
+ * The subset of hunt fields asked for with the `fields` query parameter
+ * (e.g., `?fields=title,hostid`).
+ *
+ * The same subset is used both as the Mongo projection, so the other
+ * fields are never fetched or decoded, and as a Jackson filter on `Hunt`,
+ * so they aren't written out (as `null`s) either. A hunt's `_id` is
+ * always included.
+ */
+public final class HuntProjection {
+
+  // The hunt fields a client can ask for.
+  static final Set<String> PROJECTABLE_FIELDS = Set.of(
+    HuntController.TITLE_KEY,
+    HuntController.HOST_KEY,
+    HuntController.DESCRIPTION_KEY,
+    HuntController.TASK_KEY,
+    HuntController.TASKS_KEY,
+    Hunt.VERSION_KEY);
+
+  private static final String ID_FIELD = "_id";
+  private static final String FILTER_ID = "huntFields";
+
+  // A mapper that only filters the fields of hunts; everything else
+  // (e.g., the `HuntPage` around them) is written out as usual. The
+  // filter is attached with a mix-in rather than on `Hunt` itself so
+  // the mappers that don't know about it (like MongoJack's) are unaffected.
+  private static final ObjectMapper FILTERING_MAPPER = new ObjectMapper()
+    .addMixIn(Hunt.class, FilteredHunt.class);
+
+  @JsonFilter(FILTER_ID)
+  private interface FilteredHunt {
+  }
+
+  private final Set<String> fields;
+  private final ObjectWriter writer;
+
+  private HuntProjection(Set<String> fields) {
+    this.fields = fields;
+    this.writer = FILTERING_MAPPER.writer(new SimpleFilterProvider()
+      .addFilter(FILTER_ID, SimpleBeanPropertyFilter.filterOutAllExcept(fields)));
+  }
+
+  /**
+   * Parse the value of a `fields` query parameter.
+   *
+   * @param fieldList the comma-separated field names, or `null` if the
+   *   parameter wasn't given
+   * @return the projection, or `null` if every field is wanted
+   * @throws BadRequestResponse if a field isn't one that can be asked for
+   */
+  public static HuntProjection parse(String fieldList) {
+    if (fieldList == null || fieldList.isBlank()) {
+      return null;
+    }
+    Set<String> fields = new LinkedHashSet<>();
+    fields.add(ID_FIELD);
+    for (String field : fieldList.split(",")) {
+      String trimmed = field.trim();
+      if (!trimmed.isEmpty() && !ID_FIELD.equals(trimmed)) {
+        if (!PROJECTABLE_FIELDS.contains(trimmed)) {
+          throw new BadRequestResponse("Hunts don't have a field named " + trimmed);
+        }
+        fields.add(trimmed);
+      }
+    }
+    return new HuntProjection(fields);
+  }
+
+  /**
+   * The Mongo projection that fetches just these fields, plus any extra
+   * ones the server itself needs (like the field a page is sorted by).
+   *
+   * @param extraFields fields to fetch even though they won't be sent
+   * @return a Bson projection document
+   */
+  public Bson toBson(String... extraFields) {
+    List<String> included = new ArrayList<>(fields);
+    for (String field : extraFields) {
+      if (!included.contains(field)) {
+        included.add(field);
+      }
+    }
+    return Projections.include(included);
+  }
+
+  /**
+   * Serialize a value (a hunt, a list of hunts, a page of hunts, ...)
+   * with every hunt in it cut down to just these fields.
+   *
+   * @param value the value to serialize
+   * @return the value as JSON
+   */
+  public String toJson(Object value) {
+    try {
+      return writer.writeValueAsString(value);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Couldn't serialize the projected hunts", e);
+    }
+  }
+
+  /**
+   * A canonical description of the projection, for cache keys.
+   *
+   * @return the included field names, comma separated
+   */
+  @Override
+  public String toString() {
+    return String.join(",", new TreeSet<>(fields));
+  }
+}
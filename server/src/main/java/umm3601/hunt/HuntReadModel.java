@@ -0,0 +1,239 @@
+package umm3601.hunt;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.mongojack.JacksonMongoCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoException;
+
+/**
+ * All the hunts, held in memory, so `GET` requests can be answered
+ * without going to the database (the "read model").
+ *
+ * The hunts are loaded when the server starts, into an immutable
+ * `HuntSnapshot`. Reads just take the current snapshot, without locking.
+ * Each add or delete made through the `HuntController` is queued, and
+ * then whichever writer gets the swap lock builds one new snapshot with
+ * every change in the queue and swaps it in. So a burst of writes pays
+ * for a few snapshots rather than one each, and a write never has to
+ * build its snapshot twice because another write swapped one in first.
+ *
+ * Changes that don't go through this server (another server, or someone
+ * editing the database directly) are picked up by a consistency check,
+ * which loads all the hunts again every `checkIntervalSeconds` and, if
+ * they differ from the current snapshot, swaps in the fresh copy. If the
+ * snapshot changed while the check was loading the hunts, it's left alone
+ * until the next check, so a check can't undo a write it didn't see.
+ */
+public class HuntReadModel {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HuntReadModel.class);
+
+  /**
+   * How often the read model is checked against the database.
+   *
+   * @param checkIntervalSeconds the time between consistency checks
+   */
+  public record Settings(long checkIntervalSeconds) {
+
+    private static final String DEFAULT_CHECK_SECONDS = "30";
+
+    public Settings {
+      // Each check loads every hunt, so checking without a pause would keep
+      // the database busy doing nothing else.
+      if (checkIntervalSeconds < 1) {
+        throw new IllegalArgumentException("The read model can be checked at most once a second");
+      }
+    }
+
+    /**
+     * Read the settings from the `HUNT_READ_MODEL_CHECK_SECONDS`
+     * environment variable: the time between consistency checks (30).
+     *
+     * @param env the environment variables
+     * @return the settings
+     */
+    public static Settings fromEnvironment(Map<String, String> env) {
+      return new Settings(Long.parseLong(env.getOrDefault("HUNT_READ_MODEL_CHECK_SECONDS", DEFAULT_CHECK_SECONDS)));
+    }
+  }
+
+  private final JacksonMongoCollection<Hunt> hunts;
+  private final Duration checkInterval;
+  private final Consumer<Set<String>> onRepaired;
+
+  private final AtomicReference<HuntSnapshot> current = new AtomicReference<>(HuntSnapshot.EMPTY);
+  // The changes waiting to be made to the snapshot, and the lock held
+  // while swapping in a new one.
+  private final Queue<Consumer<HuntSnapshot.Builder>> pending = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock swapping = new ReentrantLock();
+  private final AtomicLong checks = new AtomicLong();
+  private final AtomicLong repairs = new AtomicLong();
+
+  private Thread checker;
+  private volatile boolean running;
+
+  /**
+   * Construct a read model of the hunts.
+   *
+   * @param hunts the hunts collection
+   * @param settings how often to check the read model against the database
+   * @param onRepaired called (on the checker thread) with the ids of the
+   *   hunts that a consistency check found had changed in the database
+   */
+  public HuntReadModel(JacksonMongoCollection<Hunt> hunts, Settings settings, Consumer<Set<String>> onRepaired) {
+    this.hunts = hunts;
+    this.checkInterval = Duration.ofSeconds(settings.checkIntervalSeconds());
+    this.onRepaired = onRepaired;
+  }
+
+  /**
+   * Load all the hunts, and start the thread that checks them against the
+   * database from then on.
+   */
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+    current.set(load());
+    running = true;
+    checker = new Thread(this::checkUntilClosed, "hunt-read-model");
+    checker.setDaemon(true);
+    checker.start();
+  }
+
+  /**
+   * Stop checking the hunts against the database.
+   */
+  synchronized void close() {
+    running = false;
+    if (checker == null) {
+      return;
+    }
+    checker.interrupt();
+    try {
+      checker.join(checkInterval.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    checker = null;
+  }
+
+  /**
+   * @return the current snapshot of the hunts
+   */
+  HuntSnapshot snapshot() {
+    return current.get();
+  }
+
+  /**
+   * Record that hunts have been written to the database.
+   *
+   * @param added the hunts that were added
+   */
+  void added(Collection<Hunt> added) {
+    change(builder -> builder.put(added));
+  }
+
+  /**
+   * Record that hunts have been deleted from the database.
+   *
+   * @param ids the ids of the hunts that were deleted
+   */
+  void removed(Collection<String> ids) {
+    change(builder -> builder.remove(ids));
+  }
+
+  /**
+   * Queue a change to the snapshot, and wait until it's been swapped in,
+   * along with any other changes queued by then. By the time this gets
+   * the lock, either a writer holding it before has made the change, or
+   * it's still queued, so this makes it.
+   *
+   * @param change the change to make
+   */
+  private void change(Consumer<HuntSnapshot.Builder> change) {
+    pending.add(change);
+    swapping.lock();
+    try {
+      if (pending.isEmpty()) {
+        return;
+      }
+      HuntSnapshot.Builder builder = current.get().toBuilder();
+      for (Consumer<HuntSnapshot.Builder> next = pending.poll(); next != null; next = pending.poll()) {
+        next.accept(builder);
+      }
+      current.set(builder.build());
+    } finally {
+      swapping.unlock();
+    }
+  }
+
+  long checks() {
+    return checks.get();
+  }
+
+  long repairs() {
+    return repairs.get();
+  }
+
+  private HuntSnapshot load() {
+    return HuntSnapshot.of(hunts.find().into(new ArrayList<>()));
+  }
+
+  // The checker thread: check the hunts every `checkInterval` until closed.
+  private void checkUntilClosed() {
+    while (running) {
+      try {
+        Thread.sleep(checkInterval.toMillis());
+        check();
+      } catch (InterruptedException e) {
+        return;
+      } catch (MongoException e) {
+        LOGGER.warn("Couldn't check the hunts in memory against the database", e);
+      }
+    }
+  }
+
+  /**
+   * Load all the hunts from the database, and if they differ from the
+   * current snapshot (and it hasn't changed in the meantime), swap them in.
+   *
+   * @return the ids of the hunts that were out of date, which is empty if
+   *   there were none (or the snapshot changed during the check)
+   */
+  Set<String> check() {
+    checks.incrementAndGet();
+    HuntSnapshot before = current.get();
+    HuntSnapshot loaded = load();
+    Set<String> different = before.differences(loaded);
+    if (different.isEmpty()) {
+      return different;
+    }
+    swapping.lock();
+    try {
+      if (!current.compareAndSet(before, loaded)) {
+        LOGGER.debug("The hunts changed while they were being checked; they'll be checked again next time");
+        return Set.of();
+      }
+    } finally {
+      swapping.unlock();
+    }
+    repairs.incrementAndGet();
+    LOGGER.info("{} hunts in memory were out of date with the database, and have been reloaded", different.size());
+    onRepaired.accept(different);
+    return different;
+  }
+}
@@ -0,0 +1,362 @@
+package umm3601.hunt;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.conversions.Bson;
+import org.mongojack.JacksonMongoCollection;
+import org.mongojack.ObjectMapperConfigurer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Sets up the `hunts` collection when the server starts: creates the
+ * indexes the hunt queries need, fills in derived fields that hunts added
+ * from outside the server are missing, and then checks (with `explain()`)
+ * that each of the listing queries we expect to be fast really is
+ * answered from an index.
+ *
+ * Everything here is idempotent, so it's safe (and cheap) to run on every
+ * start.
+ */
+public final class HuntSchema {
+
+  public static final String COLLECTION_NAME = "hunts";
+
+  // The query plan stages that mean a query isn't (fully) using an index:
+  // a scan of the whole collection, or a sort done in memory.
+  static final Set<String> SLOW_STAGES = Set.of("COLLSCAN", "SORT");
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HuntSchema.class);
+
+  // How much a search term counts for in each field when ranking search
+  // results; a match in the title matters more than one in a task.
+  static final int TITLE_SEARCH_WEIGHT = 10;
+  static final int DESCRIPTION_SEARCH_WEIGHT = 3;
+  static final int TASK_SEARCH_WEIGHT = 1;
+
+  // The fields in the text index, and their weights. Tasks are searched by
+  // the names of all of a hunt's tasks (of which `task` is just the first).
+  static final Document TEXT_WEIGHTS = new Document()
+    .append(HuntController.TITLE_KEY, TITLE_SEARCH_WEIGHT)
+    .append(HuntController.DESCRIPTION_KEY, DESCRIPTION_SEARCH_WEIGHT)
+    .append(HuntController.TASK_NAMES_KEY, TASK_SEARCH_WEIGHT);
+
+  // Titles with any letters `$toLower` wouldn't have lowercased (see
+  // `backfillTitleLower()`), and how many of their lowercase titles are
+  // written at once.
+  static final String NON_ASCII = "[^\\x00-\\x7F]";
+  static final int BACKFILL_BATCH_SIZE = 1000;
+
+  /**
+   * The indexes on the hunts. Each (field, `_id`) index serves both
+   * listings sorted by that field and keyset pagination over them.
+   */
+  static final List<IndexModel> INDEXES = List.of(
+    // Listings sorted (and paged) by title or host. Descending listings
+    // just walk the same indexes backwards. These, along with the
+    // (hostid, title, `_id`) index, back the `SORT_ORDERS`.
+    new IndexModel(Indexes.ascending(HuntController.TITLE_KEY, "_id")),
+    new IndexModel(Indexes.ascending(HuntController.HOST_KEY, "_id")),
+    // Hunts sorted by host and then title, and one host's hunts sorted
+    // by title.
+    new IndexModel(Indexes.ascending(HuntController.HOST_KEY, HuntController.TITLE_KEY, "_id")),
+    // Case-insensitive title filters, against the lowercase copy of the
+    // title. Exact matches come out already sorted by title.
+    new IndexModel(Indexes.ascending(Hunt.TITLE_LOWER_KEY, HuntController.TITLE_KEY, "_id")),
+    // Task filters, against the names of all of a hunt's tasks. Since
+    // `tasks` is an array this is a multikey index, with an entry for
+    // each task.
+    new IndexModel(Indexes.ascending(HuntController.TASK_NAMES_KEY)),
+    // The text index (MongoDB's inverted index of the words in each hunt)
+    // that backs `/api/hunts/search`.
+    new IndexModel(
+      Indexes.compoundIndex(
+        Indexes.text(HuntController.TITLE_KEY),
+        Indexes.text(HuntController.DESCRIPTION_KEY),
+        Indexes.text(HuntController.TASK_NAMES_KEY)),
+      new IndexOptions().weights(TEXT_WEIGHTS)));
+
+  /**
+   * The orders hunt listings can be sorted in (with the `sortby` query
+   * parameter). Each of them is the prefix of one of the `INDEXES`, so
+   * MongoDB can read the hunts out of the index already sorted, whichever
+   * direction they're sorted in. `_id` is always added as the last key,
+   * so hunts that tie on the other keys still come out in a stable order.
+   */
+  static final List<List<String>> SORT_ORDERS = List.of(
+    List.of(HuntController.TITLE_KEY),
+    List.of(HuntController.HOST_KEY),
+    List.of(HuntController.HOST_KEY, HuntController.TITLE_KEY));
+
+  /**
+   * A (filter, sort) combination `getHunts` builds, which should be
+   * answered from an index without an in-memory sort.
+   */
+  record QueryShape(String name, Bson filter, Bson sort) {
+  }
+
+  // The query shapes that are checked at startup: every sort order over
+  // all the hunts, and the filters that can be answered in sorted order.
+  // Filtering by title prefix or by description or task still sorts the
+  // matching hunts in memory, so those aren't here.
+  static final List<QueryShape> QUERY_SHAPES = queryShapes();
+
+  private static List<QueryShape> queryShapes() {
+    List<QueryShape> shapes = new ArrayList<>();
+    for (List<String> sortOrder : SORT_ORDERS) {
+      shapes.add(new QueryShape("all hunts by " + sortOrder, new Document(), sortingOrder(sortOrder, false)));
+      shapes.add(new QueryShape("all hunts by " + sortOrder + ", descending",
+        new Document(), sortingOrder(sortOrder, true)));
+    }
+    List<String> byTitle = List.of(HuntController.TITLE_KEY);
+    shapes.add(new QueryShape("one host's hunts by title",
+      eq(HuntController.HOST_KEY, "host"), sortingOrder(byTitle, false)));
+    shapes.add(new QueryShape("hunts with an exact title",
+      eq(Hunt.TITLE_LOWER_KEY, "title"), sortingOrder(byTitle, false)));
+    return List.copyOf(shapes);
+  }
+
+  /**
+   * The sorting document for one of the `SORT_ORDERS`, with `_id` added to
+   * break ties.
+   *
+   * @param sortOrder the fields to sort by
+   * @param descending whether to sort in descending order
+   * @return a Bson sorting document
+   */
+  static Bson sortingOrder(List<String> sortOrder, boolean descending) {
+    List<String> keys = new ArrayList<>(sortOrder);
+    keys.add("_id");
+    return descending ? Sorts.descending(keys) : Sorts.ascending(keys);
+  }
+
+  // The mapper MongoJack reads and writes hunts with. Unlike the mappers
+  // behind the API's responses, it writes out each hunt's `titleLower`, so
+  // it's stored (and indexed) along with the hunt.
+  private static final ObjectMapper STORAGE_MAPPER = ObjectMapperConfigurer
+    .configureObjectMapper(new ObjectMapper())
+    .addMixIn(Hunt.class, StoredHunt.class);
+
+  @JsonIgnoreProperties(value = { Hunt.TITLE_LOWER_KEY }, allowGetters = true)
+  private interface StoredHunt {
+  }
+
+  private HuntSchema() {
+  }
+
+  /**
+   * The hunts collection, as MongoJack reads and writes `Hunt`s.
+   *
+   * @param database the database containing hunt data (with the read
+   *   preference the collection should use)
+   * @return the hunts collection
+   */
+  public static JacksonMongoCollection<Hunt> collection(MongoDatabase database) {
+    return JacksonMongoCollection.builder()
+      .withObjectMapper(STORAGE_MAPPER)
+      .build(database, COLLECTION_NAME, Hunt.class, UuidRepresentation.STANDARD);
+  }
+
+  /**
+   * Set up the hunts collection, and check the query plans for the hunt
+   * listings. Any query that isn't answered from an index is logged as
+   * a warning, or, in strict mode, stops the server from starting.
+   *
+   * @param database the database containing hunt data
+   * @param strict whether a query that isn't answered from an index is an error
+   * @return the problems found with the query plans (if not strict)
+   * @throws IllegalStateException in strict mode, if there are problems
+   */
+  public static List<String> bootstrap(MongoDatabase database, boolean strict) {
+    MongoCollection<Document> hunts = database.getCollection(COLLECTION_NAME);
+    ensureIndexes(hunts);
+    backfillTitleLower(hunts);
+    backfillTasks(hunts);
+
+    List<String> problems = verifyQueryPlans(hunts);
+    reportProblems(problems, strict);
+    return problems;
+  }
+
+  /**
+   * Log each query plan problem as a warning, or in strict mode, fail.
+   *
+   * @param problems the query plan problems
+   * @param strict whether any problems are an error
+   * @throws IllegalStateException in strict mode, if there are problems
+   */
+  static void reportProblems(List<String> problems, boolean strict) {
+    for (String problem : problems) {
+      LOGGER.warn("Hunt query isn't using an index: {}", problem);
+    }
+    if (strict && !problems.isEmpty()) {
+      throw new IllegalStateException("Hunt queries aren't using indexes: " + String.join("; ", problems));
+    }
+  }
+
+  /**
+   * Create the hunt indexes. Creating an index that already exists (with
+   * the same options) does nothing, so this is safe to do every time.
+   *
+   * @param hunts the hunts collection
+   */
+  static void ensureIndexes(MongoCollection<Document> hunts) {
+    dropStaleTextIndex(hunts);
+    hunts.createIndexes(INDEXES);
+  }
+
+  /**
+   * A collection can only have one text index, so drop any text index on
+   * the hunts that doesn't cover the `TEXT_WEIGHTS` fields (like the one
+   * from before it covered every task's name, rather than just `task`),
+   * so the current one can take its place.
+   *
+   * @param hunts the hunts collection
+   */
+  static void dropStaleTextIndex(MongoCollection<Document> hunts) {
+    for (Document index : hunts.listIndexes().into(new ArrayList<>())) {
+      Document key = index.get("key", Document.class);
+      if (key != null && "text".equals(key.get("_fts"))
+        && !TEXT_WEIGHTS.equals(index.get("weights", Document.class))) {
+        LOGGER.info("Replacing the hunts' out of date text index {}", index.getString("name"));
+        hunts.dropIndex(index.getString("name"));
+      }
+    }
+  }
+
+  /**
+   * Hunts inserted from outside the server (e.g., by the seed script)
+   * won't have a lowercase title yet, so fill it in for any that are
+   * missing it.
+   *
+   * The titles are lowercased here, just as `Hunt.getTitleLower()` does,
+   * rather than with MongoDB's `$toLower`, which only lowercases ASCII
+   * letters (so "Étang" would never match a `title` filter for "étang").
+   * For the same reason, hunts with non-ASCII titles are checked even if
+   * they have a lowercase title, in case it came from `$toLower`.
+   *
+   * @param hunts the hunts collection
+   */
+  static void backfillTitleLower(MongoCollection<Document> hunts) {
+    Bson needsChecking = and(
+      exists(HuntController.TITLE_KEY),
+      or(exists(Hunt.TITLE_LOWER_KEY, false), regex(HuntController.TITLE_KEY, NON_ASCII)));
+    FindIterable<Document> toCheck = hunts.find(needsChecking)
+      .projection(Projections.include(HuntController.TITLE_KEY, Hunt.TITLE_LOWER_KEY));
+    List<WriteModel<Document>> writes = new ArrayList<>();
+    for (Document hunt : toCheck) {
+      if (!(hunt.get(HuntController.TITLE_KEY) instanceof String title)) {
+        continue;
+      }
+      String titleLower = title.toLowerCase(Locale.ROOT);
+      if (!titleLower.equals(hunt.get(Hunt.TITLE_LOWER_KEY))) {
+        writes.add(new UpdateOneModel<>(eq("_id", hunt.get("_id")), Updates.set(Hunt.TITLE_LOWER_KEY, titleLower)));
+      }
+      if (writes.size() == BACKFILL_BATCH_SIZE) {
+        hunts.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        writes.clear();
+      }
+    }
+    if (!writes.isEmpty()) {
+      hunts.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+    }
+  }
+
+  /**
+   * Hunts stored before they had a list of tasks (or inserted from
+   * outside the server) only have their one `task`, so make that the
+   * first (and only) task in their list. Task ids only have to be unique
+   * within a hunt, so the hunt's own id serves for that first task.
+   *
+   * @param hunts the hunts collection
+   */
+  static void backfillTasks(MongoCollection<Document> hunts) {
+    hunts.updateMany(
+      and(exists(HuntController.TASK_KEY), exists(HuntController.TASKS_KEY, false)),
+      List.of(new Document("$set",
+        new Document(HuntController.TASKS_KEY, List.of(new Document()
+          .append(HuntTask.ID_KEY, new Document("$toString", "$_id"))
+          .append(HuntTask.NAME_KEY, "$" + HuntController.TASK_KEY))))));
+  }
+
+  /**
+   * Ask MongoDB how it would run each of the `QUERY_SHAPES`, and report
+   * any that would scan the whole collection or sort in memory.
+   *
+   * @param hunts the hunts collection
+   * @return a description of each query that isn't answered from an index
+   */
+  static List<String> verifyQueryPlans(MongoCollection<Document> hunts) {
+    List<String> problems = new ArrayList<>();
+    for (QueryShape shape : QUERY_SHAPES) {
+      Document explained = hunts.find(shape.filter()).sort(shape.sort()).explain(ExplainVerbosity.QUERY_PLANNER);
+      Set<String> slowStages = new TreeSet<>(planStages(explained));
+      slowStages.retainAll(SLOW_STAGES);
+      if (!slowStages.isEmpty()) {
+        problems.add(shape.name() + " (" + String.join(", ", slowStages) + ")");
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * Every stage in the winning plan of an `explain()`. The plan is a tree
+   * whose shape depends on the MongoDB version and query engine, so this
+   * just collects every `stage` anywhere in it.
+   *
+   * @param explained the output of `explain()`
+   * @return the names of the stages in the winning plan
+   */
+  static Set<String> planStages(Document explained) {
+    Set<String> stages = new TreeSet<>();
+    Document queryPlanner = explained.get("queryPlanner", Document.class);
+    if (queryPlanner != null) {
+      collectStages(queryPlanner.get("winningPlan"), stages);
+    }
+    return stages;
+  }
+
+  private static void collectStages(Object node, Set<String> stages) {
+    if (node instanceof Map<?, ?> map) {
+      if (map.get("stage") instanceof String stage) {
+        stages.add(stage);
+      }
+      for (Object child : map.values()) {
+        collectStages(child, stages);
+      }
+    } else if (node instanceof List<?> list) {
+      for (Object child : list) {
+        collectStages(child, stages);
+      }
+    }
+  }
+}
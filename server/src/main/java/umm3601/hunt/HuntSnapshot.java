@@ -0,0 +1,324 @@
+package umm3601.hunt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * An immutable copy of all the hunts, for the `HuntReadModel`, indexed by
+ * id, by host, and by lowercase title.
+ *
+ * A snapshot is never changed once it's built: adding or removing hunts
+ * makes a new snapshot (with a `Builder`), so any number of requests can
+ * read a snapshot at once without locking, and never see one half
+ * updated. The new snapshot shares the hunt objects, and the lists in its
+ * indexes for the hosts and titles the changes didn't touch.
+ */
+public final class HuntSnapshot {
+
+  static final HuntSnapshot EMPTY = new HuntSnapshot(Map.of(), Map.of(), new TreeMap<>());
+
+  private final Map<String, Hunt> byId;
+  private final Map<String, List<Hunt>> byHost;
+  private final NavigableMap<String, List<Hunt>> byTitleLower;
+
+  private HuntSnapshot(Map<String, Hunt> byId, Map<String, List<Hunt>> byHost,
+      NavigableMap<String, List<Hunt>> byTitleLower) {
+    this.byId = Collections.unmodifiableMap(byId);
+    this.byHost = Collections.unmodifiableMap(byHost);
+    this.byTitleLower = Collections.unmodifiableNavigableMap(byTitleLower);
+  }
+
+  /**
+   * Builds a new snapshot from an existing one. It copies the id map and
+   * the index maps once, but only the index lists of the hosts and titles
+   * that it changes. Lists in the new snapshot are only changed before it's
+   * built, so the old snapshot never sees a change.
+   */
+  static final class Builder {
+    private final Map<String, Hunt> byId;
+    private final Map<String, List<Hunt>> byHost;
+    private final NavigableMap<String, List<Hunt>> byTitleLower;
+    // The hosts and titles whose lists this builder has its own copies of.
+    private final Set<String> ownHosts = new HashSet<>();
+    private final Set<String> ownTitles = new HashSet<>();
+    private final HuntSnapshot base;
+    private boolean changed;
+
+    private Builder(HuntSnapshot base) {
+      this.base = base;
+      this.byId = new HashMap<>(base.byId);
+      this.byHost = new HashMap<>(base.byHost);
+      this.byTitleLower = new TreeMap<>(base.byTitleLower);
+    }
+
+    /**
+     * Add these hunts (or replace them, if there's already a hunt with the
+     * same id).
+     *
+     * @param hunts the hunts to add, which must all have ids
+     * @return this builder
+     */
+    Builder put(Collection<Hunt> hunts) {
+      for (Hunt hunt : hunts) {
+        Hunt old = byId.put(hunt._id, hunt);
+        if (old != null) {
+          unindex(old);
+        }
+        index(hunt);
+        changed = true;
+      }
+      return this;
+    }
+
+    /**
+     * Remove the hunts with these ids, if they're here.
+     *
+     * @param ids the ids of the hunts to remove
+     * @return this builder
+     */
+    Builder remove(Collection<String> ids) {
+      for (String id : ids) {
+        Hunt old = byId.remove(id);
+        if (old != null) {
+          unindex(old);
+          changed = true;
+        }
+      }
+      return this;
+    }
+
+    /**
+     * @return the new snapshot (or the one this started from, if nothing changed)
+     */
+    HuntSnapshot build() {
+      return changed ? new HuntSnapshot(byId, byHost, byTitleLower) : base;
+    }
+
+    private void index(Hunt hunt) {
+      if (hunt.hostid != null) {
+        ownList(byHost, ownHosts, hunt.hostid).add(hunt);
+      }
+      if (hunt.title != null) {
+        ownList(byTitleLower, ownTitles, hunt.getTitleLower()).add(hunt);
+      }
+    }
+
+    private void unindex(Hunt hunt) {
+      if (hunt.hostid != null) {
+        removeFrom(byHost, ownHosts, hunt.hostid, hunt);
+      }
+      if (hunt.title != null) {
+        removeFrom(byTitleLower, ownTitles, hunt.getTitleLower(), hunt);
+      }
+    }
+
+    private static void removeFrom(Map<String, List<Hunt>> index, Set<String> own, String key, Hunt hunt) {
+      List<Hunt> list = ownList(index, own, key);
+      list.removeIf(indexed -> indexed._id.equals(hunt._id));
+      if (list.isEmpty()) {
+        index.remove(key);
+      }
+    }
+
+    // The list for a key, copied first if it's still shared with the base
+    // snapshot.
+    private static List<Hunt> ownList(Map<String, List<Hunt>> index, Set<String> own, String key) {
+      if (own.add(key)) {
+        List<Hunt> shared = index.get(key);
+        index.put(key, shared == null ? new ArrayList<>() : new ArrayList<>(shared));
+      }
+      return index.get(key);
+    }
+  }
+
+  /**
+   * Build a snapshot of the given hunts.
+   *
+   * @param hunts the hunts, which must all have ids
+   * @return the snapshot
+   */
+  static HuntSnapshot of(Collection<Hunt> hunts) {
+    return EMPTY.with(hunts);
+  }
+
+  /**
+   * @return a builder for a new snapshot, starting from this one
+   */
+  Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * A snapshot with these hunts added (or replaced, if there's already
+   * a hunt with the same id).
+   *
+   * @param hunts the hunts to add
+   * @return the new snapshot
+   */
+  HuntSnapshot with(Collection<Hunt> hunts) {
+    return toBuilder().put(hunts).build();
+  }
+
+  /**
+   * A snapshot without the hunts with these ids.
+   *
+   * @param ids the ids of the hunts to remove
+   * @return the new snapshot (or this one, if none of them were here)
+   */
+  HuntSnapshot without(Collection<String> ids) {
+    return toBuilder().remove(ids).build();
+  }
+
+  /**
+   * @param id a hunt id
+   * @return the hunt with that id, or `null` if there isn't one
+   */
+  Hunt get(String id) {
+    return byId.get(id);
+  }
+
+  int size() {
+    return byId.size();
+  }
+
+  /**
+   * The hunts that meet the criteria, in the given order (ending with the
+   * `_id`, just like `HuntSchema.sortingOrder()`).
+   *
+   * The host or title index narrows down the hunts to check when the
+   * criteria include one, just as they would in MongoDB.
+   *
+   * @param criteria the filters to apply
+   * @param sortKeys the fields to sort by, one of the `HuntSchema.SORT_ORDERS`
+   * @param descending whether to sort in descending order
+   * @return the matching hunts, sorted
+   */
+  List<Hunt> find(HuntCriteria criteria, List<String> sortKeys, boolean descending) {
+    List<Hunt> matching = new ArrayList<>();
+    for (Hunt hunt : candidates(criteria)) {
+      if (criteria.matches(hunt)) {
+        matching.add(hunt);
+      }
+    }
+    matching.sort(ordering(sortKeys, descending));
+    return matching;
+  }
+
+  /**
+   * A page of the hunts that meet the criteria, sorted by one field: the
+   * first `count` of them after the position recorded in a page token
+   * (just as `HuntController.afterPosition()` would find them in MongoDB).
+   *
+   * @param criteria the filters to apply
+   * @param sortBy the field to sort by, one of `HuntController.PAGEABLE_FIELDS`
+   * @param descending whether to sort in descending order
+   * @param after where the previous page stopped, or `null` for the first page
+   * @param count the most hunts to return
+   * @return the hunts on the page, in order
+   */
+  List<Hunt> page(HuntCriteria criteria, String sortBy, boolean descending, HuntPageToken after, int count) {
+    List<String> sortKeys = List.of(sortBy);
+    List<Hunt> sorted = find(criteria, sortKeys, descending);
+    int from = 0;
+    if (after != null) {
+      // A stand-in for the last hunt of the previous page, which has just
+      // the fields the hunts are ordered by.
+      Hunt last = new Hunt();
+      last._id = after.getLastId().toHexString();
+      if (HuntController.TITLE_KEY.equals(sortBy)) {
+        last.title = after.getLastValue();
+      } else {
+        last.hostid = after.getLastValue();
+      }
+      int position = Collections.binarySearch(sorted, last, ordering(sortKeys, descending));
+      from = position >= 0 ? position + 1 : -position - 1;
+    }
+    return new ArrayList<>(sorted.subList(from, Math.min(sorted.size(), from + count)));
+  }
+
+  private Collection<Hunt> candidates(HuntCriteria criteria) {
+    if (criteria.hostid() != null) {
+      return byHost.getOrDefault(criteria.hostid(), List.of());
+    }
+    if (criteria.titleLower() != null) {
+      if (criteria.exactTitle()) {
+        return byTitleLower.getOrDefault(criteria.titleLower(), List.of());
+      }
+      List<Hunt> prefixed = new ArrayList<>();
+      for (Map.Entry<String, List<Hunt>> entry : byTitleLower.tailMap(criteria.titleLower(), true).entrySet()) {
+        if (!entry.getKey().startsWith(criteria.titleLower())) {
+          break;
+        }
+        prefixed.addAll(entry.getValue());
+      }
+      return prefixed;
+    }
+    return byId.values();
+  }
+
+  /**
+   * The order MongoDB sorts hunts in for `HuntSchema.sortingOrder()`:
+   * by each of the sort keys, and then by `_id`, with missing values
+   * first (when ascending). Hex `ObjectId` strings sort in the same
+   * order as the `ObjectId`s themselves.
+   *
+   * @param sortKeys the fields to sort by (each one of `HuntController.PAGEABLE_FIELDS`)
+   * @param descending whether to sort in descending order
+   * @return a comparator for hunts in that order
+   */
+  static Comparator<Hunt> ordering(List<String> sortKeys, boolean descending) {
+    Comparator<Hunt> ordering = null;
+    for (String key : sortKeys) {
+      Function<Hunt, String> field = HuntController.PAGEABLE_FIELDS.get(key);
+      Comparator<Hunt> byKey = Comparator.comparing(field, Comparator.nullsFirst(Comparator.naturalOrder()));
+      ordering = ordering == null ? byKey : ordering.thenComparing(byKey);
+    }
+    Comparator<Hunt> idOrder = Comparator.comparing(hunt -> hunt._id);
+    ordering = ordering == null ? idOrder : ordering.thenComparing(idOrder);
+    return descending ? ordering.reversed() : ordering;
+  }
+
+  /**
+   * Find the ids of the hunts that differ between this snapshot and
+   * another: those that are only in one of them, or whose fields differ.
+   *
+   * @param other the snapshot to compare with
+   * @return the ids of the hunts that differ
+   */
+  Set<String> differences(HuntSnapshot other) {
+    Set<String> different = new HashSet<>();
+    for (Hunt hunt : byId.values()) {
+      if (!sameFields(hunt, other.get(hunt._id))) {
+        different.add(hunt._id);
+      }
+    }
+    for (String id : other.byId.keySet()) {
+      if (!byId.containsKey(id)) {
+        different.add(id);
+      }
+    }
+    return different;
+  }
+
+  // `Hunt.equals()` only compares ids, so compare every field.
+  private static boolean sameFields(Hunt hunt, Hunt other) {
+    return other != null
+      && Objects.equals(hunt.hostid, other.hostid)
+      && Objects.equals(hunt.title, other.title)
+      && Objects.equals(hunt.description, other.description)
+      && Objects.equals(hunt.task, other.task)
+      && Objects.equals(hunt.tasks, other.tasks)
+      && hunt.version == other.version;
+  }
+}
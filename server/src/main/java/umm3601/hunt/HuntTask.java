@@ -0,0 +1,50 @@
+package umm3601.hunt;
+
+import java.util.Objects;
+
+import org.bson.types.ObjectId;
+
+/**
+ * One of the tasks in a hunt, stored as a subdocument in the hunt's
+ * `tasks` array. Each task has an id of its own, so it can be renamed,
+ * moved, or removed in place, without rewriting the rest of the hunt.
+ */
+// The fields are public so Jackson (and MongoJack) can fill them in, just as in `Hunt`.
+@SuppressWarnings({"VisibilityModifier"})
+public class HuntTask {
+
+  static final String ID_KEY = "id";
+  static final String NAME_KEY = "name";
+
+  // A hex string, unique within its hunt. Tasks get ids from the server,
+  // not the client, so they're never compared with `_id`s.
+  public String id;
+  public String name;
+
+  /**
+   * Make a new task, with a new id.
+   *
+   * @param name what the task is
+   * @return the task
+   */
+  static HuntTask named(String name) {
+    HuntTask task = new HuntTask();
+    task.id = new ObjectId().toHexString();
+    task.name = name;
+    return task;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof HuntTask)) {
+      return false;
+    }
+    HuntTask other = (HuntTask) obj;
+    return Objects.equals(id, other.id) && Objects.equals(name, other.name);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, name);
+  }
+}
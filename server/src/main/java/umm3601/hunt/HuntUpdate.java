@@ -0,0 +1,89 @@
+package umm3601.hunt;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * The body of a `PATCH /api/hunts/{id}` request: the fields of the hunt to
+ * change (any left out, or `null`, stay as they are), and the `version` of
+ * the hunt the client last saw, which the hunt must still be at for the
+ * change to be made.
+ */
+// The fields are public so Jackson can fill them in, just as in `Hunt`.
+@SuppressWarnings({"VisibilityModifier"})
+public class HuntUpdate {
+  public String title;
+  public String hostid;
+  public String description;
+  public String task;
+  public Long version;
+
+  /**
+   * @return the fields this update changes, and their new values, in order
+   */
+  Map<String, String> changes() {
+    Map<String, String> changes = new LinkedHashMap<>();
+    if (title != null) {
+      changes.put(HuntController.TITLE_KEY, title);
+    }
+    if (hostid != null) {
+      changes.put(HuntController.HOST_KEY, hostid);
+    }
+    if (description != null) {
+      changes.put(HuntController.DESCRIPTION_KEY, description);
+    }
+    if (task != null) {
+      changes.put(HuntController.TASK_KEY, task);
+    }
+    return changes;
+  }
+
+  /**
+   * The Mongo update for this change: a pipeline that `$set`s just the
+   * changed fields (and the lowercase title, if the title changed), and
+   * bumps the hunt's version.
+   *
+   * A hunt's `task` is always the name of its first task (see
+   * `Hunt.tasks`), so changing the `task` renames the first task too
+   * (or gives a hunt stored without a list of tasks its first one).
+   *
+   * @return the update pipeline for `findOneAndUpdate`
+   */
+  List<Bson> toPipeline() {
+    Document fields = new Document();
+    for (Map.Entry<String, String> change : changes().entrySet()) {
+      fields.append(change.getKey(), HuntController.literal(change.getValue()));
+    }
+    if (title != null) {
+      // Kept in step with the title, as `Hunt.getTitleLower()` is.
+      fields.append(Hunt.TITLE_LOWER_KEY, HuntController.literal(title.toLowerCase(Locale.ROOT)));
+    }
+    if (task != null) {
+      fields.append(HuntController.TASKS_KEY, renamedFirstTask());
+    }
+    fields.append(Hunt.VERSION_KEY, HuntController.NEXT_VERSION);
+    return List.of(new Document("$set", fields));
+  }
+
+  private Document renamedFirstTask() {
+    String tasks = "$" + HuntController.TASKS_KEY;
+    Document size = new Document("$size", new Document("$ifNull", List.of(tasks, List.of())));
+    Document renamed = new Document("$concatArrays", List.of(
+      List.of(new Document("$mergeObjects", List.of(
+        new Document("$arrayElemAt", List.of(tasks, 0)),
+        new Document(HuntTask.NAME_KEY, HuntController.literal(task))))),
+      new Document("$slice", List.of(tasks, 1, size))));
+    HuntTask onlyTask = HuntTask.named(task);
+    return new Document("$cond", List.of(
+      new Document("$gt", List.of(size, 0)),
+      renamed,
+      List.of(new Document()
+        .append(HuntTask.ID_KEY, onlyTask.id)
+        .append(HuntTask.NAME_KEY, HuntController.literal(onlyTask.name)))));
+  }
+}
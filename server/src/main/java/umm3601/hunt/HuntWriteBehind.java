@@ -0,0 +1,399 @@
+package umm3601.hunt;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.bson.types.ObjectId;
+import org.mongojack.JacksonMongoCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+
+import umm3601.DatabaseOptions;
+
+/**
+ * Writes new hunts to the database in the background ("write-behind"), so
+ * adding a hunt doesn't have to wait for the database.
+ *
+ * New hunts (which already have their ids) go into a bounded buffer, and
+ * a single flusher thread writes them out with unordered `insertMany`
+ * batches: as soon as it has `batchSize` hunts, or once the oldest hunt
+ * has waited `maxDelayMillis`. So at peak, many hunts share each round
+ * trip to the database.
+ *
+ * The price is durability: a hunt that's been accepted but not yet
+ * written is lost if the server dies. The size of the buffer caps how
+ * many hunts that can be, and `maxDelayMillis` how long each is at risk.
+ * When the buffer is full, `offer()` refuses the hunt, and the caller
+ * should write it itself.
+ *
+ * A hunt that's deleted before it's written has to be `withdraw()`n, or
+ * the flusher would write it anyway: it's dropped from the buffer if it's
+ * still there, or deleted again as soon as the batch it's in is written.
+ */
+public class HuntWriteBehind {
+
+  // How long to wait before trying a batch again after a database error.
+  static final Duration RETRY_DELAY = Duration.ofMillis(500);
+
+  // How long to wait for the last hunts to be written when shutting down.
+  static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HuntWriteBehind.class);
+
+  /**
+   * How the write-behind buffer trades durability for latency.
+   *
+   * @param bufferSize the most hunts waiting to be written (and so at risk) at once
+   * @param batchSize the most hunts written in one `insertMany`
+   * @param maxDelayMillis the longest a hunt waits before being written
+   * @param writeConcern how many of the database's servers have to acknowledge
+   *   each batch, or `null` for the server's usual write concern
+   */
+  public record Settings(int bufferSize, int batchSize, long maxDelayMillis, WriteConcern writeConcern) {
+
+    private static final String DEFAULT_BUFFER_SIZE = "1000";
+    private static final String DEFAULT_BATCH_SIZE = "100";
+    private static final String DEFAULT_MAX_DELAY_MS = "20";
+
+    /**
+     * Settings that write with the server's usual write concern.
+     *
+     * @param bufferSize the most hunts waiting to be written at once
+     * @param batchSize the most hunts written in one `insertMany`
+     * @param maxDelayMillis the longest a hunt waits before being written
+     */
+    public Settings(int bufferSize, int batchSize, long maxDelayMillis) {
+      this(bufferSize, batchSize, maxDelayMillis, null);
+    }
+
+    /**
+     * Read the settings from these environment variables:
+     *
+     * - `HUNT_WRITE_BUFFER_SIZE`: the most hunts waiting to be written (1000).
+     * - `HUNT_WRITE_BATCH_SIZE`: the most hunts written at once (100).
+     * - `HUNT_WRITE_MAX_DELAY_MS`: the longest a hunt waits to be written (20).
+     * - `HUNT_WRITE_BEHIND_WRITE_CONCERN`: the write concern for the batches
+     *   (the server's `MONGO_WRITE_CONCERN`). Since the client has already
+     *   been told the hunt was accepted, `majority` costs it no latency, and
+     *   means a written hunt can't be lost if the primary fails; `w1` or
+     *   `unacknowledged` write faster, but lose more if it does.
+     *
+     * @param env the environment variables
+     * @return the settings
+     */
+    public static Settings fromEnvironment(Map<String, String> env) {
+      String writeConcern = env.getOrDefault("HUNT_WRITE_BEHIND_WRITE_CONCERN", "");
+      return new Settings(
+        Integer.parseInt(env.getOrDefault("HUNT_WRITE_BUFFER_SIZE", DEFAULT_BUFFER_SIZE)),
+        Integer.parseInt(env.getOrDefault("HUNT_WRITE_BATCH_SIZE", DEFAULT_BATCH_SIZE)),
+        Long.parseLong(env.getOrDefault("HUNT_WRITE_MAX_DELAY_MS", DEFAULT_MAX_DELAY_MS)),
+        writeConcern.isBlank() ? null : DatabaseOptions.parseWriteConcern(writeConcern));
+    }
+  }
+
+  // The hunts collection, with the write-behind's own write concern.
+  private final MongoCollection<Hunt> hunts;
+  private final Settings settings;
+  private final Consumer<List<Hunt>> onWritten;
+  private final BlockingQueue<Hunt> buffer;
+  private final LongAdder lost = new LongAdder();
+
+  // The ids of the hunts taken but not yet written (or given up on), and
+  // of those among them that have been withdrawn. Both only change while
+  // holding the lock on `withdrawn`, so a hunt is either withdrawn before
+  // the flusher is done with it, or found to be already written.
+  private final Set<String> unwritten = new HashSet<>();
+  private final Set<String> withdrawn = new HashSet<>();
+
+  private Thread flusher;
+  private volatile boolean running;
+  // Offers hold the read lock from checking `running` until their hunt is
+  // in the buffer, and `close()` takes the write lock to stop `running`.
+  // So a hunt is never put in the buffer after the flusher has seen it
+  // stopped and empty, where it would never be written.
+  private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+  /**
+   * Construct a write-behind buffer for new hunts.
+   *
+   * @param hunts the hunts collection
+   * @param settings the size of the buffer and the batches, and how long hunts can wait
+   * @param onWritten called (on the flusher thread) with each batch of hunts once it's been written
+   */
+  public HuntWriteBehind(JacksonMongoCollection<Hunt> hunts, Settings settings, Consumer<List<Hunt>> onWritten) {
+    this.hunts = settings.writeConcern() == null ? hunts : hunts.withWriteConcern(settings.writeConcern());
+    this.settings = settings;
+    this.onWritten = onWritten;
+    this.buffer = new ArrayBlockingQueue<>(settings.bufferSize());
+  }
+
+  /**
+   * Start the flusher thread.
+   */
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    flusher = new Thread(this::flushUntilClosed, "hunt-write-behind");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Stop taking new hunts, and wait for the ones already taken to be
+   * written.
+   */
+  synchronized void close() {
+    closing.writeLock().lock();
+    try {
+      running = false;
+    } finally {
+      closing.writeLock().unlock();
+    }
+    if (flusher == null) {
+      return;
+    }
+    try {
+      flusher.join(CLOSE_TIMEOUT.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (!buffer.isEmpty()) {
+      LOGGER.error("{} new hunts weren't written to the database before shutting down", buffer.size());
+    }
+    flusher = null;
+  }
+
+  /**
+   * Take a new hunt to be written in the background, without waiting.
+   *
+   * @param hunt the hunt, which must already have its id
+   * @return false if the buffer is full (or closed), in which case the
+   *   caller has to write the hunt itself
+   */
+  boolean offer(Hunt hunt) {
+    closing.readLock().lock();
+    try {
+      if (!running) {
+        return false;
+      }
+      synchronized (withdrawn) {
+        unwritten.add(hunt._id);
+      }
+      if (buffer.offer(hunt)) {
+        return true;
+      }
+      synchronized (withdrawn) {
+        unwritten.remove(hunt._id);
+      }
+      return false;
+    } finally {
+      closing.readLock().unlock();
+    }
+  }
+
+  /**
+   * Withdraw a hunt that's been deleted, if it hasn't been written yet, so
+   * it never shows up in the database (or stays there only until its
+   * batch has been written).
+   *
+   * @param id the hunt's id
+   * @return whether the hunt had been taken but not yet written, and so
+   *   is now withdrawn
+   */
+  boolean withdraw(String id) {
+    synchronized (withdrawn) {
+      if (!unwritten.contains(id)) {
+        return false;
+      }
+      withdrawn.add(id);
+    }
+    buffer.removeIf(hunt -> id.equals(hunt._id));
+    return true;
+  }
+
+  int pending() {
+    return buffer.size();
+  }
+
+  // The flusher thread: write batches until closed, and then write
+  // whatever is left.
+  private void flushUntilClosed() {
+    List<Hunt> batch = new ArrayList<>(settings.batchSize());
+    try {
+      while (running || !buffer.isEmpty()) {
+        if (nextBatch(batch)) {
+          write(batch);
+          batch.clear();
+        }
+      }
+    } catch (InterruptedException e) {
+      LOGGER.error("Stopped writing new hunts, with {} still to write", batch.size() + buffer.size());
+    }
+  }
+
+  /**
+   * Collect the next batch of hunts: wait for a first hunt, then for more
+   * until there's a full batch or the first one has waited long enough.
+   *
+   * @param batch the (empty) list to put the batch in
+   * @return false if no hunts came in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean nextBatch(List<Hunt> batch) throws InterruptedException {
+    Hunt first = buffer.poll(settings.maxDelayMillis(), TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return false;
+    }
+    batch.add(first);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.maxDelayMillis());
+    while (batch.size() < settings.batchSize()) {
+      buffer.drainTo(batch, settings.batchSize() - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= settings.batchSize() || remaining <= 0) {
+        break;
+      }
+      Hunt next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+    }
+    return true;
+  }
+
+  /**
+   * Write a batch of hunts, trying again after database errors until it
+   * works (or the server is shutting down). Since the hunts already have
+   * their ids, trying again is safe: a hunt that made it in the first
+   * time is just a duplicate key error the second time.
+   *
+   * Hunts the database refused for any other reason are lost, and are
+   * left out of the hunts passed to `onWritten` (see `lost()`), as are
+   * withdrawn hunts, which are deleted again once they're written.
+   *
+   * @param taken the hunts to write
+   * @throws InterruptedException if interrupted while waiting to try again
+   */
+  void write(List<Hunt> taken) throws InterruptedException {
+    List<Hunt> batch = settle(taken, false);
+    List<Hunt> written = new ArrayList<>(batch);
+    try {
+      insert(batch, written);
+    } finally {
+      written.retainAll(settle(batch, true));
+    }
+    if (!written.isEmpty()) {
+      onWritten.accept(List.copyOf(written));
+    }
+  }
+
+  /**
+   * Leave out the withdrawn hunts among some that were taken, which are
+   * forgotten about from then on. Once the hunts have been written (or
+   * given up on), any withdrawn since are deleted again.
+   *
+   * @param taken the hunts
+   * @param done whether the flusher is done with the hunts
+   * @return the hunts that weren't withdrawn
+   */
+  private List<Hunt> settle(List<Hunt> taken, boolean done) {
+    List<Hunt> kept = new ArrayList<>();
+    List<ObjectId> withdrawnIds = new ArrayList<>();
+    synchronized (withdrawn) {
+      for (Hunt hunt : taken) {
+        if (withdrawn.remove(hunt._id)) {
+          unwritten.remove(hunt._id);
+          withdrawnIds.add(new ObjectId(hunt._id));
+        } else {
+          if (done) {
+            unwritten.remove(hunt._id);
+          }
+          kept.add(hunt);
+        }
+      }
+    }
+    if (done && !withdrawnIds.isEmpty()) {
+      try {
+        hunts.deleteMany(Filters.in("_id", withdrawnIds));
+      } catch (MongoException e) {
+        LOGGER.error("Hunts {} were deleted before they were written, but couldn't be deleted after", withdrawnIds, e);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Insert a batch of hunts, trying again until it works (or the server
+   * is shutting down), and leave just those that made it in `written`.
+   *
+   * @param batch the hunts to write
+   * @param written all the hunts to start with, and then those that were written
+   * @throws InterruptedException if interrupted while waiting to try again
+   */
+  private void insert(List<Hunt> batch, List<Hunt> written) throws InterruptedException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    while (true) {
+      try {
+        hunts.insertMany(batch, new InsertManyOptions().ordered(false));
+        break;
+      } catch (MongoBulkWriteException e) {
+        Set<Integer> failed = new HashSet<>();
+        for (BulkWriteError error : e.getWriteErrors()) {
+          if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+            LOGGER.error("New hunt {} couldn't be written: {}", batch.get(error.getIndex())._id, error.getMessage());
+            failed.add(error.getIndex());
+          }
+        }
+        written.clear();
+        for (int i = 0; i < batch.size(); i++) {
+          if (!failed.contains(i)) {
+            written.add(batch.get(i));
+          }
+        }
+        lost.add(failed.size());
+        break;
+      } catch (MongoException e) {
+        if (!running) {
+          LOGGER.error("{} new hunts couldn't be written while shutting down", batch.size(), e);
+          lost.add(batch.size());
+          written.clear();
+          return;
+        }
+        LOGGER.warn("Writing {} new hunts failed; trying again", batch.size(), e);
+        Thread.sleep(RETRY_DELAY.toMillis());
+      }
+    }
+  }
+
+  /**
+   * @return how many hunts were taken but never written, because the
+   *   database refused them (or couldn't be reached while shutting down)
+   */
+  long lost() {
+    return lost.sum();
+  }
+}
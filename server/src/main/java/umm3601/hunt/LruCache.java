@@ -0,0 +1,157 @@
+package umm3601.hunt;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A small, bounded, in-memory cache.
+ *
+ * Once the cache holds `maxSize` entries, adding another one evicts the
+ * least recently used entry. Entries also expire `timeToLive` after they
+ * were added, so the cache never serves anything older than that even if
+ * the database was changed behind the server's back.
+ *
+ * All access is synchronized on the cache, which is plenty for the small
+ * amount of work done while holding the lock.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class LruCache<K, V> {
+
+  // LinkedHashMap's defaults, spelled out so we can ask for access order.
+  private static final int INITIAL_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final int maxSize;
+  private final long timeToLiveNanos;
+  private final LongSupplier nanoClock;
+  private final Map<K, CacheEntry<V>> entries;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * A cached value, along with when it was put in the cache.
+   */
+  private record CacheEntry<V>(V value, long addedAt) {
+  }
+
+  /**
+   * Construct a cache that uses the system clock to expire entries.
+   *
+   * @param maxSize the most entries the cache will hold
+   * @param timeToLive how long an entry stays in the cache
+   */
+  public LruCache(int maxSize, Duration timeToLive) {
+    this(maxSize, timeToLive, System::nanoTime);
+  }
+
+  /**
+   * Construct a cache that uses the given clock to expire entries;
+   * tests use this to control the passing of time.
+   *
+   * @param maxSize the most entries the cache will hold
+   * @param timeToLive how long an entry stays in the cache
+   * @param nanoClock the clock, in nanoseconds, used to expire entries
+   */
+  public LruCache(int maxSize, Duration timeToLive, LongSupplier nanoClock) {
+    this.maxSize = maxSize;
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.nanoClock = nanoClock;
+    this.entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+        if (size() > LruCache.this.maxSize) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Get the cached value for a key.
+   *
+   * @param key the key to look up
+   * @return the cached value, or `null` if there isn't one (or it expired)
+   */
+  public synchronized V get(K key) {
+    CacheEntry<V> entry = entries.get(key);
+    if (entry != null && nanoClock.getAsLong() - entry.addedAt() >= timeToLiveNanos) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.value();
+  }
+
+  /**
+   * Add (or replace) the cached value for a key.
+   *
+   * @param key the key to cache the value under
+   * @param value the value to cache
+   */
+  public synchronized void put(K key, V value) {
+    entries.put(key, new CacheEntry<>(value, nanoClock.getAsLong()));
+  }
+
+  /**
+   * Add (or replace) the cached value for a key, but only if a condition
+   * still holds. The condition is checked while holding the cache's lock,
+   * so nothing can be invalidated between checking it and adding the value.
+   *
+   * @param key the key to cache the value under
+   * @param value the value to cache
+   * @param condition whether the value should still be cached
+   * @return whether the value was cached
+   */
+  public synchronized boolean putIf(K key, V value, BooleanSupplier condition) {
+    if (!condition.getAsBoolean()) {
+      return false;
+    }
+    put(key, value);
+    return true;
+  }
+
+  /**
+   * Remove the cached value for a key, if there is one.
+   *
+   * @param key the key to forget
+   */
+  public synchronized void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  /**
+   * Remove everything from the cache.
+   */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long hits() {
+    return hits;
+  }
+
+  public synchronized long misses() {
+    return misses;
+  }
+
+  public synchronized long evictions() {
+    return evictions;
+  }
+}
@@ -0,0 +1,107 @@
+package umm3601.hunt;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Makes concurrent requests for the same thing share one load ("single
+ * flight").
+ *
+ * The first caller to ask for a key runs the loader; anyone who asks for
+ * the same key while that load is still going waits for it and gets the
+ * same result (or the same exception) instead of starting a load of their
+ * own. Once the load is done the key is forgotten, so nothing is kept
+ * here: caching results is the job of the `LruCache` the loader fills.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the loaded values
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder shared = new LongAdder();
+
+  /**
+   * Load the value for a key, or wait for the load of it that's already
+   * going.
+   *
+   * @param key the key to load
+   * @param loader loads the value, if no one else is already loading it
+   * @return the loaded value
+   */
+  public V load(K key, Supplier<V> loader) {
+    CompletableFuture<V> ours = new CompletableFuture<>();
+    CompletableFuture<V> theirs = inFlight.putIfAbsent(key, ours);
+    if (theirs != null) {
+      shared.increment();
+      return await(theirs);
+    }
+    loads.increment();
+    try {
+      V value = loader.get();
+      ours.complete(value);
+      return value;
+    } catch (RuntimeException | Error e) {
+      // Those waiting get this too, rather than waiting forever.
+      ours.completeExceptionally(e);
+      throw e;
+    } finally {
+      // Unless `forget()` has already let someone else start a new load.
+      inFlight.remove(key, ours);
+    }
+  }
+
+  /**
+   * Stop sharing the load that's going for a key, if there is one: anyone
+   * who asks for it from now on starts a new load. For when the value has
+   * changed, and the load going may have read the old one.
+   *
+   * @param key the key to forget
+   */
+  public void forget(K key) {
+    inFlight.remove(key);
+  }
+
+  private static <V> V await(CompletableFuture<V> load) {
+    try {
+      return load.join();
+    } catch (CompletionException e) {
+      // Rethrow what the loader threw, so (for instance) a
+      // `NotFoundResponse` still becomes a 404.
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return how many loads were actually run
+   */
+  public long loads() {
+    return loads.sum();
+  }
+
+  /**
+   * @return how many requests shared a load someone else was running
+   */
+  public long shared() {
+    return shared.sum();
+  }
+
+  /**
+   * @return how many loads are going right now
+   */
+  public int inFlight() {
+    return inFlight.size();
+  }
+}
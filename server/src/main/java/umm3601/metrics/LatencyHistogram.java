@@ -0,0 +1,136 @@
+package umm3601.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies, in nanoseconds, in the style of HdrHistogram.
+ *
+ * Values are counted in log-linear buckets: each power of two is split into
+ * `SUB_BUCKET_COUNT` equal sub-buckets, so every recorded value is known to
+ * within about 3% no matter how large it is, while the whole histogram is a
+ * fixed array of counters.
+ *
+ * Recording is lock-free (just atomic increments), so many request threads
+ * can record into the same histogram without contending on a lock. Reading
+ * while values are being recorded gives a slightly fuzzy, but never
+ * corrupt, picture.
+ */
+public class LatencyHistogram {
+
+  // Each power of two is split into 2^SUB_BUCKET_BITS sub-buckets.
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  // Anything slower than an hour is recorded as an hour; it's plenty
+  // to know it was really slow.
+  static final long MAX_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+
+  private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+
+  /**
+   * Record one latency.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long value = Math.min(Math.max(nanos, 0), MAX_TRACKABLE_NANOS);
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.increment();
+    totalNanos.add(value);
+  }
+
+  /**
+   * @return how many latencies have been recorded
+   */
+  public long count() {
+    return totalCount.sum();
+  }
+
+  /**
+   * @return the sum of all the recorded latencies, in nanoseconds
+   */
+  public long sumNanos() {
+    return totalNanos.sum();
+  }
+
+  /**
+   * Count the recorded latencies that were no more than `nanos`.
+   *
+   * Since values are only known to the resolution of their bucket, a
+   * bucket is counted if its highest value is no more than `nanos`.
+   *
+   * @param nanos the upper limit, in nanoseconds
+   * @return how many recorded latencies were (at most) that long
+   */
+  public long countAtOrBelow(long nanos) {
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT && highestValueInBucket(i) <= nanos; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Get the latency at the given quantile, e.g., `0.99` for the 99th
+   * percentile: the smallest latency that at least that fraction of the
+   * recorded latencies were no longer than.
+   *
+   * @param quantile the quantile, between 0 and 1
+   * @return the latency, in nanoseconds, or 0 if nothing has been recorded
+   */
+  public long valueAtQuantile(double quantile) {
+    long total = count();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return highestValueInBucket(i);
+      }
+    }
+    return MAX_TRACKABLE_NANOS;
+  }
+
+  /**
+   * Find the bucket a (non-negative) value is counted in.
+   *
+   * Small values (below 2 * SUB_BUCKET_COUNT) each get their own bucket.
+   * Larger values are bucketed by their highest SUB_BUCKET_BITS + 1 bits:
+   * the leading one says which power of two they're in, and the bits
+   * after it say which sub-bucket.
+   *
+   * @param value the value to find the bucket for
+   * @return the index of the value's bucket
+   */
+  static int bucketIndex(long value) {
+    if (value < 2 * SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = magnitude - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * @param index a bucket index
+   * @return the highest value counted in that bucket
+   */
+  static long highestValueInBucket(int index) {
+    if (index < 2 * SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long subBucket = index % SUB_BUCKET_COUNT;
+    return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,383 @@
+package umm3601.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+
+/**
+ * Collects latency and throughput metrics for the server, and serves them
+ * from `/metrics` in the Prometheus text format, so load tests and
+ * dashboards can see how the server is doing (tail latencies included).
+ *
+ * It keeps track of:
+ *
+ * - how long each HTTP request took, by method, route, and status,
+ *   recorded by Javalin before/after handlers (see `install()`);
+ * - how many requests are currently being handled;
+ * - how long each MongoDB command took, and how many failed, recorded
+ *   by a listener on the MongoDB driver (see `mongoCommandListener()`),
+ *   along with a moving average of how long they've been taking lately
+ *   (see `recentMongoLatencyNanos()`);
+ * - how busy the driver's connection pools are, and how long requests
+ *   wait to get a connection, recorded by another listener (see
+ *   `mongoConnectionPoolListener()`), so we can tell when slow requests
+ *   are waiting on the pool rather than on the database;
+ * - the JVM's heap usage and garbage collection activity.
+ */
+public class ServerMetrics {
+
+  static final String METRICS_PATH = "/metrics";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  // The request attribute holding the `System.nanoTime()` a request started at.
+  private static final String START_NANOS = "metrics.startNanos";
+
+  // The label used for requests that didn't match any route, so random
+  // (or malicious) paths can't create an unbounded number of series.
+  static final String UNMATCHED_ROUTE = "unmatched";
+
+  // The `le` (less than or equal) bucket boundaries, in seconds, reported
+  // for each latency histogram.
+  private static final double[] BUCKET_BOUNDS_SECONDS = {
+    0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  // Each MongoDB command counts for 1/RECENT_LATENCY_WEIGHT of the moving
+  // average of recent command latencies.
+  static final int RECENT_LATENCY_WEIGHT = 16;
+
+  // `getMore` commands on a change stream wait for changes on purpose, so
+  // they'd make the database look slow when it isn't.
+  static final String GET_MORE = "getMore";
+
+  /**
+   * The labels a request latency is recorded under.
+   */
+  private record RequestKey(String method, String route, int status) {
+  }
+
+  private final ConcurrentMap<RequestKey, LatencyHistogram> requestLatencies = new ConcurrentHashMap<>();
+  private final AtomicInteger requestsInFlight = new AtomicInteger();
+  private final ConcurrentMap<String, LatencyHistogram> mongoLatencies = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> mongoFailures = new ConcurrentHashMap<>();
+  // The bits of a `double`, so the average doesn't lose the fractions of a
+  // nanosecond each step adds (which would stop it short of the latest
+  // latencies, or leave it at 0 for latencies under RECENT_LATENCY_WEIGHT).
+  private final AtomicLong recentMongoNanos = new AtomicLong(Double.doubleToLongBits(0));
+  private final ConcurrentMap<ServerId, Integer> poolMaxSizes = new ConcurrentHashMap<>();
+  private final AtomicInteger poolConnections = new AtomicInteger();
+  private final AtomicInteger poolCheckedOut = new AtomicInteger();
+  private final AtomicInteger poolWaiting = new AtomicInteger();
+  private final LatencyHistogram poolWaitTimes = new LatencyHistogram();
+  private final ConcurrentMap<String, LongAdder> poolCheckOutFailures = new ConcurrentHashMap<>();
+
+  /**
+   * Install the metrics on a Javalin server: before and after handlers that
+   * time every request, and the `/metrics` route that reports the results.
+   *
+   * @param server the Javalin server to measure
+   */
+  public void install(Javalin server) {
+    server.before(ctx -> {
+      requestsInFlight.incrementAndGet();
+      ctx.attribute(START_NANOS, System.nanoTime());
+    });
+    server.after(ctx -> {
+      Long startNanos = ctx.attribute(START_NANOS);
+      if (startNanos != null) {
+        requestsInFlight.decrementAndGet();
+        recordRequest(ctx.method().name(), routeOf(ctx), ctx.status().getCode(), System.nanoTime() - startNanos);
+      }
+    });
+    server.get(METRICS_PATH, this::getMetrics);
+  }
+
+  /**
+   * The route a request matched (e.g., `/api/hunts/{id}` rather than the
+   * actual path), which keeps the number of distinct labels small.
+   */
+  private static String routeOf(Context ctx) {
+    String route = ctx.endpointHandlerPath();
+    return route == null || route.isEmpty() ? UNMATCHED_ROUTE : route;
+  }
+
+  /**
+   * Record how long a request took.
+   *
+   * @param method the HTTP method
+   * @param route the route the request matched
+   * @param status the response's HTTP status code
+   * @param nanos how long the request took, in nanoseconds
+   */
+  public void recordRequest(String method, String route, int status, long nanos) {
+    requestLatencies
+      .computeIfAbsent(new RequestKey(method, route, status), key -> new LatencyHistogram())
+      .record(nanos);
+  }
+
+  /**
+   * Get a listener to register with the MongoDB client (with
+   * `MongoClientSettings.Builder.addCommandListener()`), which times every
+   * command the server sends to the database.
+   *
+   * @return the command listener
+   */
+  public CommandListener mongoCommandListener() {
+    return new CommandListener() {
+      @Override
+      public void commandSucceeded(CommandSucceededEvent event) {
+        mongoLatencies
+          .computeIfAbsent(event.getCommandName(), name -> new LatencyHistogram())
+          .record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        recordRecentMongoLatency(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+      }
+
+      @Override
+      public void commandFailed(CommandFailedEvent event) {
+        mongoLatencies
+          .computeIfAbsent(event.getCommandName(), name -> new LatencyHistogram())
+          .record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        recordRecentMongoLatency(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+        mongoFailures.computeIfAbsent(event.getCommandName(), name -> new LongAdder()).increment();
+      }
+    };
+  }
+
+  private void recordRecentMongoLatency(String commandName, long nanos) {
+    if (!GET_MORE.equals(commandName)) {
+      recentMongoNanos.accumulateAndGet(nanos, (averageBits, latest) -> {
+        double average = Double.longBitsToDouble(averageBits);
+        return Double.doubleToLongBits(average + (latest - average) / RECENT_LATENCY_WEIGHT);
+      });
+    }
+  }
+
+  /**
+   * How long MongoDB commands have been taking lately: an exponentially
+   * weighted moving average, so it follows the database as it slows down
+   * or speeds up, without keeping a window of recent latencies.
+   *
+   * @return the recent average command latency, in nanoseconds
+   */
+  public long recentMongoLatencyNanos() {
+    return Math.round(Double.longBitsToDouble(recentMongoNanos.get()));
+  }
+
+  /**
+   * Get a listener to register with the MongoDB client's connection pool
+   * settings (with `ConnectionPoolSettings.Builder.addConnectionPoolListener()`),
+   * which keeps track of how many connections are open and in use, and how
+   * long it takes to check one out of the pool.
+   *
+   * @return the connection pool listener
+   */
+  public ConnectionPoolListener mongoConnectionPoolListener() {
+    return new ConnectionPoolListener() {
+      @Override
+      public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        poolMaxSizes.put(event.getServerId(), event.getSettings().getMaxSize());
+      }
+
+      @Override
+      public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        poolMaxSizes.remove(event.getServerId());
+      }
+
+      @Override
+      public void connectionCreated(ConnectionCreatedEvent event) {
+        poolConnections.incrementAndGet();
+      }
+
+      @Override
+      public void connectionClosed(ConnectionClosedEvent event) {
+        poolConnections.decrementAndGet();
+      }
+
+      @Override
+      public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        poolWaiting.incrementAndGet();
+      }
+
+      @Override
+      public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        poolWaiting.decrementAndGet();
+        poolCheckedOut.incrementAndGet();
+        poolWaitTimes.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+      }
+
+      @Override
+      public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        poolWaiting.decrementAndGet();
+        poolWaitTimes.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        poolCheckOutFailures
+          .computeIfAbsent(event.getReason().name().toLowerCase(Locale.ROOT), reason -> new LongAdder())
+          .increment();
+      }
+
+      @Override
+      public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        poolCheckedOut.decrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * Set the body of the response to be all the metrics, in the Prometheus
+   * text format.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getMetrics(Context ctx) {
+    ctx.contentType(CONTENT_TYPE);
+    ctx.result(render());
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Render all the metrics in the Prometheus text exposition format.
+   *
+   * @return the metrics, as text
+   */
+  public String render() {
+    StringBuilder out = new StringBuilder();
+
+    header(out, "http_server_requests_seconds", "histogram", "How long HTTP requests took to handle.");
+    for (Map.Entry<RequestKey, LatencyHistogram> entry : sorted(requestLatencies).entrySet()) {
+      RequestKey key = entry.getKey();
+      String labels = "method=\"" + escape(key.method()) + "\",route=\"" + escape(key.route())
+        + "\",status=\"" + key.status() + "\"";
+      histogram(out, "http_server_requests_seconds", labels, entry.getValue());
+    }
+
+    header(out, "http_server_requests_in_flight", "gauge", "HTTP requests currently being handled.");
+    out.append("http_server_requests_in_flight ").append(requestsInFlight.get()).append('\n');
+
+    header(out, "mongodb_commands_seconds", "histogram", "How long MongoDB commands took.");
+    for (Map.Entry<String, LatencyHistogram> entry : sorted(mongoLatencies).entrySet()) {
+      histogram(out, "mongodb_commands_seconds", "command=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+    }
+
+    header(out, "mongodb_command_failures_total", "counter", "MongoDB commands that failed.");
+    for (Map.Entry<String, LongAdder> entry : sorted(mongoFailures).entrySet()) {
+      out.append("mongodb_command_failures_total{command=\"").append(escape(entry.getKey())).append("\"} ")
+        .append(entry.getValue().sum()).append('\n');
+    }
+
+    renderPool(out);
+    renderJvm(out);
+    return out.toString();
+  }
+
+  private void renderPool(StringBuilder out) {
+    header(out, "mongodb_pool_max_connections", "gauge", "The most connections the MongoDB connection pools can open.");
+    out.append("mongodb_pool_max_connections ")
+      .append(poolMaxSizes.values().stream().mapToInt(Integer::intValue).sum()).append('\n');
+    header(out, "mongodb_pool_connections", "gauge", "Connections open in the MongoDB connection pools.");
+    out.append("mongodb_pool_connections ").append(poolConnections.get()).append('\n');
+    header(out, "mongodb_pool_connections_in_use", "gauge", "Connections checked out of the MongoDB connection pools.");
+    out.append("mongodb_pool_connections_in_use ").append(poolCheckedOut.get()).append('\n');
+    header(out, "mongodb_pool_waiting", "gauge", "Operations waiting to check a connection out of the pools.");
+    out.append("mongodb_pool_waiting ").append(poolWaiting.get()).append('\n');
+
+    header(out, "mongodb_pool_wait_seconds", "histogram", "How long it took to check a connection out of the pools.");
+    histogram(out, "mongodb_pool_wait_seconds", "", poolWaitTimes);
+
+    header(out, "mongodb_pool_checkout_failures_total", "counter",
+      "Failed attempts to check a connection out of the pools, by reason.");
+    for (Map.Entry<String, LongAdder> entry : sorted(poolCheckOutFailures).entrySet()) {
+      out.append("mongodb_pool_checkout_failures_total{reason=\"").append(escape(entry.getKey())).append("\"} ")
+        .append(entry.getValue().sum()).append('\n');
+    }
+  }
+
+  private static void renderJvm(StringBuilder out) {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    header(out, "jvm_memory_heap_used_bytes", "gauge", "Heap memory in use.");
+    out.append("jvm_memory_heap_used_bytes ").append(heap.getUsed()).append('\n');
+    header(out, "jvm_memory_heap_committed_bytes", "gauge", "Heap memory committed by the JVM.");
+    out.append("jvm_memory_heap_committed_bytes ").append(heap.getCommitted()).append('\n');
+    header(out, "jvm_memory_heap_max_bytes", "gauge", "The most heap memory the JVM will use.");
+    out.append("jvm_memory_heap_max_bytes ").append(heap.getMax()).append('\n');
+
+    header(out, "jvm_gc_collections_total", "counter", "Garbage collections, by collector.");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      out.append("jvm_gc_collections_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+        .append(Math.max(gc.getCollectionCount(), 0)).append('\n');
+    }
+    header(out, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection, by collector.");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      out.append("jvm_gc_collection_seconds_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+        .append(TimeUnit.MILLISECONDS.toNanos(Math.max(gc.getCollectionTime(), 0)) / NANOS_PER_SECOND)
+        .append('\n');
+    }
+
+    header(out, "jvm_threads_live", "gauge", "Live JVM threads.");
+    out.append("jvm_threads_live ").append(ManagementFactory.getThreadMXBean().getThreadCount()).append('\n');
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+    // Histograms without labels of their own still have the `le` label on each bucket.
+    String bucketLabels = labels.isEmpty() ? "" : labels + ",";
+    String seriesLabels = labels.isEmpty() ? "" : "{" + labels + "}";
+    for (double bound : BUCKET_BOUNDS_SECONDS) {
+      out.append(name).append("_bucket{").append(bucketLabels).append("le=\"").append(bound).append("\"} ")
+        .append(histogram.countAtOrBelow((long) (bound * NANOS_PER_SECOND))).append('\n');
+    }
+    long count = histogram.count();
+    out.append(name).append("_bucket{").append(bucketLabels).append("le=\"+Inf\"} ").append(count).append('\n');
+    out.append(name).append("_sum").append(seriesLabels).append(' ')
+      .append(histogram.sumNanos() / NANOS_PER_SECOND).append('\n');
+    out.append(name).append("_count").append(seriesLabels).append(' ').append(count).append('\n');
+  }
+
+  /**
+   * Escape a label value as the Prometheus text format requires.
+   */
+  static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /**
+   * A sorted copy of a map, so the output is in a stable order.
+   */
+  private static <K, V> Map<K, V> sorted(Map<K, V> map) {
+    Map<K, V> copy = new TreeMap<>(Comparator.comparing(Object::toString));
+    copy.putAll(map);
+    return copy;
+  }
+}
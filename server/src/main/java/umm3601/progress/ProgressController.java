@@ -0,0 +1,157 @@
+package umm3601.progress;
+
+import static com.mongodb.client.model.Filters.eq;
+
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
+
+import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import io.javalin.http.NotFoundResponse;
+import umm3601.Controller;
+import umm3601.hunt.HuntSchema;
+
+/**
+ * Controller for the players' progress through hunts: how many of a
+ * hunt's tasks each player has completed.
+ *
+ * Completions are counted (and read) in memory by a `ProgressTracker`,
+ * which writes them to the `progress` collection in batches, so a burst
+ * of completions when a hunt goes live doesn't become a burst of writes.
+ */
+public class ProgressController implements Controller {
+
+  private static final String API_HUNT_PROGRESS = "/api/progress/{huntId}";
+  private static final String API_PLAYER_PROGRESS = "/api/progress/{huntId}/players/{playerId}";
+  private static final String API_PLAYER_COMPLETIONS = "/api/progress/{huntId}/players/{playerId}/completions";
+
+  static final String COLLECTION_NAME = "progress";
+
+  // The longest player id we'll keep a count for.
+  static final int MAX_PLAYER_ID_LENGTH = 100;
+
+  private final ProgressTracker tracker;
+
+  // The hunts, to check that a hunt exists before counting completions in it.
+  private final MongoCollection<Document> hunts;
+
+  /**
+   * Construct a controller for the players' progress, which loads the
+   * counts already in the database and starts writing new ones.
+   *
+   * @param database the database containing the progress data
+   * @param settings how often to write the counts to the database
+   */
+  public ProgressController(MongoDatabase database, ProgressTracker.Settings settings) {
+    tracker = new ProgressTracker(database.getCollection(COLLECTION_NAME), settings);
+    hunts = database.getCollection(HuntSchema.COLLECTION_NAME);
+    tracker.start();
+  }
+
+  /**
+   * Record that the player specified by the `playerId` parameter has
+   * completed a task in the hunt specified by the `huntId` parameter.
+   *
+   * The completion is counted in memory, and written to the database with
+   * the next batch, so this responds with a 202 (Accepted) before it's
+   * written. The response has the player's new total, `{"completed": n}`.
+   *
+   * The tracker keeps a count for every hunt it's told about, so the first
+   * completion in a hunt it isn't counting yet is only taken if the hunt
+   * exists (otherwise it's a 404).
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void completeTask(Context ctx) {
+    String huntId = huntId(ctx);
+    String playerId = playerId(ctx);
+    if (!tracker.tracks(huntId)
+      && hunts.countDocuments(eq("_id", new ObjectId(huntId)), new CountOptions().limit(1)) == 0) {
+      throw new NotFoundResponse("The requested hunt was not found");
+    }
+    ctx.json(Map.of(ProgressTracker.COMPLETED_KEY, tracker.complete(huntId, playerId)));
+    ctx.status(HttpStatus.ACCEPTED);
+  }
+
+  /**
+   * Set the JSON body of the response to be how many tasks the player
+   * specified by the `playerId` parameter has completed in the hunt
+   * specified by the `huntId` parameter, `{"completed": n}`, from memory.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getPlayerProgress(Context ctx) {
+    String huntId = huntId(ctx);
+    String playerId = playerId(ctx);
+    ctx.json(Map.of(ProgressTracker.COMPLETED_KEY, tracker.completed(huntId, playerId)));
+    ctx.status(HttpStatus.OK);
+  }
+
+  /**
+   * Set the JSON body of the response to be how many tasks each player
+   * has completed in the hunt specified by the `huntId` parameter, as an
+   * object from player ids to counts, from memory.
+   *
+   * @param ctx a Javalin HTTP context
+   */
+  public void getHuntProgress(Context ctx) {
+    ctx.json(tracker.completedByPlayer(huntId(ctx)));
+    ctx.status(HttpStatus.OK);
+  }
+
+  private static String huntId(Context ctx) {
+    String huntId = ctx.pathParam("huntId");
+    if (!ObjectId.isValid(huntId)) {
+      throw new BadRequestResponse("The requested hunt id wasn't a legal Mongo Object ID.");
+    }
+    // The same hunt, however its id is capitalized.
+    return new ObjectId(huntId).toHexString();
+  }
+
+  private static String playerId(Context ctx) {
+    String playerId = ctx.pathParam("playerId");
+    if (playerId.isBlank() || playerId.length() > MAX_PLAYER_ID_LENGTH) {
+      throw new BadRequestResponse("The player id must be between 1 and " + MAX_PLAYER_ID_LENGTH + " characters");
+    }
+    return playerId;
+  }
+
+  /**
+   * Write any completions that haven't been written yet, before the server
+   * (and its database connection) stops.
+   */
+  void flushProgress() {
+    tracker.close();
+  }
+
+  ProgressTracker getTracker() {
+    return tracker;
+  }
+
+  /**
+   * Setup routes for the `progress` collection endpoints.
+   *
+   * @param server The Javalin server instance
+   */
+  public void addRoutes(Javalin server) {
+    // How far all the players have got in a hunt
+    server.get(API_HUNT_PROGRESS, this::getHuntProgress);
+
+    // How far one player has got in a hunt
+    server.get(API_PLAYER_PROGRESS, this::getPlayerProgress);
+
+    // A player has completed a task
+    server.post(API_PLAYER_COMPLETIONS, this::completeTask);
+
+    // Write the last completions before shutting down
+    server.events(event -> event.serverStopping(this::flushProgress));
+  }
+}
@@ -0,0 +1,315 @@
+package umm3601.progress;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * How many tasks each player has completed in each hunt, counted in
+ * memory and written to the database in batches.
+ *
+ * Once a hunt goes live, every player marking a task complete is a write,
+ * and thousands of them a second would be thousands of single-document
+ * updates. Instead each completion just bumps two `LongAdder`s for that
+ * hunt and player: the player's total, which reads are answered from, and
+ * the count not yet written. A `LongAdder` spreads concurrent increments
+ * over separate cells (it's "striped"), so players completing tasks at
+ * once don't contend on a lock, or even on one atomic counter.
+ *
+ * A single flusher thread takes the unwritten counts every
+ * `flushIntervalMillis` and writes them all with one unordered `bulkWrite`
+ * of upserted `$inc`s, however many completions they add up. Counts that
+ * couldn't be written are put back, to be tried again with the next flush.
+ * Only one flush runs at a time, so `close()` waits for one that's under
+ * way to finish (rather than interrupting its write, which would leave no
+ * telling which counts were written) before writing whatever is left.
+ *
+ * The price is durability, as with `HuntWriteBehind`: completions not yet
+ * written are lost if the server dies, and the totals in memory are only
+ * this server's view (they're loaded from the database when it starts).
+ */
+public class ProgressTracker {
+
+  static final String HUNT_KEY = "huntId";
+  static final String PLAYER_KEY = "playerId";
+  static final String COMPLETED_KEY = "completed";
+
+  // How long `close()` waits for the flusher thread to stop.
+  static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProgressTracker.class);
+
+  /**
+   * How often the counts are written to the database.
+   *
+   * @param flushIntervalMillis the time between flushes
+   */
+  public record Settings(long flushIntervalMillis) {
+
+    private static final String DEFAULT_FLUSH_MS = "1000";
+
+    /**
+     * Read the settings from the `PROGRESS_FLUSH_MS` environment variable:
+     * the time between writes of the counts to the database (1000).
+     *
+     * @param env the environment variables
+     * @return the settings
+     */
+    public static Settings fromEnvironment(Map<String, String> env) {
+      return new Settings(Long.parseLong(env.getOrDefault("PROGRESS_FLUSH_MS", DEFAULT_FLUSH_MS)));
+    }
+  }
+
+  /**
+   * One player's counts in one hunt.
+   */
+  private static final class Counter {
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder unflushed = new LongAdder();
+  }
+
+  /**
+   * A count taken from a counter to be written, so it can be put back if
+   * the write fails.
+   */
+  private record Taken(Counter counter, long count) {
+  }
+
+  private final MongoCollection<Document> progress;
+  private final Duration flushInterval;
+
+  // Counters by hunt, and then by player.
+  private final ConcurrentMap<String, ConcurrentMap<String, Counter>> counters = new ConcurrentHashMap<>();
+
+  // Held for each flush, so the flusher thread and `close()` never write
+  // at once.
+  private final ReentrantLock flushing = new ReentrantLock();
+
+  private Thread flusher;
+  private volatile boolean running;
+  // Counted down by `close()`, to wake the flusher thread for the last time.
+  private CountDownLatch closing;
+
+  /**
+   * Construct a progress tracker.
+   *
+   * @param progress the progress collection
+   * @param settings how often to write the counts to the database
+   */
+  public ProgressTracker(MongoCollection<Document> progress, Settings settings) {
+    this.progress = progress;
+    this.flushInterval = Duration.ofMillis(settings.flushIntervalMillis());
+  }
+
+  /**
+   * Load the counts already in the database, and start the thread that
+   * writes new ones.
+   */
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+    // Each player has (at most) one document per hunt, which the upserts
+    // find by this index.
+    progress.createIndex(Indexes.ascending(HUNT_KEY, PLAYER_KEY), new IndexOptions().unique(true));
+    for (Document saved : progress.find()) {
+      counter(saved.getString(HUNT_KEY), saved.getString(PLAYER_KEY))
+        .completed.add(saved.get(COMPLETED_KEY, Number.class).longValue());
+    }
+    running = true;
+    closing = new CountDownLatch(1);
+    flusher = new Thread(this::flushUntilClosed, "progress-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Stop the flusher thread, and write whatever counts are left. The
+   * flusher is woken rather than interrupted, so a flush it's in the middle
+   * of gets to finish.
+   */
+  synchronized void close() {
+    running = false;
+    if (flusher == null) {
+      return;
+    }
+    closing.countDown();
+    try {
+      flusher.join(CLOSE_TIMEOUT.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flusher = null;
+    try {
+      flush();
+    } catch (MongoException e) {
+      LOGGER.error("Some task completions weren't written to the database before shutting down", e);
+    }
+  }
+
+  private Counter counter(String huntId, String playerId) {
+    return counters
+      .computeIfAbsent(huntId, key -> new ConcurrentHashMap<>())
+      .computeIfAbsent(playerId, key -> new Counter());
+  }
+
+  /**
+   * Count a completed task, without waiting for the database.
+   *
+   * @param huntId the hunt
+   * @param playerId the player who completed the task
+   * @return the player's new total of completed tasks in that hunt
+   */
+  long complete(String huntId, String playerId) {
+    Counter counter = counter(huntId, playerId);
+    counter.unflushed.increment();
+    counter.completed.increment();
+    return counter.completed.sum();
+  }
+
+  /**
+   * @param huntId a hunt
+   * @param playerId a player
+   * @return how many tasks the player has completed in that hunt
+   */
+  long completed(String huntId, String playerId) {
+    Map<String, Counter> players = counters.get(huntId);
+    Counter counter = players == null ? null : players.get(playerId);
+    return counter == null ? 0 : counter.completed.sum();
+  }
+
+  /**
+   * @param huntId a hunt
+   * @return whether any player's completions in that hunt are counted
+   */
+  boolean tracks(String huntId) {
+    return counters.containsKey(huntId);
+  }
+
+  /**
+   * @param huntId a hunt
+   * @return how many tasks each player has completed in that hunt
+   */
+  Map<String, Long> completedByPlayer(String huntId) {
+    Map<String, Long> completed = new HashMap<>();
+    Map<String, Counter> players = counters.get(huntId);
+    if (players != null) {
+      players.forEach((playerId, counter) -> completed.put(playerId, counter.completed.sum()));
+    }
+    return completed;
+  }
+
+  /**
+   * @return how many completions haven't been written to the database yet
+   */
+  long unflushed() {
+    long unflushed = 0;
+    for (Map<String, Counter> players : counters.values()) {
+      for (Counter counter : players.values()) {
+        unflushed += counter.unflushed.sum();
+      }
+    }
+    return unflushed;
+  }
+
+  // The flusher thread: flush every `flushInterval` until closed.
+  private void flushUntilClosed() {
+    try {
+      while (!closing.await(flushInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+        try {
+          flush();
+        } catch (MongoException e) {
+          LOGGER.warn("Writing task completions failed; they'll be tried again", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Write all the counts that haven't been written yet, as one unordered
+   * `bulkWrite` with an upserted `$inc` for each player with new
+   * completions. Taking a count resets it atomically, cell by cell, so
+   * completions counted during a flush are left for the next one. A flush
+   * started while another is under way waits for it to finish first.
+   *
+   * @return how many players' counts were written
+   * @throws MongoException if the write failed, in which case all the
+   *   counts taken for it are put back
+   */
+  int flush() {
+    flushing.lock();
+    try {
+      return writeUnflushed();
+    } finally {
+      flushing.unlock();
+    }
+  }
+
+  private int writeUnflushed() {
+    List<WriteModel<Document>> writes = new ArrayList<>();
+    List<Taken> taken = new ArrayList<>();
+    counters.forEach((huntId, players) -> players.forEach((playerId, counter) -> {
+      long count = counter.unflushed.sumThenReset();
+      if (count > 0) {
+        writes.add(new UpdateOneModel<>(
+          and(eq(HUNT_KEY, huntId), eq(PLAYER_KEY, playerId)),
+          Updates.inc(COMPLETED_KEY, count),
+          new UpdateOptions().upsert(true)));
+        taken.add(new Taken(counter, count));
+      }
+    }));
+    if (writes.isEmpty()) {
+      return 0;
+    }
+
+    try {
+      progress.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+    } catch (MongoBulkWriteException e) {
+      // The rest were written; put back just the counts that weren't.
+      for (BulkWriteError error : e.getWriteErrors()) {
+        Taken failed = taken.get(error.getIndex());
+        failed.counter().unflushed.add(failed.count());
+      }
+      LOGGER.warn("{} of {} players' task completions couldn't be written; they'll be tried again",
+        e.getWriteErrors().size(), writes.size());
+      return writes.size() - e.getWriteErrors().size();
+    } catch (MongoException e) {
+      // There's no telling whether a write that failed this way was made,
+      // but counting a completion twice beats losing it.
+      for (Taken failed : taken) {
+        failed.counter().unflushed.add(failed.count());
+      }
+      throw e;
+    }
+    return writes.size();
+  }
+}
@@ -0,0 +1,84 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.aayushatharva.brotli4j.decoder.Decoder;
+
+class CompressionSpec {
+
+  private static final byte[] BODY = "[{\"title\":\"Sam\"},{\"title\":\"Chris\"}]".repeat(100)
+      .getBytes(StandardCharsets.UTF_8);
+
+  // What a client that accepts Brotli should get, given whether it's
+  // available on this platform.
+  private static final String BROTLI_OR_GZIP = Compression.brotliAvailable() ? Compression.BROTLI : Compression.GZIP;
+
+  @Test
+  void noAcceptEncodingMeansNoCompression() {
+    assertNull(Compression.negotiate(null));
+    assertNull(Compression.negotiate(""));
+    assertNull(Compression.negotiate("identity"));
+  }
+
+  @Test
+  void gzipIsUsedWhenItsAllTheClientAccepts() {
+    assertEquals(Compression.GZIP, Compression.negotiate("gzip"));
+    assertEquals(Compression.GZIP, Compression.negotiate("deflate, GZIP;q=0.5"));
+    assertEquals(Compression.GZIP, Compression.negotiate("gzip, br;q=0"));
+  }
+
+  @Test
+  void brotliIsPreferredWhenAvailable() {
+    assertEquals(BROTLI_OR_GZIP, Compression.negotiate("gzip, deflate, br"));
+    assertEquals(BROTLI_OR_GZIP, Compression.negotiate("*"));
+  }
+
+  @Test
+  void refusedEncodingsAreNotUsed() {
+    assertNull(Compression.negotiate("gzip;q=0"));
+    assertNull(Compression.negotiate("gzip;q=nonsense"));
+    assertNull(Compression.negotiate("br;q=0, gzip;q=0.0"));
+  }
+
+  @Test
+  void gzipRoundTrips() throws IOException {
+    byte[] compressed = Compression.compress(BODY, Compression.GZIP);
+    assertTrue(compressed.length < BODY.length);
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      assertArrayEquals(BODY, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void brotliRoundTripsWhenAvailable() throws IOException {
+    if (!Compression.brotliAvailable()) {
+      return;
+    }
+    byte[] compressed = Compression.compress(BODY, Compression.BROTLI);
+    assertTrue(compressed.length < BODY.length);
+    assertArrayEquals(BODY, Decoder.decompress(compressed).getDecompressedData());
+  }
+
+  @Test
+  void unknownEncodingsAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> Compression.compress(BODY, "compress"));
+  }
+
+  @Test
+  void javalinOnlyCompressesLargeResponses() {
+    assertNotNull(Compression.strategy());
+    assertEquals(Compression.MIN_SIZE_FOR_COMPRESSION, Compression.strategy().getMinSizeForCompression());
+  }
+}
@@ -0,0 +1,85 @@
+package umm3601;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+
+@SuppressWarnings({ "MagicNumber" })
+class DatabaseOptionsSpec {
+
+  private static DatabaseOptions optionsWithCompressors(List<String> compressors) {
+    return new DatabaseOptions(20, 2, 500, 1000, 3000, compressors,
+        ReadPreference.primary(), ReadPreference.secondaryPreferred(), WriteConcern.MAJORITY);
+  }
+
+  @Test
+  void appliesThePoolTimeoutsAndReadPreference() {
+    MongoClientSettings settings = optionsWithCompressors(List.of())
+        .applyTo(MongoClientSettings.builder())
+        .build();
+
+    assertEquals(20, settings.getConnectionPoolSettings().getMaxSize());
+    assertEquals(2, settings.getConnectionPoolSettings().getMinSize());
+    assertEquals(500, settings.getConnectionPoolSettings().getMaxWaitTime(TimeUnit.MILLISECONDS));
+    assertEquals(1000, settings.getSocketSettings().getConnectTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(3000, settings.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+    assertEquals(ReadPreference.primary(), settings.getReadPreference());
+    assertEquals(WriteConcern.MAJORITY, settings.getWriteConcern());
+    assertEquals(List.of(), settings.getCompressorList());
+  }
+
+  @Test
+  void compressorsAreOfferedInOrder() {
+    List<MongoCompressor> compressors = optionsWithCompressors(List.of("zstd", "Snappy", "zlib")).mongoCompressors();
+
+    assertEquals(List.of("zstd", "snappy", "zlib"), compressors.stream().map(MongoCompressor::getName).toList());
+  }
+
+  @Test
+  void unknownCompressorsAreRejected() {
+    DatabaseOptions options = optionsWithCompressors(List.of("lz4"));
+    assertThrows(IllegalArgumentException.class, options::mongoCompressors);
+  }
+
+  @Test
+  void compressorsAreCopied() {
+    List<String> compressors = new ArrayList<>(List.of("zlib"));
+    DatabaseOptions options = optionsWithCompressors(compressors);
+    compressors.add("zstd");
+
+    assertEquals(List.of("zlib"), options.compressors());
+  }
+
+  @Test
+  void defaultsComeFromTheDriver() {
+    // None of the `MONGO_*` tuning variables are set when the tests run.
+    DatabaseOptions options = DatabaseOptions.fromEnvironment();
+    MongoClientSettings defaults = MongoClientSettings.builder().build();
+
+    assertEquals(defaults.getConnectionPoolSettings().getMaxSize(), options.maxPoolSize());
+    assertEquals(defaults.getConnectionPoolSettings().getMinSize(), options.minPoolSize());
+    assertEquals(defaults.getConnectionPoolSettings().getMaxWaitTime(TimeUnit.MILLISECONDS), options.maxWaitMillis());
+    assertEquals(defaults.getSocketSettings().getConnectTimeout(TimeUnit.MILLISECONDS), options.connectTimeoutMillis());
+    assertEquals(List.of(), options.compressors());
+    assertEquals(ReadPreference.primary(), options.readPreference());
+    assertEquals(ReadPreference.primary(), options.requestReadPreference());
+    assertEquals(defaults.getWriteConcern(), options.writeConcern());
+  }
+
+  @Test
+  void writeConcernsAreParsedByName() {
+    assertEquals(WriteConcern.MAJORITY, DatabaseOptions.parseWriteConcern("majority"));
+    assertEquals(WriteConcern.W2, DatabaseOptions.parseWriteConcern("W2"));
+    assertThrows(IllegalArgumentException.class, () -> DatabaseOptions.parseWriteConcern("everyone"));
+  }
+}
@@ -0,0 +1,208 @@
+package umm3601.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+import io.javalin.http.HttpStatus;
+import io.javalin.http.ServiceUnavailableResponse;
+
+@SuppressWarnings({ "MagicNumber" })
+class AdmissionControlSpec {
+
+  // Two cheap requests a second (in bursts of two), one expensive one, and
+  // at most three requests at once, or one while MongoDB takes over 100ms.
+  private static final AdmissionLimits LIMITS = new AdmissionLimits(2, 2, 1, 1, 3, 1, 100, true);
+
+  private final AtomicLong mongoLatencyNanos = new AtomicLong();
+  private AdmissionControl admission;
+
+  @BeforeEach
+  void setupEach() {
+    mongoLatencyNanos.set(0);
+    admission = new AdmissionControl(LIMITS, mongoLatencyNanos::get);
+  }
+
+  // A mocked request, which (like a real one) remembers its attributes.
+  private static Context request(HandlerType method, String path, Map<String, List<String>> queryParams, String ip) {
+    Context ctx = mock(Context.class);
+    Map<String, Object> attributes = new HashMap<>();
+    when(ctx.method()).thenReturn(method);
+    when(ctx.path()).thenReturn(path);
+    when(ctx.queryParamMap()).thenReturn(queryParams);
+    when(ctx.ip()).thenReturn(ip);
+    doAnswer(invocation -> {
+      attributes.put(invocation.getArgument(0), invocation.getArgument(1));
+      return null;
+    }).when(ctx).attribute(anyString(), any());
+    when(ctx.attribute(anyString())).then(invocation -> attributes.get(invocation.getArgument(0)));
+    return ctx;
+  }
+
+  private static Context getHunt(String ip) {
+    return request(HandlerType.GET, "/api/hunts/abc", Collections.emptyMap(), ip);
+  }
+
+  @Test
+  void installsBeforeAndAfterHandlers() {
+    Javalin mockServer = mock(Javalin.class);
+
+    admission.install(mockServer);
+
+    verify(mockServer).before(any());
+    verify(mockServer).after(any());
+  }
+
+  @Test
+  void filteredListingsSearchesAndWritesAreExpensive() {
+    assertEquals(AdmissionControl.Cost.CHEAP, AdmissionControl.costOf(getHunt("1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.CHEAP, AdmissionControl.costOf(
+        request(HandlerType.GET, "/api/hunts", Map.of("limit", List.of("10")), "1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.EXPENSIVE, AdmissionControl.costOf(
+        request(HandlerType.GET, "/api/hunts", Map.of("title", List.of("Ch")), "1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.EXPENSIVE, AdmissionControl.costOf(
+        request(HandlerType.GET, "/api/hunts/search", Map.of("q", List.of("frogs")), "1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.EXPENSIVE, AdmissionControl.costOf(
+        request(HandlerType.POST, "/api/hunts", Collections.emptyMap(), "1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.EXPENSIVE, AdmissionControl.costOf(
+        request(HandlerType.PATCH, "/api/hunts/abc", Collections.emptyMap(), "1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.EXPENSIVE, AdmissionControl.costOf(
+        request(HandlerType.HEAD, "/api/hunts", Map.of("title", List.of("Ch")), "1.2.3.4")));
+  }
+
+  @Test
+  void preflightsAndCompletionsAreCheap() {
+    assertEquals(AdmissionControl.Cost.CHEAP, AdmissionControl.costOf(
+        request(HandlerType.OPTIONS, "/api/hunts", Collections.emptyMap(), "1.2.3.4")));
+    assertEquals(AdmissionControl.Cost.CHEAP, AdmissionControl.costOf(
+        request(HandlerType.POST, "/api/progress/abc/players/pat/completions", Collections.emptyMap(), "1.2.3.4")));
+    // Only completions are cheap; other writes under the same prefix aren't.
+    assertEquals(AdmissionControl.Cost.EXPENSIVE, AdmissionControl.costOf(
+        request(HandlerType.POST, "/api/progress/abc/players/pat", Collections.emptyMap(), "1.2.3.4")));
+  }
+
+  @Test
+  void clientsOverTheirRateLimitGetA429() {
+    for (int i = 0; i < 2; i++) {
+      Context ctx = getHunt("1.2.3.4");
+      admission.admit(ctx);
+      admission.release(ctx);
+    }
+
+    Context ctx = getHunt("1.2.3.4");
+    HttpResponseException e = assertThrows(HttpResponseException.class, () -> admission.admit(ctx));
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS.getCode(), e.getStatus());
+    verify(ctx).header(AdmissionControl.RETRY_AFTER, "1");
+
+    // Other clients, and this client's expensive requests, have their own limits.
+    admission.admit(getHunt("5.6.7.8"));
+    admission.admit(request(HandlerType.GET, "/api/hunts", Map.of("hostid", List.of("Joe")), "1.2.3.4"));
+    assertThrows(HttpResponseException.class, () -> admission.admit(
+        request(HandlerType.GET, "/api/hunts", Map.of("hostid", List.of("Joe")), "1.2.3.4")));
+  }
+
+  @Test
+  void requestsOverTheConcurrencyLimitGetA503() {
+    Context first = getHunt("1.1.1.1");
+    admission.admit(first);
+    admission.admit(getHunt("2.2.2.2"));
+    admission.admit(getHunt("3.3.3.3"));
+    assertEquals(3, admission.inFlight());
+
+    Context ctx = getHunt("4.4.4.4");
+    assertThrows(ServiceUnavailableResponse.class, () -> admission.admit(ctx));
+    verify(ctx).header(AdmissionControl.RETRY_AFTER, "1");
+    assertEquals(3, admission.inFlight());
+
+    // Once one finishes, there's room for another.
+    admission.release(first);
+    admission.release(first);
+    assertEquals(2, admission.inFlight());
+    admission.admit(getHunt("4.4.4.4"));
+  }
+
+  @Test
+  void fewerRequestsAreAdmittedWhileMongoIsSlow() {
+    assertEquals(3, admission.concurrencyLimit());
+    mongoLatencyNanos.set(TimeUnit.MILLISECONDS.toNanos(150));
+    assertEquals(1, admission.concurrencyLimit());
+
+    admission.admit(getHunt("1.1.1.1"));
+    assertThrows(ServiceUnavailableResponse.class, () -> admission.admit(getHunt("2.2.2.2")));
+  }
+
+  @Test
+  void longLivedAndNonApiRequestsDoNotCountAgainstTheConcurrencyLimit() {
+    for (int i = 0; i < 5; i++) {
+      admission.admit(request(HandlerType.GET, "/api/hunts/events", Collections.emptyMap(), "1.1.1." + i));
+      admission.admit(request(HandlerType.GET, "/metrics", Collections.emptyMap(), "1.1.1.1"));
+    }
+
+    assertEquals(0, admission.inFlight());
+  }
+
+  @Test
+  void clientsAreIdentifiedByTheAddressOurProxyAdded() {
+    Context ctx = getHunt("10.0.0.2");
+    when(ctx.header(AdmissionControl.FORWARDED_FOR)).thenReturn("6.6.6.6, 1.2.3.4");
+    assertEquals("1.2.3.4", admission.clientOf(ctx));
+
+    when(ctx.header(AdmissionControl.FORWARDED_FOR)).thenReturn(null);
+    assertEquals("10.0.0.2", admission.clientOf(ctx));
+
+    AdmissionControl untrusting = new AdmissionControl(
+        new AdmissionLimits(2, 2, 1, 1, 3, 1, 100, false), mongoLatencyNanos::get);
+    when(ctx.header(AdmissionControl.FORWARDED_FOR)).thenReturn("1.2.3.4");
+    assertEquals("10.0.0.2", untrusting.clientOf(ctx));
+  }
+
+  @Test
+  void aRateOfZeroMeansNoLimit() {
+    AdmissionControl unlimited = new AdmissionControl(
+        new AdmissionLimits(0, 0, 0, 0, 100, 100, 100, false), mongoLatencyNanos::get);
+
+    for (int i = 0; i < 50; i++) {
+      Context ctx = getHunt("1.2.3.4");
+      unlimited.admit(ctx);
+      unlimited.release(ctx);
+    }
+    assertEquals(0, unlimited.inFlight());
+  }
+
+  @Test
+  void readsTheLimitsFromTheEnvironment() {
+    AdmissionLimits defaults = AdmissionLimits.fromEnvironment(Map.of());
+    assertEquals(50, defaults.cheapPerSecond());
+    assertEquals(200, defaults.maxConcurrentRequests());
+    assertFalse(defaults.trustForwardedFor());
+
+    AdmissionLimits limits = AdmissionLimits.fromEnvironment(Map.of(
+        "RATE_LIMIT_EXPENSIVE_PER_SECOND", "0.5",
+        "DEGRADED_CONCURRENT_REQUESTS", "7",
+        "TRUST_FORWARDED_FOR", "true"));
+    assertEquals(0.5, limits.expensivePerSecond());
+    assertEquals(7, limits.degradedConcurrentRequests());
+    assertTrue(limits.trustForwardedFor());
+  }
+}
@@ -0,0 +1,54 @@
+package umm3601.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings({ "MagicNumber" })
+class RateLimiterSpec {
+
+  @Test
+  void eachClientHasItsOwnLimit() {
+    RateLimiter limiter = new RateLimiter(1, 2, 100);
+    long now = System.nanoTime();
+
+    assertEquals(0, limiter.tryAcquire("alice", now));
+    assertEquals(0, limiter.tryAcquire("alice", now));
+    assertTrue(limiter.tryAcquire("alice", now) > 0);
+    // Alice being over her limit doesn't affect Bob.
+    assertEquals(0, limiter.tryAcquire("bob", now));
+  }
+
+  @Test
+  void quietClientsAreForgottenOnceThereAreTooMany() {
+    RateLimiter limiter = new RateLimiter(1, 1, 2);
+    long now = System.nanoTime();
+
+    limiter.tryAcquire("alice", now);
+    limiter.tryAcquire("bob", now);
+    limiter.tryAcquire("carol", now);
+    assertEquals(3, limiter.clientCount());
+
+    // A couple of seconds later, all their buckets have filled up again.
+    long later = now + TimeUnit.SECONDS.toNanos(2);
+    limiter.tryAcquire("dave", later);
+    assertEquals(1, limiter.clientCount());
+  }
+
+  @Test
+  void clientsOverTheirLimitAreNotForgotten() {
+    // One request every ten seconds.
+    RateLimiter limiter = new RateLimiter(0.1, 1, 0);
+    long now = System.nanoTime();
+
+    assertEquals(0, limiter.tryAcquire("alice", now));
+    long later = now + TimeUnit.SECONDS.toNanos(2);
+    limiter.sweep(later);
+
+    assertEquals(1, limiter.clientCount());
+    assertTrue(limiter.tryAcquire("alice", later) > 0);
+  }
+}
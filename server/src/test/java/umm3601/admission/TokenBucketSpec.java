@@ -0,0 +1,78 @@
+package umm3601.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings({ "MagicNumber" })
+class TokenBucketSpec {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void allowsABurstUpToItsCapacity() {
+    TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(0, bucket.tryAcquire(0));
+    assertEquals(0, bucket.tryAcquire(0));
+    // The next token comes a tenth of a second later.
+    assertEquals(SECOND / 10, bucket.tryAcquire(0));
+  }
+
+  @Test
+  void refillsAtItsRate() {
+    TokenBucket bucket = new TokenBucket(10, 1, 0);
+
+    assertEquals(0, bucket.tryAcquire(0));
+    assertTrue(bucket.tryAcquire(SECOND / 20) > 0);
+    assertEquals(0, bucket.tryAcquire(SECOND / 10));
+  }
+
+  @Test
+  void doesNotFillPastItsCapacity() {
+    TokenBucket bucket = new TokenBucket(10, 2, 0);
+
+    // A long time later, it's still only got two tokens.
+    long later = 100 * SECOND;
+    assertTrue(bucket.isFull(later));
+    assertEquals(0, bucket.tryAcquire(later));
+    assertFalse(bucket.isFull(later));
+    assertEquals(0, bucket.tryAcquire(later));
+    assertTrue(bucket.tryAcquire(later) > 0);
+  }
+
+  @Test
+  void needsAPositiveRateAndCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0, 0));
+  }
+
+  @Test
+  void neverHandsOutMoreThanItsCapacityAtOnce() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(1, 100, 0);
+    AtomicInteger acquired = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(8);
+
+    for (int t = 0; t < 8; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < 50; i++) {
+          if (bucket.tryAcquire(0) == 0) {
+            acquired.incrementAndGet();
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+    done.await();
+
+    assertEquals(100, acquired.get());
+  }
+}
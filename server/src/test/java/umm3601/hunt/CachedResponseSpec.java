@@ -0,0 +1,70 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class CachedResponseSpec {
+
+  private static final byte[] BODY = "{\"title\":\"Sam\"}".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void etagsAreQuotedAndDependOnTheBody() {
+    CachedResponse response = CachedResponse.of(BODY);
+    CachedResponse same = CachedResponse.of(BODY.clone());
+    CachedResponse other = CachedResponse.of("{}".getBytes(StandardCharsets.UTF_8));
+
+    assertArrayEquals(BODY, response.getBody());
+    assertTrue(response.getEtag().startsWith("\"") && response.getEtag().endsWith("\""));
+    assertEquals(response.getEtag(), same.getEtag());
+    assertNotEquals(response.getEtag(), other.getEtag());
+  }
+
+  @Test
+  void matchesIfNoneMatchHeaders() {
+    CachedResponse response = CachedResponse.of(BODY);
+    String etag = response.getEtag();
+
+    assertFalse(response.matches(null));
+    assertFalse(response.matches("\"something-else\""));
+    assertTrue(response.matches(etag));
+    assertTrue(response.matches("\"something-else\", " + etag));
+    assertTrue(response.matches("W/" + etag));
+    assertTrue(response.matches("*"));
+  }
+
+  @Test
+  void compressedBodiesAreMadeOnceAndDecompressToTheBody() throws IOException {
+    CachedResponse response = CachedResponse.of(BODY);
+
+    assertSame(BODY, response.getBody(null));
+    byte[] gzipped = response.getBody("gzip");
+    assertSame(gzipped, response.getBody("gzip"));
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      assertArrayEquals(BODY, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void eachEncodingHasItsOwnEtagThatStillMatches() {
+    CachedResponse response = CachedResponse.of(BODY);
+    String gzipEtag = response.getEtag("gzip");
+
+    assertEquals(response.getEtag(), response.getEtag(null));
+    assertNotEquals(response.getEtag(), gzipEtag);
+    assertTrue(gzipEtag.startsWith("\"") && gzipEtag.endsWith("-gzip\""));
+    assertTrue(response.matches(gzipEtag));
+    assertTrue(response.matches("W/" + response.getEtag("br")));
+    assertFalse(CachedResponse.of("{}".getBytes(StandardCharsets.UTF_8)).matches(gzipEtag));
+  }
+}
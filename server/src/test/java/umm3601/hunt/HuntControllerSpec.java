@@ -2,20 +2,31 @@ package umm3601.hunt;
 
 import static com.mongodb.client.model.Filters.eq;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -25,11 +36,15 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
@@ -38,12 +53,19 @@ import com.mongodb.client.MongoDatabase;
 
 import io.javalin.Javalin;
 import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ConflictResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
+import io.javalin.http.sse.SseClient;
 import io.javalin.json.JavalinJackson;
 import io.javalin.validation.BodyValidator;
 import io.javalin.validation.ValidationException;
+import io.javalin.validation.Validator;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 
 /**
  * Tests the logic of the HuntController
@@ -90,6 +112,21 @@ class HuntControllerSpec {
   @Captor
   private ArgumentCaptor<Map<String, String>> mapCaptor;
 
+  @Captor
+  private ArgumentCaptor<HuntPage> huntPageCaptor;
+
+  @Captor
+  private ArgumentCaptor<byte[]> bytesCaptor;
+
+  @Captor
+  private ArgumentCaptor<HuntBulkResult> bulkResultCaptor;
+
+  @Captor
+  private ArgumentCaptor<Map<String, Map<String, Long>>> statsCaptor;
+
+  @Captor
+  private ArgumentCaptor<Map<String, List<?>>> batchCaptor;
+
   /**
    * Sets up (the connection to the) DB once; that connection and DB will
    * then be (re)used for all the tests, and closed in the `teardown()`
@@ -122,6 +159,7 @@ class HuntControllerSpec {
     // Reset our mock context and argument captor (declared with Mockito
     // annotations @Mock and @Captor)
     MockitoAnnotations.openMocks(this);
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
 
     // Setup database
     MongoCollection<Document> huntDocuments = db.getCollection("hunts");
@@ -150,6 +188,9 @@ class HuntControllerSpec {
     huntDocuments.insertMany(testHunts);
     huntDocuments.insertOne(sam);
 
+    // Create the indexes (and fill in the lowercase titles) as the server
+    // does when it starts.
+    HuntSchema.bootstrap(db, false);
     huntController = new HuntController(db);
   }
 
@@ -157,9 +198,27 @@ class HuntControllerSpec {
   void addsRoutes() {
     Javalin mockServer = mock(Javalin.class);
     huntController.addRoutes(mockServer);
-    verify(mockServer, Mockito.atLeast(2)).get(any(), any());
+    verify(mockServer, Mockito.atLeast(3)).get(any(), any());
     verify(mockServer, Mockito.atLeastOnce()).post(any(), any());
     verify(mockServer, Mockito.atLeastOnce()).delete(any(), any());
+    verify(mockServer).patch(ArgumentMatchers.eq("/api/hunts/{id}"), any());
+    verify(mockServer).sse(ArgumentMatchers.eq("/api/hunts/events"), ArgumentMatchers.<Consumer<SseClient>>any());
+  }
+
+  @Test
+  void eventClientsAreSubscribedUntilTheyClose() {
+    SseClient client = mock(SseClient.class);
+    ArgumentCaptor<Runnable> onClose = ArgumentCaptor.forClass(Runnable.class);
+
+    huntController.streamHuntEvents(client);
+
+    verify(client).keepAlive();
+    verify(client).onClose(onClose.capture());
+    HuntEventFeed feed = huntController.getHuntEvents();
+    assertEquals(1, feed.subscriberCount());
+    onClose.getValue().run();
+    assertEquals(0, feed.subscriberCount());
+    feed.stop();
   }
 
   @Test
@@ -173,27 +232,487 @@ class HuntControllerSpec {
     // (which will, indeed, ask the context for its queryParamMap)
     huntController.getHunts(ctx);
 
-    // We are going to capture an argument to a function, and the type of
-    // that argument will be of type ArrayList<Hunt> (we said so earlier
-    // using a Mockito annotation like this):
-    // @Captor
-    // private ArgumentCaptor<ArrayList<Hunt>> userArrayListCaptor;
-    // We only want to declare that captor once and let the annotation
-    // help us accomplish reassignment of the value for the captor
-    // We reset the values of our annotated declarations using the command
-    // `MockitoAnnotations.openMocks(this);` in our @BeforeEach
-
-    // Specifically, we want to pay attention to the ArrayList<Hunt> that
-    // is passed as input when ctx.json is called --- what is the argument
-    // that was passed? We capture it and can refer to it later.
-    verify(ctx).json(huntArrayListCaptor.capture());
+    // Listings are sent already serialized, so we capture the bytes
+    // that were passed to `ctx.result()` and turn them back into hunts
+    // (see `sentHunts()` below).
+    List<Hunt> sentHunts = sentHunts();
     verify(ctx).status(HttpStatus.OK);
 
     // Check that the database collection holds the same number of documents
     // as the size of the captured List<Hunt>
     assertEquals(
         db.getCollection("hunts").countDocuments(),
-        huntArrayListCaptor.getValue().size());
+        sentHunts.size());
+  }
+
+  @Test
+  void listingsAreServedFromTheCacheUntilAHuntIsAdded() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    huntController.getHunts(ctx);
+
+    // A hunt added behind the controller's back doesn't show up...
+    db.getCollection("hunts").insertOne(new Document().append("title", "Sneaky"));
+    huntController.getHunts(ctx);
+    assertEquals(2, sentHunts().size());
+
+    // ...but one added through the controller does.
+    String testNewHunt = """
+        {
+          "title": "Test Hunt",
+          "hostid": "25",
+          "description": "testers",
+          "task": "test@example.com"
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+    huntController.addNewHunt(ctx);
+    huntController.getHunts(ctx);
+    assertEquals(4, sentHunts().size());
+  }
+
+  @Test
+  void largeListingsAreSentCompressedOnceAndReused() throws IOException {
+    List<Document> manyHunts = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      manyHunts.add(new Document()
+          .append("title", "Hunt " + i)
+          .append("hostid", "Pat")
+          .append("description", "A long description. ".repeat(10))
+          .append("task", "Find the thing"));
+    }
+    db.getCollection("hunts").insertMany(manyHunts);
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.header(Header.ACCEPT_ENCODING)).thenReturn("gzip");
+
+    huntController.getHunts(ctx);
+    huntController.getHunts(ctx);
+
+    verify(ctx, Mockito.times(2)).header(Header.CONTENT_ENCODING, "gzip");
+    verify(ctx, Mockito.times(2)).result(bytesCaptor.capture());
+    List<byte[]> sent = bytesCaptor.getAllValues();
+    assertSame(sent.get(0), sent.get(1));
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(sent.get(1)))) {
+      Hunt[] hunts = javalinJackson.fromJsonString(new String(in.readAllBytes(), StandardCharsets.UTF_8), Hunt[].class);
+      assertEquals(42, hunts.length);
+    }
+  }
+
+  @Test
+  void smallListingsAreNotCompressed() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.header(Header.ACCEPT_ENCODING)).thenReturn("gzip");
+
+    huntController.getHunts(ctx);
+
+    verify(ctx, Mockito.never()).header(ArgumentMatchers.eq(Header.CONTENT_ENCODING), any(String.class));
+    assertEquals(2, sentHunts().size());
+  }
+
+  @Test
+  void canGetCacheStats() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    huntController.getHunts(ctx);
+    huntController.getHunts(ctx);
+
+    huntController.getCacheStats(ctx);
+
+    verify(ctx).json(statsCaptor.capture());
+    Map<String, Long> listingStats = statsCaptor.getValue().get("listings");
+    assertEquals(1L, listingStats.get("hits"));
+    assertEquals(1L, listingStats.get("misses"));
+    assertEquals(1L, listingStats.get("size"));
+    // Only the miss had to load the listing.
+    assertEquals(1L, statsCaptor.getValue().get("listingLoads").get("loads"));
+    assertEquals(0L, statsCaptor.getValue().get("listingLoads").get("inFlight"));
+  }
+
+  @Test
+  void deletingAMissingHuntLeavesTheCachesAlone() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    huntController.getHunts(ctx);
+    when(ctx.pathParam("id")).thenReturn(new ObjectId().toHexString());
+    assertThrows(NotFoundResponse.class, () -> {
+      huntController.deleteHunt(ctx);
+    });
+    huntController.getHunts(ctx);
+
+    huntController.getCacheStats(ctx);
+
+    verify(ctx).json(statsCaptor.capture());
+    // The second listing still came from the cache.
+    assertEquals(1L, statsCaptor.getValue().get("listings").get("hits"));
+  }
+
+  /**
+   * Get the hunts in the JSON listing that was most recently passed
+   * to `ctx.result()`, e.g., by `getHunts`.
+   *
+   * @return the list of hunts that was sent
+   */
+  private List<Hunt> sentHunts() {
+    verify(ctx, Mockito.atLeastOnce()).result(bytesCaptor.capture());
+    Hunt[] hunts = javalinJackson.fromJsonString(
+        new String(bytesCaptor.getValue(), StandardCharsets.UTF_8), Hunt[].class);
+    return Arrays.asList(hunts);
+  }
+
+  /**
+   * A stand-in for the servlet output stream that just collects
+   * everything written to it, so tests of the streaming endpoints
+   * can look at the body that would have been sent.
+   */
+  private static class CapturingOutputStream extends ServletOutputStream {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    @Override
+    public void write(int b) {
+      bytes.write(b);
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      // Nothing to do; writes never block.
+    }
+
+    String body() {
+      return bytes.toString(StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  void canStreamAllHuntsAsJsonArray() throws IOException {
+    CapturingOutputStream out = new CapturingOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(HuntController.STREAM_KEY)).thenReturn("array");
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
+    when(ctx.outputStream()).thenReturn(out);
+
+    huntController.getHunts(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(ContentType.APPLICATION_JSON);
+    Hunt[] streamedHunts = javalinJackson.fromJsonString(out.body(), Hunt[].class);
+    assertEquals(db.getCollection("hunts").countDocuments(), streamedHunts.length);
+  }
+
+  @Test
+  void canStreamHuntsAsNdjson() throws IOException {
+    CapturingOutputStream out = new CapturingOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(HuntController.STREAM_KEY)).thenReturn(HuntController.STREAM_NDJSON);
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
+    when(ctx.outputStream()).thenReturn(out);
+
+    huntController.getHunts(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).contentType(HuntController.NDJSON_CONTENT_TYPE);
+    String[] lines = out.body().split("\n");
+    assertEquals(db.getCollection("hunts").countDocuments(), lines.length);
+    // Hunts come back sorted by title by default, so Chris is first.
+    Hunt firstHunt = javalinJackson.fromJsonString(lines[0], Hunt.class);
+    assertEquals("Chris", firstHunt.title);
+  }
+
+  @Test
+  void unknownStreamModesAreRejected() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    for (String mode : List.of("false", "json", "NDJSON", "")) {
+      when(ctx.queryParam(HuntController.STREAM_KEY)).thenReturn(mode);
+
+      assertThrows(BadRequestResponse.class, () -> {
+        huntController.getHunts(ctx);
+      });
+    }
+    verify(ctx, Mockito.never()).outputStream();
+  }
+
+  @Test
+  void canPageThroughHunts() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    huntController.getHunts(ctx);
+
+    verify(ctx).json(huntPageCaptor.capture());
+    HuntPage firstPage = huntPageCaptor.getValue();
+    assertEquals(1, firstPage.hunts.size());
+    assertEquals("Chris", firstPage.hunts.get(0).title);
+    assertNotNull(firstPage.nextPageToken);
+
+    // Ask for the second page using the token from the first one.
+    when(ctx.queryParam(HuntController.PAGE_TOKEN_KEY)).thenReturn(firstPage.nextPageToken);
+    huntController.getHunts(ctx);
+
+    verify(ctx, Mockito.times(2)).json(huntPageCaptor.capture());
+    HuntPage secondPage = huntPageCaptor.getValue();
+    assertEquals(1, secondPage.hunts.size());
+    assertEquals("Sam", secondPage.hunts.get(0).title);
+    assertEquals(null, secondPage.nextPageToken);
+  }
+
+  @Test
+  void canPageThroughHuntsInDescendingOrder() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParam(HuntController.SORT_ORDER_KEY)).thenReturn("desc");
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    huntController.getHunts(ctx);
+
+    verify(ctx).json(huntPageCaptor.capture());
+    HuntPage firstPage = huntPageCaptor.getValue();
+    assertEquals("Sam", firstPage.hunts.get(0).title);
+
+    when(ctx.queryParam(HuntController.PAGE_TOKEN_KEY)).thenReturn(firstPage.nextPageToken);
+    huntController.getHunts(ctx);
+
+    verify(ctx, Mockito.times(2)).json(huntPageCaptor.capture());
+    assertEquals("Chris", huntPageCaptor.getValue().hunts.get(0).title);
+  }
+
+  @Test
+  void pagingWithTokenForDifferentSortIsRejected() throws IOException {
+    String token = new HuntPageToken(HuntController.HOST_KEY, false, "Joe", samsId).encode();
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParam(HuntController.PAGE_TOKEN_KEY)).thenReturn(token);
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    assertThrows(BadRequestResponse.class, () -> {
+      huntController.getHunts(ctx);
+    });
+  }
+
+  @Test
+  void pagingByUnknownFieldIsRejected() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParam(HuntController.SORT_BY_KEY)).thenReturn("bogus");
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    assertThrows(BadRequestResponse.class, () -> {
+      huntController.getHunts(ctx);
+    });
+  }
+
+  @Test
+  void pagingByMoreThanOneFieldIsRejected() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParam(HuntController.SORT_BY_KEY)).thenReturn("hostid,title");
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    assertThrows(BadRequestResponse.class, () -> {
+      huntController.getHunts(ctx);
+    });
+  }
+
+  @Test
+  void canSortHuntsByMoreThanOneField() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(HuntController.SORT_BY_KEY)).thenReturn("hostid, title");
+    when(ctx.queryParam(HuntController.SORT_ORDER_KEY)).thenReturn("desc");
+
+    huntController.getHunts(ctx);
+
+    // Both hunts have the same host, so the title decides.
+    List<Hunt> sentHunts = sentHunts();
+    assertEquals("Sam", sentHunts.get(0).title);
+    assertEquals("Chris", sentHunts.get(1).title);
+  }
+
+  @Test
+  void sortingOrderEndsWithTheId() {
+    when(ctx.queryParam(HuntController.SORT_BY_KEY)).thenReturn("hostid,title");
+
+    Bson sortingOrder = huntController.constructSortingOrder(ctx);
+
+    assertEquals(Document.parse("{hostid: 1, title: 1, _id: 1}").toBsonDocument(), sortingOrder.toBsonDocument());
+  }
+
+  @Test
+  void sortingByUnsupportedFieldsIsRejected() {
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    for (String sortBy : List.of("bogus", "description", "title,hostid", "hostid,bogus", "")) {
+      when(ctx.queryParam(HuntController.SORT_BY_KEY)).thenReturn(sortBy);
+
+      BadRequestResponse e = assertThrows(BadRequestResponse.class, () -> {
+        huntController.getHunts(ctx);
+      });
+      assertTrue(e.getMessage().contains("hostid,title"));
+    }
+  }
+
+  @Test
+  void canGetHuntsWithJustSomeFields() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.FIELDS_KEY, List.of("title,hostid")));
+    when(ctx.queryParam(HuntController.FIELDS_KEY)).thenReturn("title,hostid");
+
+    huntController.getHunts(ctx);
+
+    verify(ctx).result(bytesCaptor.capture());
+    String body = new String(bytesCaptor.getValue(), StandardCharsets.UTF_8);
+    assertTrue(body.contains("\"title\":\"Sam\""));
+    assertTrue(body.contains("\"_id\""));
+    assertFalse(body.contains("description"));
+    assertFalse(body.contains("task"));
+    assertFalse(body.contains(Hunt.TITLE_LOWER_KEY));
+  }
+
+  @Test
+  void projectedAndFullListingsAreCachedSeparately() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.FIELDS_KEY, List.of("title")));
+    when(ctx.queryParam(HuntController.FIELDS_KEY)).thenReturn("title");
+    huntController.getHunts(ctx);
+
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(HuntController.FIELDS_KEY)).thenReturn(null);
+    huntController.getHunts(ctx);
+
+    assertEquals("OHMNET", sentHunts().stream().filter(h -> "Sam".equals(h.title)).findFirst().get().description);
+  }
+
+  @Test
+  void canGetHuntWithJustSomeFields() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    when(ctx.queryParam(HuntController.FIELDS_KEY)).thenReturn("description");
+
+    huntController.getHunt(ctx);
+
+    verify(ctx).result(bytesCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    Hunt hunt = javalinJackson.fromJsonString(new String(bytesCaptor.getValue(), StandardCharsets.UTF_8), Hunt.class);
+    assertEquals(samsId.toHexString(), hunt._id);
+    assertEquals("OHMNET", hunt.description);
+    assertEquals(null, hunt.title);
+    assertEquals(null, hunt.task);
+  }
+
+  @Test
+  void canPageThroughHuntsWithJustSomeFields() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParam(HuntController.FIELDS_KEY)).thenReturn("hostid");
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    huntController.getHunts(ctx);
+
+    ArgumentCaptor<String> bodyCaptor = ArgumentCaptor.forClass(String.class);
+    verify(ctx).result(bodyCaptor.capture());
+    JsonNode page = new ObjectMapper().readTree(bodyCaptor.getValue());
+    assertEquals(1, page.get("hunts").size());
+    assertEquals("Joe", page.get("hunts").get(0).get("hostid").asText());
+    // The page is sorted by title, which isn't sent, but the token still works.
+    assertFalse(page.get("hunts").get(0).has("title"));
+    assertEquals("Chris", HuntPageToken.decode(page.get("nextPageToken").asText()).getLastValue());
+  }
+
+  @Test
+  void askingForAnUnknownFieldIsRejected() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.FIELDS_KEY, List.of("title,secret")));
+    when(ctx.queryParam(HuntController.FIELDS_KEY)).thenReturn("title,secret");
+
+    assertThrows(BadRequestResponse.class, () -> {
+      huntController.getHunts(ctx);
+    });
+  }
+
+  @Test
+  void pagingWithTooLargePageSizeIsRejected() throws IOException {
+    String tooBig = Integer.toString(HuntController.MAX_PAGE_SIZE + 1);
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of(tooBig)));
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, tooBig, HuntController.LIMIT_KEY));
+
+    assertThrows(ValidationException.class, () -> {
+      huntController.getHunts(ctx);
+    });
+  }
+
+  @Test
+  void canSearchHunts() throws IOException {
+    when(ctx.queryParam(HuntController.SEARCH_KEY)).thenReturn("ohmnet");
+
+    huntController.searchHunts(ctx);
+
+    verify(ctx).json(huntArrayListCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(1, huntArrayListCaptor.getValue().size());
+    assertEquals("Sam", huntArrayListCaptor.getValue().get(0).title);
+  }
+
+  @Test
+  void searchRanksTitleMatchesFirst() throws IOException {
+    db.getCollection("hunts").insertOne(new Document()
+        .append("title", "Frogs")
+        .append("hostid", "Pat")
+        .append("description", "Find the frogs")
+        .append("task", "Count frogs"));
+    when(ctx.queryParam(HuntController.SEARCH_KEY)).thenReturn("frogs");
+
+    huntController.searchHunts(ctx);
+
+    verify(ctx).json(huntArrayListCaptor.capture());
+    assertEquals(2, huntArrayListCaptor.getValue().size());
+    assertEquals("Frogs", huntArrayListCaptor.getValue().get(0).title);
+    assertEquals("Sam", huntArrayListCaptor.getValue().get(1).title);
+  }
+
+  @Test
+  void searchSendsOnlyTheMostRelevantHunts() throws IOException {
+    db.getCollection("hunts").insertOne(new Document()
+        .append("title", "Frogs")
+        .append("hostid", "Pat")
+        .append("description", "Find the frogs")
+        .append("task", "Count frogs"));
+    when(ctx.queryParam(HuntController.SEARCH_KEY)).thenReturn("frogs");
+    when(ctx.queryParam(HuntController.LIMIT_KEY)).thenReturn("1");
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    huntController.searchHunts(ctx);
+
+    verify(ctx).json(huntArrayListCaptor.capture());
+    assertEquals(1, huntArrayListCaptor.getValue().size());
+    assertEquals("Frogs", huntArrayListCaptor.getValue().get(0).title);
+
+    String tooMany = Integer.toString(HuntController.MAX_PAGE_SIZE + 1);
+    when(ctx.queryParam(HuntController.LIMIT_KEY)).thenReturn(tooMany);
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, tooMany, HuntController.LIMIT_KEY));
+    assertThrows(ValidationException.class, () -> {
+      huntController.searchHunts(ctx);
+    });
+  }
+
+  @Test
+  void searchFindsHuntsByAnyOfTheirTasks() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    addSamATask("Find a salamander");
+    when(ctx.queryParam(HuntController.SEARCH_KEY)).thenReturn("salamander");
+
+    huntController.searchHunts(ctx);
+
+    verify(ctx, Mockito.atLeastOnce()).json(huntArrayListCaptor.capture());
+    assertEquals(1, huntArrayListCaptor.getValue().size());
+    assertEquals("Sam", huntArrayListCaptor.getValue().get(0).title);
+  }
+
+  @Test
+  void searchWithoutQueryIsRejected() throws IOException {
+    when(ctx.queryParam(HuntController.SEARCH_KEY)).thenReturn(" ");
+
+    assertThrows(BadRequestResponse.class, () -> {
+      huntController.searchHunts(ctx);
+    });
   }
 
   @Test
@@ -201,12 +720,100 @@ class HuntControllerSpec {
     String id = samsId.toHexString();
     when(ctx.pathParam("id")).thenReturn(id);
 
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
+
     huntController.getHunt(ctx);
 
-    verify(ctx).json(huntCaptor.capture());
+    verify(ctx).result(bytesCaptor.capture());
     verify(ctx).status(HttpStatus.OK);
-    assertEquals("Sam", huntCaptor.getValue().title);
-    assertEquals(samsId.toHexString(), huntCaptor.getValue()._id);
+    verify(ctx).header(ArgumentMatchers.eq(Header.ETAG), any(String.class));
+    String body = new String(bytesCaptor.getValue(), StandardCharsets.UTF_8);
+    Hunt hunt = javalinJackson.fromJsonString(body, Hunt.class);
+    assertEquals("Sam", hunt.title);
+    assertEquals(samsId.toHexString(), hunt._id);
+    // The lowercase title is only for the database's index.
+    assertFalse(body.contains(Hunt.TITLE_LOWER_KEY));
+  }
+
+  @Test
+  void getHuntIsServedFromTheCache() throws IOException {
+    String id = samsId.toHexString();
+    when(ctx.pathParam("id")).thenReturn(id);
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
+    huntController.getHunt(ctx);
+
+    // Change the hunt behind the controller's back; the cached copy
+    // should still be the one that's served.
+    db.getCollection("hunts").updateOne(
+        eq("_id", samsId), new Document("$set", new Document("title", "Not Sam")));
+    huntController.getHunt(ctx);
+
+    verify(ctx, Mockito.times(2)).result(bytesCaptor.capture());
+    Hunt hunt = javalinJackson.fromJsonString(new String(bytesCaptor.getValue(), StandardCharsets.UTF_8), Hunt.class);
+    assertEquals("Sam", hunt.title);
+  }
+
+  @Test
+  void aHuntChangedWhileItsBeingReadIsNotCached() throws IOException {
+    String id = samsId.toHexString();
+    when(ctx.pathParam("id")).thenReturn(id);
+    AtomicBoolean interleaved = new AtomicBoolean();
+    // Sam is changed (and the change recorded) after the first request
+    // has read Sam, but before it has cached its copy.
+    when(ctx.jsonMapper()).then(invocation -> {
+      if (interleaved.compareAndSet(false, true)) {
+        db.getCollection("hunts").updateOne(
+            eq("_id", samsId), new Document("$set", new Document("title", "Not Sam")));
+        Hunt changed = new Hunt();
+        changed._id = id;
+        huntController.huntsWritten(List.of(changed));
+      }
+      return javalinJackson;
+    });
+
+    huntController.getHunt(ctx);
+    huntController.getHunt(ctx);
+
+    verify(ctx, Mockito.times(2)).result(bytesCaptor.capture());
+    List<byte[]> bodies = bytesCaptor.getAllValues();
+    // The first request still gets what it read, but the second reads the
+    // hunt again rather than getting that from the cache.
+    Hunt first = javalinJackson.fromJsonString(new String(bodies.get(0), StandardCharsets.UTF_8), Hunt.class);
+    Hunt second = javalinJackson.fromJsonString(new String(bodies.get(1), StandardCharsets.UTF_8), Hunt.class);
+    assertEquals("Sam", first.title);
+    assertEquals("Not Sam", second.title);
+  }
+
+  @Test
+  void getHuntWithMatchingEtagIsNotModified() throws IOException {
+    String id = samsId.toHexString();
+    when(ctx.pathParam("id")).thenReturn(id);
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
+    huntController.getHunt(ctx);
+
+    ArgumentCaptor<String> etagCaptor = ArgumentCaptor.forClass(String.class);
+    verify(ctx).header(ArgumentMatchers.eq(Header.ETAG), etagCaptor.capture());
+    when(ctx.header(Header.IF_NONE_MATCH)).thenReturn(etagCaptor.getValue());
+
+    huntController.getHunt(ctx);
+
+    verify(ctx).status(HttpStatus.NOT_MODIFIED);
+    // Only the first request should have sent a body.
+    verify(ctx, Mockito.times(1)).result(any(byte[].class));
+  }
+
+  @Test
+  void deletingAHuntRemovesItFromTheCache() throws IOException {
+    String id = samsId.toHexString();
+    when(ctx.pathParam("id")).thenReturn(id);
+    when(ctx.jsonMapper()).thenReturn(javalinJackson);
+    huntController.getHunt(ctx);
+
+    huntController.deleteHunt(ctx);
+
+    assertThrows(NotFoundResponse.class, () -> {
+      huntController.getHunt(ctx);
+    });
   }
 
   @Test
@@ -263,9 +870,244 @@ class HuntControllerSpec {
     assertEquals("testers", addedHunt.get(HuntController.DESCRIPTION_KEY));
     // assertEquals("test@example.com", addedHunt.get("email"));
     assertEquals("test@example.com", addedHunt.get(HuntController.TASK_KEY));
+    assertEquals("test hunt", addedHunt.get(Hunt.TITLE_LOWER_KEY));
     // assertNotNull(addedHunt.get("avatar"));
   }
 
+  private HuntController readModelController() {
+    // A long check interval, so the tests decide when the checks happen.
+    return new HuntController(db, ReadPreference.primary(), null, new HuntReadModel.Settings(3600));
+  }
+
+  @Test
+  void readModelAnswersGetsFromMemory() throws IOException {
+    HuntController modelController = readModelController();
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+
+    // Change the hunt behind the controller's back; it still has the
+    // copy it loaded when it started...
+    db.getCollection("hunts").updateOne(
+        eq("_id", samsId), new Document("$set", new Document("title", "Not Sam")));
+    modelController.getHunt(ctx);
+
+    // ...until the consistency check finds the change.
+    assertEquals(Set.of(samsId.toHexString()), modelController.getReadModel().check());
+    modelController.getHunt(ctx);
+
+    verify(ctx, Mockito.times(2)).result(bytesCaptor.capture());
+    List<byte[]> bodies = bytesCaptor.getAllValues();
+    assertEquals("Sam", javalinJackson.fromJsonString(
+        new String(bodies.get(0), StandardCharsets.UTF_8), Hunt.class).title);
+    assertEquals("Not Sam", javalinJackson.fromJsonString(
+        new String(bodies.get(1), StandardCharsets.UTF_8), Hunt.class).title);
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void readModelRejectsMissingAndIllegalIds() {
+    HuntController modelController = readModelController();
+
+    when(ctx.pathParam("id")).thenReturn(new ObjectId().toHexString());
+    assertThrows(NotFoundResponse.class, () -> modelController.getHunt(ctx));
+
+    when(ctx.pathParam("id")).thenReturn("bad");
+    assertThrows(BadRequestResponse.class, () -> modelController.getHunt(ctx));
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void readModelFiltersAndSortsHunts() throws IOException {
+    HuntController modelController = readModelController();
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.HOST_KEY, List.of("Joe")));
+    when(ctx.queryParam(HuntController.HOST_KEY)).thenReturn("Joe");
+    when(ctx.queryParam(HuntController.SORT_ORDER_KEY)).thenReturn("desc");
+
+    modelController.getHunts(ctx);
+
+    List<Hunt> hunts = sentHunts();
+    assertEquals(2, hunts.size());
+    assertEquals("Sam", hunts.get(0).title);
+    assertEquals("Chris", hunts.get(1).title);
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void readModelPagesThroughHunts() throws IOException {
+    HuntController modelController = readModelController();
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.LIMIT_KEY, List.of("1")));
+    when(ctx.queryParamAsClass(HuntController.LIMIT_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "1", HuntController.LIMIT_KEY));
+
+    modelController.getHunts(ctx);
+    verify(ctx).json(huntPageCaptor.capture());
+    HuntPage firstPage = huntPageCaptor.getValue();
+    assertEquals("Chris", firstPage.hunts.get(0).title);
+
+    when(ctx.queryParam(HuntController.PAGE_TOKEN_KEY)).thenReturn(firstPage.nextPageToken);
+    modelController.getHunts(ctx);
+    verify(ctx, Mockito.times(2)).json(huntPageCaptor.capture());
+    HuntPage secondPage = huntPageCaptor.getValue();
+    assertEquals(1, secondPage.hunts.size());
+    assertEquals("Sam", secondPage.hunts.get(0).title);
+    assertEquals(null, secondPage.nextPageToken);
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void readModelStreamsHunts() throws IOException {
+    HuntController modelController = readModelController();
+    CapturingOutputStream out = new CapturingOutputStream();
+    when(ctx.queryParamMap()).thenReturn(Collections.emptyMap());
+    when(ctx.queryParam(HuntController.STREAM_KEY)).thenReturn(HuntController.STREAM_NDJSON);
+    when(ctx.outputStream()).thenReturn(out);
+
+    modelController.getHunts(ctx);
+
+    verify(ctx).contentType(HuntController.NDJSON_CONTENT_TYPE);
+    assertEquals(2, out.body().trim().split("\n").length);
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void readModelKeepsUpWithAddsAndDeletes() throws IOException {
+    HuntController modelController = readModelController();
+    String testNewHunt = """
+        {
+          "title": "Test Hunt",
+          "hostid": "Joe",
+          "description": "testers",
+          "task": "test@example.com"
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+    modelController.addNewHunt(ctx);
+    assertEquals(3, modelController.getReadModel().snapshot().size());
+
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    modelController.deleteHunt(ctx);
+    HuntSnapshot snapshot = modelController.getReadModel().snapshot();
+    assertEquals(2, snapshot.size());
+    assertEquals(null, snapshot.get(samsId.toHexString()));
+
+    // The database and the read model agree.
+    assertTrue(modelController.getReadModel().check().isEmpty());
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void readModelAnswersBatchGets() throws IOException {
+    HuntController modelController = readModelController();
+    String body = "{\"ids\": [\"" + samsId.toHexString() + "\", \"nope\"]}";
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>(body, HuntIdList.class, javalinJackson));
+
+    modelController.getHuntsById(ctx);
+
+    verify(ctx).json(batchCaptor.capture());
+    assertEquals(1, batchCaptor.getValue().get("found").size());
+    assertEquals(List.of("nope"), batchCaptor.getValue().get("missing"));
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void cacheStatsIncludeTheReadModel() {
+    HuntController modelController = readModelController();
+
+    modelController.getCacheStats(ctx);
+
+    verify(ctx).json(statsCaptor.capture());
+    assertEquals(2L, statsCaptor.getValue().get("readModel").get("size"));
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void addHuntInWriteBehindMode() throws IOException, InterruptedException {
+    HuntController writeBehindController = new HuntController(
+        db, ReadPreference.primary(), new HuntWriteBehind.Settings(10, 10, 10));
+    String testNewHunt = """
+        {
+          "title": "Later Hunt",
+          "hostid": "25",
+          "description": "testers",
+          "task": "test@example.com"
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+
+    writeBehindController.addNewHunt(ctx);
+
+    // The hunt has its id, but may not be written yet.
+    verify(ctx).status(HttpStatus.ACCEPTED);
+    verify(ctx).json(mapCaptor.capture());
+    ObjectId id = new ObjectId(mapCaptor.getValue().get("id"));
+
+    // Shutting down writes any hunts still waiting.
+    writeBehindController.flushNewHunts();
+    Document addedHunt = db.getCollection("hunts").find(eq("_id", id)).first();
+    assertEquals("Later Hunt", addedHunt.get("title"));
+    assertEquals("later hunt", addedHunt.get(Hunt.TITLE_LOWER_KEY));
+
+    // Once it's closed, new hunts are written right away.
+    writeBehindController.addNewHunt(ctx);
+    verify(ctx).status(HttpStatus.CREATED);
+  }
+
+  @Test
+  void huntsKeepTheirOwnIdsInWriteBehindMode() throws IOException {
+    HuntController writeBehindController = new HuntController(
+        db, ReadPreference.primary(), new HuntWriteBehind.Settings(10, 10, 10));
+    String id = new ObjectId().toHexString();
+    String testNewHunt = """
+        {
+          "_id": "%s",
+          "title": "Own Hunt",
+          "hostid": "25",
+          "description": "testers",
+          "task": "test@example.com"
+        }
+        """.formatted(id.toUpperCase(Locale.ROOT));
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+
+    writeBehindController.addNewHunt(ctx);
+    writeBehindController.flushNewHunts();
+
+    // It's written right away, with its own id.
+    verify(ctx).status(HttpStatus.CREATED);
+    verify(ctx).json(mapCaptor.capture());
+    assertEquals(id, mapCaptor.getValue().get("id"));
+    assertEquals(1, db.getCollection("hunts").countDocuments(eq("_id", new ObjectId(id))));
+  }
+
+  @Test
+  void huntsDeletedBeforeTheyreWrittenAreNeverWritten() throws IOException {
+    HuntController writeBehindController = new HuntController(
+        db, ReadPreference.primary(), new HuntWriteBehind.Settings(10, 10, 10));
+    String testNewHunt = """
+        {
+          "title": "Short Hunt",
+          "hostid": "25",
+          "description": "testers",
+          "task": "test@example.com"
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+    writeBehindController.addNewHunt(ctx);
+    verify(ctx).json(mapCaptor.capture());
+    String id = mapCaptor.getValue().get("id");
+    when(ctx.pathParam("id")).thenReturn(id);
+
+    // Deleted whether or not it's been written yet.
+    writeBehindController.deleteHunt(ctx);
+    writeBehindController.flushNewHunts();
+
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(0, db.getCollection("hunts").countDocuments(eq("_id", new ObjectId(id))));
+  }
+
   @Test
   void addNullTitleHunt() throws IOException {
     String testNewHunt = """
@@ -355,6 +1197,119 @@ class HuntControllerSpec {
     });
   }
 
+  @Test
+  void canAddHuntsInBulkFromAJsonArray() throws IOException {
+    String body = """
+        [
+          {"title": "One", "hostid": "Pat", "description": "first", "task": "a"},
+          {"title": "", "hostid": "Pat", "description": "second", "task": "b"},
+          {"title": "Three", "hostid": "Pat", "description": "third", "task": "c"}
+        ]
+        """;
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+    huntController.addNewHunts(ctx);
+
+    verify(ctx).json(bulkResultCaptor.capture());
+    verify(ctx).status(HttpStatus.CREATED);
+    HuntBulkResult result = bulkResultCaptor.getValue();
+    assertEquals(2, result.inserted);
+    assertEquals(1, result.failed);
+    assertEquals(3, result.results.size());
+    assertNotNull(result.results.get(0).id);
+    assertEquals("Hunt must have a non-empty hunt title", result.results.get(1).error);
+    assertEquals(2, result.results.get(2).index);
+
+    Document three = db.getCollection("hunts")
+        .find(eq("_id", new ObjectId(result.results.get(2).id))).first();
+    assertEquals("Three", three.get("title"));
+    assertEquals("three", three.get(Hunt.TITLE_LOWER_KEY));
+    assertEquals(4, db.getCollection("hunts").countDocuments());
+  }
+
+  @Test
+  void canAddHuntsInBulkFromNdjsonInSmallChunks() throws IOException {
+    String body = """
+        {"title": "One", "hostid": "Pat", "description": "first", "task": "a"}
+        {"title": "Two", "hostid": "Pat", "description": "second", "task": "b"}
+        {"title": "Three", "hostid": "Pat", "description": "third", "task": "c"}
+        """;
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    when(ctx.queryParam(HuntController.CHUNK_SIZE_KEY)).thenReturn("2");
+    when(ctx.queryParamAsClass(HuntController.CHUNK_SIZE_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "2", HuntController.CHUNK_SIZE_KEY));
+
+    huntController.addNewHunts(ctx);
+
+    verify(ctx).json(bulkResultCaptor.capture());
+    assertEquals(3, bulkResultCaptor.getValue().inserted);
+    assertEquals(3, db.getCollection("hunts").countDocuments(eq("hostid", "Pat")));
+  }
+
+  @Test
+  void bulkAddReportsDuplicateIds() throws IOException {
+    String body = "[{\"_id\": \"" + samsId.toHexString()
+        + "\", \"title\": \"Again\", \"hostid\": \"Pat\", \"description\": \"d\", \"task\": \"t\"},"
+        + " {\"title\": \"New\", \"hostid\": \"Pat\", \"description\": \"d\", \"task\": \"t\"}]";
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+    huntController.addNewHunts(ctx);
+
+    verify(ctx).json(bulkResultCaptor.capture());
+    HuntBulkResult result = bulkResultCaptor.getValue();
+    assertEquals(1, result.inserted);
+    assertEquals(1, result.failed);
+    assertNotNull(result.results.get(0).error);
+    assertNotNull(result.results.get(1).id);
+  }
+
+  @Test
+  void bulkAddReportsIllegalIds() throws IOException {
+    String upperCaseId = new ObjectId().toHexString().toUpperCase();
+    String body = "[{\"_id\": \"not-an-id\","
+        + " \"title\": \"Bad\", \"hostid\": \"Pat\", \"description\": \"d\", \"task\": \"t\"},"
+        + " {\"_id\": \"" + upperCaseId
+        + "\", \"title\": \"Upper\", \"hostid\": \"Pat\", \"description\": \"d\", \"task\": \"t\"}]";
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+    huntController.addNewHunts(ctx);
+
+    verify(ctx).json(bulkResultCaptor.capture());
+    verify(ctx).status(HttpStatus.CREATED);
+    HuntBulkResult result = bulkResultCaptor.getValue();
+    assertEquals(1, result.inserted);
+    assertEquals("A new hunt's id, if it has one, must be a legal Mongo Object ID", result.results.get(0).error);
+    assertEquals(upperCaseId.toLowerCase(), result.results.get(1).id);
+  }
+
+  @Test
+  void bulkAddStopsAtMalformedJson() throws IOException {
+    String body = """
+        {"title": "One", "hostid": "Pat", "description": "first", "task": "a"}
+        {"title": "Two", "hostid":
+        """;
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+    huntController.addNewHunts(ctx);
+
+    verify(ctx).json(bulkResultCaptor.capture());
+    HuntBulkResult result = bulkResultCaptor.getValue();
+    assertEquals(1, result.inserted);
+    assertEquals(1, result.failed);
+    assertEquals(1, result.results.get(1).index);
+  }
+
+  @Test
+  void bulkAddWithNoValidHuntsIsABadRequest() throws IOException {
+    String body = "[{\"title\": \"No host\"}]";
+    when(ctx.bodyInputStream()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+    huntController.addNewHunts(ctx);
+
+    verify(ctx).status(HttpStatus.BAD_REQUEST);
+    assertEquals(2, db.getCollection("hunts").countDocuments());
+  }
+
   @Test
   void deleteFoundHunt() throws IOException {
     String testID = samsId.toHexString();
@@ -390,6 +1345,520 @@ class HuntControllerSpec {
     assertEquals(0, db.getCollection("hunts").countDocuments(eq("_id", new ObjectId(testID))));
   }
 
+  private void patchBody(String body) {
+    when(ctx.bodyValidator(HuntUpdate.class))
+        .then(value -> new BodyValidator<HuntUpdate>(body, HuntUpdate.class, javalinJackson));
+  }
+
+  @Test
+  void updateHuntChangesJustTheGivenFields() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    patchBody("{\"title\": \"Samuel\", \"version\": 0}");
+
+    huntController.updateHunt(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx).json(huntCaptor.capture());
+    assertEquals("Samuel", huntCaptor.getValue().title);
+    assertEquals(1, huntCaptor.getValue().version);
+
+    Document updated = db.getCollection("hunts").find(eq("_id", samsId)).first();
+    assertEquals("Samuel", updated.get("title"));
+    assertEquals("samuel", updated.get("titleLower"));
+    assertEquals("OHMNET", updated.get("description"));
+    assertEquals(1L, updated.get("version"));
+  }
+
+  @Test
+  void updateHuntWithAStaleVersionIsAConflict() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    patchBody("{\"title\": \"Samuel\", \"version\": 0}");
+    huntController.updateHunt(ctx);
+
+    // A second edit made to the same (now old) version of the hunt.
+    patchBody("{\"task\": \"Find a toad\", \"version\": 0}");
+    assertThrows(ConflictResponse.class, () -> {
+      huntController.updateHunt(ctx);
+    });
+
+    Document hunt = db.getCollection("hunts").find(eq("_id", samsId)).first();
+    assertEquals("sam@frogs.com", hunt.get("task"));
+    assertEquals(1L, hunt.get("version"));
+
+    // Made to the current version, it goes through.
+    patchBody("{\"task\": \"Find a toad\", \"version\": 1}");
+    huntController.updateHunt(ctx);
+    assertEquals("Find a toad", db.getCollection("hunts").find(eq("_id", samsId)).first().get("task"));
+  }
+
+  @Test
+  void updatingTheTaskRenamesTheFirstTask() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    addSamATask("Find a toad");
+    patchBody("{\"task\": \"Find a $newt\", \"version\": 1}");
+
+    huntController.updateHunt(ctx);
+
+    assertEquals(List.of("Find a $newt", "Find a toad"), samsTaskNames());
+    Document sam = db.getCollection("hunts").find(eq("_id", samsId)).first();
+    assertEquals("Find a $newt", sam.get("task"));
+    assertEquals(samsId.toHexString(), sam.getList("tasks", Document.class).get(0).get("id"));
+    assertEquals(2L, sam.get("version"));
+
+    // The old name is gone from the `task` filter, and the new one is there.
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.TASK_KEY, List.of("frogs")));
+    when(ctx.queryParam(HuntController.TASK_KEY)).thenReturn("frogs");
+    huntController.getHunts(ctx);
+    assertEquals(0, sentHunts().size());
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.TASK_KEY, List.of("newt")));
+    when(ctx.queryParam(HuntController.TASK_KEY)).thenReturn("newt");
+    huntController.getHunts(ctx);
+    assertEquals("Sam", sentHunts().get(0).title);
+  }
+
+  @Test
+  void updatedHuntsAreNotServedStaleFromTheCache() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    huntController.getHunt(ctx);
+
+    patchBody("{\"title\": \"Samuel\", \"version\": 0}");
+    huntController.updateHunt(ctx);
+    huntController.getHunt(ctx);
+
+    verify(ctx, Mockito.times(2)).result(bytesCaptor.capture());
+    Hunt sent = javalinJackson.fromJsonString(
+        new String(bytesCaptor.getValue(), StandardCharsets.UTF_8), Hunt.class);
+    assertEquals("Samuel", sent.title);
+    assertEquals(1, sent.version);
+  }
+
+  @Test
+  void readModelKeepsUpWithUpdates() throws IOException {
+    HuntController modelController = readModelController();
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    patchBody("{\"hostid\": \"Pat\", \"version\": 0}");
+
+    modelController.updateHunt(ctx);
+
+    assertEquals("Pat", modelController.getReadModel().snapshot().get(samsId.toHexString()).hostid);
+    // Nothing for the consistency check to repair.
+    assertTrue(modelController.getReadModel().check().isEmpty());
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void updateMissingHuntIsNotFound() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(new ObjectId().toHexString());
+    patchBody("{\"title\": \"Samuel\", \"version\": 0}");
+
+    assertThrows(NotFoundResponse.class, () -> {
+      huntController.updateHunt(ctx);
+    });
+  }
+
+  @Test
+  void updatesMustHaveAVersionAndSomethingToChange() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+
+    patchBody("{\"title\": \"Samuel\"}");
+    assertThrows(ValidationException.class, () -> {
+      huntController.updateHunt(ctx);
+    });
+
+    patchBody("{\"version\": 0}");
+    assertThrows(ValidationException.class, () -> {
+      huntController.updateHunt(ctx);
+    });
+
+    patchBody("{\"title\": \"\", \"version\": 0}");
+    assertThrows(ValidationException.class, () -> {
+      huntController.updateHunt(ctx);
+    });
+    assertEquals("Sam", db.getCollection("hunts").find(eq("_id", samsId)).first().get("title"));
+  }
+
+  private void taskBody(String body) {
+    when(ctx.bodyValidator(HuntTask.class))
+        .then(value -> new BodyValidator<HuntTask>(body, HuntTask.class, javalinJackson));
+  }
+
+  /**
+   * @return the names of Sam's tasks, in order, as they are in the database
+   */
+  private List<String> samsTaskNames() {
+    List<String> names = new ArrayList<>();
+    for (Document task : db.getCollection("hunts").find(eq("_id", samsId)).first().getList("tasks", Document.class)) {
+      names.add(task.getString("name"));
+    }
+    return names;
+  }
+
+  private String addSamATask(String name) {
+    taskBody("{\"name\": \"" + name + "\"}");
+    huntController.addTask(ctx);
+    verify(ctx, Mockito.atLeastOnce()).json(mapCaptor.capture());
+    return mapCaptor.getValue().get("id");
+  }
+
+  @Test
+  void existingHuntsGetATaskList() {
+    Document sam = db.getCollection("hunts").find(eq("_id", samsId)).first();
+    List<Document> tasks = sam.getList("tasks", Document.class);
+    assertEquals(1, tasks.size());
+    assertEquals(samsId.toHexString(), tasks.get(0).get("id"));
+    assertEquals("sam@frogs.com", tasks.get(0).get("name"));
+  }
+
+  @Test
+  void newHuntsStartWithTheirTask() throws IOException {
+    String testNewHunt = """
+        {
+          "title": "Test Hunt",
+          "hostid": "Pat",
+          "description": "testers",
+          "task": "Find a test"
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+
+    huntController.addNewHunt(ctx);
+
+    verify(ctx).json(mapCaptor.capture());
+    Document added = db.getCollection("hunts")
+        .find(eq("_id", new ObjectId(mapCaptor.getValue().get("id")))).first();
+    List<Document> tasks = added.getList("tasks", Document.class);
+    assertEquals(1, tasks.size());
+    assertEquals("Find a test", tasks.get(0).get("name"));
+    assertTrue(ObjectId.isValid(tasks.get(0).getString("id")));
+  }
+
+  @Test
+  void newHuntsTasksGetIdsFromTheServer() throws IOException {
+    String testNewHunt = """
+        {
+          "title": "Test Hunt",
+          "hostid": "Pat",
+          "description": "testers",
+          "task": "Find a test",
+          "tasks": [{"id": "mine", "name": "Find a test"}, {"id": "mine", "name": "Find another"}]
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+
+    huntController.addNewHunt(ctx);
+
+    verify(ctx).json(mapCaptor.capture());
+    Document added = db.getCollection("hunts")
+        .find(eq("_id", new ObjectId(mapCaptor.getValue().get("id")))).first();
+    List<Document> tasks = added.getList("tasks", Document.class);
+    assertEquals(2, tasks.size());
+    assertTrue(ObjectId.isValid(tasks.get(0).getString("id")));
+    assertTrue(ObjectId.isValid(tasks.get(1).getString("id")));
+    assertNotEquals(tasks.get(0).get("id"), tasks.get(1).get("id"));
+  }
+
+  @Test
+  void newHuntsTaskMustBeTheirFirstTask() throws IOException {
+    String testNewHunt = """
+        {
+          "title": "Test Hunt",
+          "hostid": "Pat",
+          "description": "testers",
+          "task": "Find a test",
+          "tasks": [{"name": "Find another"}, {"name": "Find a test"}]
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+
+    assertThrows(ValidationException.class, () -> {
+      huntController.addNewHunt(ctx);
+    });
+  }
+
+  @Test
+  void newHuntsStartAtVersionZero() throws IOException {
+    String testNewHunt = """
+        {
+          "title": "Test Hunt",
+          "hostid": "Pat",
+          "description": "testers",
+          "task": "Find a test",
+          "version": 7
+        }
+        """;
+    when(ctx.bodyValidator(Hunt.class))
+        .then(value -> new BodyValidator<Hunt>(testNewHunt, Hunt.class, javalinJackson));
+
+    huntController.addNewHunt(ctx);
+
+    verify(ctx).json(mapCaptor.capture());
+    Document added = db.getCollection("hunts")
+        .find(eq("_id", new ObjectId(mapCaptor.getValue().get("id")))).first();
+    assertEquals(0L, added.get("version"));
+  }
+
+  @Test
+  void canAddTasksAtTheEndOrAnywhere() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+
+    String toadId = addSamATask("Find a toad");
+    verify(ctx).status(HttpStatus.CREATED);
+    when(ctx.queryParam(HuntController.POSITION_KEY)).thenReturn("0");
+    when(ctx.queryParamAsClass(HuntController.POSITION_KEY, Integer.class))
+        .thenReturn(Validator.create(Integer.class, "0", HuntController.POSITION_KEY));
+    addSamATask("Find a newt");
+
+    assertEquals(List.of("Find a newt", "sam@frogs.com", "Find a toad"), samsTaskNames());
+    assertTrue(ObjectId.isValid(toadId));
+    Document sam = db.getCollection("hunts").find(eq("_id", samsId)).first();
+    assertEquals(2L, sam.get("version"));
+    // The new first task is the hunt's task now.
+    assertEquals("Find a newt", sam.get("task"));
+  }
+
+  @Test
+  void canRenameATask() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    String toadId = addSamATask("Find a toad");
+    when(ctx.pathParam("taskId")).thenReturn(toadId);
+    taskBody("{\"name\": \"Find two toads\"}");
+
+    huntController.renameTask(ctx);
+
+    assertEquals(List.of("sam@frogs.com", "Find two toads"), samsTaskNames());
+  }
+
+  @Test
+  void canRemoveATask() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    addSamATask("Find a toad");
+    // Sam's first task, which has the hunt's own id.
+    when(ctx.pathParam("taskId")).thenReturn(samsId.toHexString());
+
+    huntController.removeTask(ctx);
+
+    assertEquals(List.of("Find a toad"), samsTaskNames());
+    assertEquals("Find a toad", db.getCollection("hunts").find(eq("_id", samsId)).first().get("task"));
+    // It's gone now, so it can't be removed again.
+    assertThrows(NotFoundResponse.class, () -> {
+      huntController.removeTask(ctx);
+    });
+  }
+
+  @Test
+  void theLastTaskCantBeRemoved() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    when(ctx.pathParam("taskId")).thenReturn(samsId.toHexString());
+
+    assertThrows(ConflictResponse.class, () -> {
+      huntController.removeTask(ctx);
+    });
+    assertEquals(List.of("sam@frogs.com"), samsTaskNames());
+  }
+
+  @Test
+  void tasksMustHaveNames() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    taskBody("{\"name\": \"\"}");
+
+    assertThrows(ValidationException.class, () -> {
+      huntController.addTask(ctx);
+    });
+    assertEquals(List.of("sam@frogs.com"), samsTaskNames());
+  }
+
+  @Test
+  void canReorderTasks() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    String toadId = addSamATask("Find a toad");
+    String newtId = addSamATask("Find a newt");
+    String body = "{\"ids\": [\"" + newtId + "\", \"" + samsId.toHexString() + "\", \"" + toadId + "\"]}";
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>(body, HuntIdList.class, javalinJackson));
+
+    huntController.reorderTasks(ctx);
+
+    assertEquals(List.of("Find a newt", "sam@frogs.com", "Find a toad"), samsTaskNames());
+    Document sam = db.getCollection("hunts").find(eq("_id", samsId)).first();
+    assertEquals(3L, sam.get("version"));
+    assertEquals("Find a newt", sam.get("task"));
+  }
+
+  @Test
+  void reorderingSomeOtherSetOfTasksIsAConflict() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    String toadId = addSamATask("Find a toad");
+    // Leaves out Sam's first task.
+    String body = "{\"ids\": [\"" + toadId + "\"]}";
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>(body, HuntIdList.class, javalinJackson));
+
+    assertThrows(ConflictResponse.class, () -> {
+      huntController.reorderTasks(ctx);
+    });
+    assertEquals(List.of("sam@frogs.com", "Find a toad"), samsTaskNames());
+  }
+
+  @Test
+  void taskFilterMatchesAnyOfAHuntsTasks() throws IOException {
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    addSamATask("Find a toad");
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.TASK_KEY, List.of("TOAD")));
+    when(ctx.queryParam(HuntController.TASK_KEY)).thenReturn("TOAD");
+
+    huntController.getHunts(ctx);
+
+    List<Hunt> hunts = sentHunts();
+    assertEquals(1, hunts.size());
+    assertEquals("Sam", hunts.get(0).title);
+    assertEquals(2, hunts.get(0).tasks.size());
+  }
+
+  @Test
+  void readModelKeepsUpWithTaskChanges() throws IOException {
+    HuntController modelController = readModelController();
+    when(ctx.pathParam("id")).thenReturn(samsId.toHexString());
+    taskBody("{\"name\": \"Find a toad\"}");
+
+    modelController.addTask(ctx);
+
+    assertEquals(2, modelController.getReadModel().snapshot().get(samsId.toHexString()).tasks.size());
+    assertTrue(modelController.getReadModel().check().isEmpty());
+    modelController.closeReadModel();
+  }
+
+  @Test
+  void canGetHuntsInABatch() throws IOException {
+    String body = "{\"ids\": [\"" + samsId.toHexString() + "\", \"" + new ObjectId().toHexString()
+        + "\", \"not-an-id\", \"" + samsId.toHexString() + "\"]}";
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>(body, HuntIdList.class, javalinJackson));
+
+    huntController.getHuntsById(ctx);
+
+    verify(ctx).json(batchCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    List<?> found = batchCaptor.getValue().get("found");
+    assertEquals(1, found.size());
+    assertEquals("Sam", ((Hunt) found.get(0)).title);
+    assertEquals(2, batchCaptor.getValue().get("missing").size());
+    assertTrue(batchCaptor.getValue().get("missing").contains("not-an-id"));
+  }
+
+  @Test
+  void canDeleteHuntsInABatch() throws IOException {
+    String missingId = new ObjectId().toHexString();
+    String body = "{\"ids\": [\"" + samsId.toHexString() + "\", \"" + missingId + "\"]}";
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>(body, HuntIdList.class, javalinJackson));
+
+    huntController.deleteHuntsById(ctx);
+
+    verify(ctx).json(batchCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertEquals(List.of(samsId.toHexString()), batchCaptor.getValue().get("deleted"));
+    assertEquals(List.of(missingId), batchCaptor.getValue().get("missing"));
+    assertEquals(0, db.getCollection("hunts").countDocuments(eq("_id", samsId)));
+    assertEquals(1, db.getCollection("hunts").countDocuments());
+  }
+
+  @Test
+  void batchesMatchUppercaseIds() throws IOException {
+    String body = "{\"ids\": [\"" + samsId.toHexString().toUpperCase() + "\"]}";
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>(body, HuntIdList.class, javalinJackson));
+
+    huntController.getHuntsById(ctx);
+    huntController.deleteHuntsById(ctx);
+    // Deleting it again finds nothing left to delete.
+    huntController.deleteHuntsById(ctx);
+
+    verify(ctx, Mockito.times(3)).json(batchCaptor.capture());
+    List<Map<String, List<?>>> responses = batchCaptor.getAllValues();
+    assertEquals(1, responses.get(0).get("found").size());
+    assertEquals(List.of(), responses.get(0).get("missing"));
+    assertEquals(List.of(samsId.toHexString()), responses.get(1).get("deleted"));
+    assertEquals(List.of(), responses.get(1).get("missing"));
+    assertEquals(List.of(), responses.get(2).get("deleted"));
+    assertEquals(List.of(samsId.toHexString()), responses.get(2).get("missing"));
+    assertEquals(0, db.getCollection("hunts").countDocuments(eq("_id", samsId)));
+  }
+
+  @Test
+  void batchWithoutIdsIsRejected() throws IOException {
+    when(ctx.bodyValidator(HuntIdList.class))
+        .then(value -> new BodyValidator<HuntIdList>("{}", HuntIdList.class, javalinJackson));
+
+    assertThrows(ValidationException.class, () -> {
+      huntController.deleteHuntsById(ctx);
+    });
+    assertEquals(2, db.getCollection("hunts").countDocuments());
+  }
+
+  @Test
+  void canGetHuntsByExactHostId() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.HOST_KEY, List.of("Joe")));
+    when(ctx.queryParam(HuntController.HOST_KEY)).thenReturn("Joe");
+
+    huntController.getHunts(ctx);
+
+    assertEquals(2, sentHunts().size());
+  }
+
+  @Test
+  void hostIdMustMatchExactly() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.HOST_KEY, List.of("Jo")));
+    when(ctx.queryParam(HuntController.HOST_KEY)).thenReturn("Jo");
+
+    huntController.getHunts(ctx);
+
+    assertEquals(0, sentHunts().size());
+  }
+
+  @Test
+  void canGetHuntsByTitlePrefixIgnoringCase() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.TITLE_KEY, List.of("cH")));
+    when(ctx.queryParam(HuntController.TITLE_KEY)).thenReturn("cH");
+
+    huntController.getHunts(ctx);
+
+    List<Hunt> sentHunts = sentHunts();
+    assertEquals(1, sentHunts.size());
+    assertEquals("Chris", sentHunts.get(0).title);
+  }
+
+  @Test
+  void canGetHuntsByExactTitle() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.TITLE_KEY, List.of("SAM")));
+    when(ctx.queryParam(HuntController.TITLE_KEY)).thenReturn("SAM");
+    when(ctx.queryParam(HuntController.MATCH_KEY)).thenReturn(HuntController.MATCH_EXACT);
+
+    huntController.getHunts(ctx);
+
+    List<Hunt> sentHunts = sentHunts();
+    assertEquals(1, sentHunts.size());
+    assertEquals("Sam", sentHunts.get(0).title);
+  }
+
+  @Test
+  void exactTitleDoesNotMatchPrefixes() throws IOException {
+    when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.TITLE_KEY, List.of("Sa")));
+    when(ctx.queryParam(HuntController.TITLE_KEY)).thenReturn("Sa");
+    when(ctx.queryParam(HuntController.MATCH_KEY)).thenReturn(HuntController.MATCH_EXACT);
+
+    huntController.getHunts(ctx);
+
+    assertEquals(0, sentHunts().size());
+  }
+
+  @Test
+  void escapeRegexEscapesSpecialCharacters() {
+    assertEquals("a\\.b\\*c d", HuntController.escapeRegex("a.b*c d"));
+  }
+
   @Test
   void constructFilterWithHostKey() {
     when(ctx.queryParamMap()).thenReturn(Map.of(HuntController.HOST_KEY, List.of("testHost")));
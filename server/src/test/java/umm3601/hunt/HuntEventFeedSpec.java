@@ -0,0 +1,256 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mongojack.JacksonMongoCollection;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import io.javalin.http.sse.SseClient;
+import umm3601.hunt.HuntEventFeed.HuntEvent;
+import umm3601.hunt.HuntEventFeed.Subscriber;
+
+/**
+ * Tests the feed of hunt changes behind `/api/hunts/events`, against the
+ * same "test" database as `HuntControllerSpec`.
+ */
+class HuntEventFeedSpec {
+
+  private static final Duration SHORT = Duration.ofMillis(50);
+  private static final Duration LONG = Duration.ofSeconds(10);
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  private MongoCollection<Document> huntDocuments;
+  private HuntEventFeed feed;
+  private ObjectId samsId;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  @BeforeEach
+  void setupEach() {
+    huntDocuments = db.getCollection("hunts");
+    huntDocuments.drop();
+    samsId = new ObjectId();
+    huntDocuments.insertMany(List.of(
+        new Document().append("title", "Chris").append("hostid", "Joe"),
+        new Document().append("_id", samsId).append("title", "Sam").append("hostid", "Joe")));
+
+    JacksonMongoCollection<Hunt> hunts = HuntSchema.collection(db);
+    feed = new HuntEventFeed(hunts, 2, SHORT, SHORT);
+  }
+
+  @AfterEach
+  void teardownEach() {
+    feed.stop();
+  }
+
+  @Test
+  void everySubscriberGetsEachEvent() throws InterruptedException {
+    Subscriber first = feed.subscribe();
+    Subscriber second = feed.subscribe();
+
+    feed.publish(HuntEventFeed.DELETE_EVENT, "abc", null);
+
+    for (Subscriber subscriber : List.of(first, second)) {
+      HuntEvent event = subscriber.next(SHORT);
+      assertEquals(HuntEventFeed.DELETE_EVENT, event.type());
+      assertEquals("{\"id\":\"abc\"}", event.data());
+    }
+  }
+
+  @Test
+  void subscribersThatFallBehindAreDropped() throws InterruptedException {
+    Subscriber slow = feed.subscribe();
+    Subscriber fast = feed.subscribe();
+
+    // The queues hold two events.
+    feed.publish(HuntEventFeed.DELETE_EVENT, "a", null);
+    feed.publish(HuntEventFeed.DELETE_EVENT, "b", null);
+    assertNotNull(fast.next(SHORT));
+    assertNotNull(fast.next(SHORT));
+    feed.publish(HuntEventFeed.DELETE_EVENT, "c", null);
+
+    assertTrue(slow.overflowed());
+    // All it has left is the `resync`.
+    assertEquals(HuntEventFeed.RESYNC, slow.next(SHORT));
+    assertNull(slow.next(SHORT));
+    assertFalse(fast.overflowed());
+    assertTrue(fast.next(SHORT).data().contains("\"c\""));
+    assertEquals(1, feed.subscriberCount());
+  }
+
+  @Test
+  void pollingFindsAddedAndDeletedHunts() throws InterruptedException {
+    Subscriber subscriber = feed.subscribe();
+    feed.stop();
+
+    // The first poll just records which hunts there are.
+    feed.pollOnce();
+    assertNull(subscriber.next(SHORT));
+
+    ObjectId newId = new ObjectId();
+    huntDocuments.insertOne(new Document().append("_id", newId).append("title", "New").append("hostid", "Kim"));
+    huntDocuments.deleteOne(new Document("_id", samsId));
+    feed.pollOnce();
+
+    HuntEvent inserted = subscriber.next(SHORT);
+    assertEquals(HuntEventFeed.INSERT_EVENT, inserted.type());
+    assertTrue(inserted.data().contains(newId.toHexString()));
+    assertTrue(inserted.data().contains("\"title\":\"New\""));
+    HuntEvent deleted = subscriber.next(SHORT);
+    assertEquals(HuntEventFeed.DELETE_EVENT, deleted.type());
+    assertTrue(deleted.data().contains(samsId.toHexString()));
+    assertTrue(inserted.sequence() < deleted.sequence());
+  }
+
+  @Test
+  void watcherPublishesNewHunts() throws InterruptedException {
+    // Depending on the database, this follows a change stream or polls.
+    Subscriber subscriber = feed.subscribe();
+    HuntEvent event = null;
+    long deadline = System.nanoTime() + LONG.toNanos();
+    while (event == null && System.nanoTime() < deadline) {
+      // Keep adding hunts until the watcher is ready to see them.
+      huntDocuments.insertOne(new Document().append("title", "New").append("hostid", "Kim"));
+      event = subscriber.next(Duration.ofMillis(500));
+    }
+
+    assertNotNull(event);
+    assertEquals(HuntEventFeed.INSERT_EVENT, event.type());
+    assertTrue(event.data().contains("\"hostid\":\"Kim\""));
+  }
+
+  @Test
+  void watcherRunsOnlyWhileThereAreSubscribers() {
+    Subscriber first = feed.subscribe();
+    Subscriber second = feed.subscribe();
+    assertTrue(feed.watching());
+
+    feed.unsubscribe(first);
+    assertTrue(feed.watching());
+    feed.unsubscribe(second);
+    assertFalse(feed.watching());
+
+    feed.subscribe();
+    assertTrue(feed.watching());
+  }
+
+  @Test
+  void watcherStartsAfreshForTheNextSubscriber() throws InterruptedException {
+    Subscriber first = feed.subscribe();
+    feed.unsubscribe(first);
+    // Nobody hears about this, not even the next subscriber.
+    huntDocuments.deleteOne(new Document("_id", samsId));
+
+    Subscriber next = feed.subscribe();
+    HuntEvent event = null;
+    long deadline = System.nanoTime() + LONG.toNanos();
+    while (event == null && System.nanoTime() < deadline) {
+      huntDocuments.insertOne(new Document().append("title", "New").append("hostid", "Kim"));
+      event = next.next(Duration.ofMillis(500));
+    }
+
+    assertNotNull(event);
+    assertEquals(HuntEventFeed.INSERT_EVENT, event.type());
+  }
+
+  @Test
+  void deliverSendsEventsUntilTheClientGoesAway() {
+    Subscriber subscriber = feed.subscribe();
+    feed.stop();
+    feed.publish(HuntEventFeed.DELETE_EVENT, "abc", null);
+    SseClient client = mock(SseClient.class);
+    // Nothing more is published, so the next thing sent is a keep-alive,
+    // which finds the client gone.
+    doAnswer(invocation -> {
+      feed.unsubscribe(subscriber);
+      return null;
+    }).when(client).sendComment(anyString());
+
+    feed.deliver(subscriber, client);
+
+    verify(client).sendEvent(HuntEventFeed.DELETE_EVENT, "{\"id\":\"abc\"}", "1");
+    verify(client).close();
+    assertEquals(0, feed.subscriberCount());
+  }
+
+  @Test
+  void deliverTellsClientsThatFellBehindToResync() {
+    Subscriber subscriber = feed.subscribe();
+    feed.stop();
+    for (int i = 0; i < 3; i++) {
+      feed.publish(HuntEventFeed.DELETE_EVENT, "abc", null);
+    }
+    SseClient client = mock(SseClient.class);
+
+    feed.deliver(subscriber, client);
+
+    verify(client).sendEvent(eq(HuntEventFeed.RESYNC_EVENT), any());
+    verify(client).close();
+    assertTrue(subscriber.closed());
+  }
+
+  @Test
+  void overflowingWakesAWaitingDelivery() throws InterruptedException {
+    // With a long keep-alive interval, the delivery would otherwise wait
+    // that long before noticing the overflow.
+    HuntEventFeed slowFeed = new HuntEventFeed(HuntSchema.collection(db), 2, SHORT, LONG);
+    Subscriber subscriber = slowFeed.subscribe();
+    slowFeed.stop();
+    SseClient client = mock(SseClient.class);
+    Thread delivery = Thread.ofVirtual().start(() -> slowFeed.deliver(subscriber, client));
+
+    for (int i = 0; i < 3; i++) {
+      slowFeed.publish(HuntEventFeed.DELETE_EVENT, "abc", null);
+    }
+    delivery.join(LONG.dividedBy(2).toMillis());
+
+    assertFalse(delivery.isAlive());
+    verify(client).sendEvent(eq(HuntEventFeed.RESYNC_EVENT), any());
+    verify(client, never()).sendComment(anyString());
+  }
+}
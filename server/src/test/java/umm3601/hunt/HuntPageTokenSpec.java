@@ -0,0 +1,43 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.BadRequestResponse;
+
+class HuntPageTokenSpec {
+
+  @Test
+  void tokensSurviveARoundTrip() {
+    ObjectId lastId = new ObjectId();
+    HuntPageToken token = new HuntPageToken("title", true, "Sam", lastId);
+
+    HuntPageToken decoded = HuntPageToken.decode(token.encode());
+
+    assertEquals("title", decoded.getSortBy());
+    assertTrue(decoded.isDescending());
+    assertEquals("Sam", decoded.getLastValue());
+    assertEquals(lastId, decoded.getLastId());
+  }
+
+  @Test
+  void tokensOnlyMatchTheSameSortingOrder() {
+    HuntPageToken token = new HuntPageToken("title", false, "Sam", new ObjectId());
+
+    assertTrue(token.matches("title", false));
+    assertFalse(token.matches("title", true));
+    assertFalse(token.matches("hostid", false));
+  }
+
+  @Test
+  void garbageTokensAreRejected() {
+    assertThrows(BadRequestResponse.class, () -> HuntPageToken.decode("not a token!"));
+    assertThrows(BadRequestResponse.class, () -> HuntPageToken.decode("bm90IGpzb24"));
+    assertThrows(BadRequestResponse.class, () -> HuntPageToken.decode("e30"));
+  }
+}
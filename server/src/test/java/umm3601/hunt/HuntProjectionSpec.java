@@ -0,0 +1,73 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoClientSettings;
+
+import io.javalin.http.BadRequestResponse;
+
+class HuntProjectionSpec {
+
+  private static Hunt sampleHunt() {
+    Hunt hunt = new Hunt();
+    hunt._id = "588935f57546a2daea44de7c";
+    hunt.title = "Sam";
+    hunt.hostid = "Joe";
+    hunt.description = "OHMNET";
+    hunt.task = "sam@frogs.com";
+    return hunt;
+  }
+
+  private static String toJson(org.bson.conversions.Bson bson) {
+    return bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()).toJson();
+  }
+
+  @Test
+  void noFieldsMeansEveryField() {
+    assertNull(HuntProjection.parse(null));
+    assertNull(HuntProjection.parse(" "));
+  }
+
+  @Test
+  void unknownFieldsAreRejected() {
+    assertThrows(BadRequestResponse.class, () -> HuntProjection.parse("title,password"));
+  }
+
+  @Test
+  void projectionAlwaysIncludesTheId() {
+    HuntProjection projection = HuntProjection.parse("title, hostid");
+    assertEquals("{\"_id\": 1, \"title\": 1, \"hostid\": 1}", toJson(projection.toBson()));
+  }
+
+  @Test
+  void projectionCanFetchExtraFields() {
+    HuntProjection projection = HuntProjection.parse("hostid");
+    assertEquals("{\"_id\": 1, \"hostid\": 1, \"title\": 1}", toJson(projection.toBson("title", "hostid")));
+  }
+
+  @Test
+  void onlyTheRequestedFieldsAreSerialized() {
+    HuntProjection projection = HuntProjection.parse("title");
+    assertEquals("{\"_id\":\"588935f57546a2daea44de7c\",\"title\":\"Sam\"}", projection.toJson(sampleHunt()));
+  }
+
+  @Test
+  void huntsInsideOtherValuesAreFilteredToo() {
+    HuntProjection projection = HuntProjection.parse("hostid");
+    assertEquals(
+        "{\"hunts\":[{\"_id\":\"588935f57546a2daea44de7c\",\"hostid\":\"Joe\"}],\"nextPageToken\":null}",
+        projection.toJson(new HuntPage(List.of(sampleHunt()), null)));
+  }
+
+  @Test
+  void equivalentProjectionsDescribeThemselvesTheSame() {
+    assertEquals(HuntProjection.parse("title,hostid").toString(), HuntProjection.parse("hostid,title").toString());
+  }
+}
@@ -0,0 +1,184 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mongojack.JacksonMongoCollection;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Tests the in-memory read model of the hunts, against the same "test"
+ * database as `HuntControllerSpec`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class HuntReadModelSpec {
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  private MongoCollection<Document> huntDocuments;
+  private List<Set<String>> repaired;
+  private HuntReadModel readModel;
+  private ObjectId samsId;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  @BeforeEach
+  void setupEach() {
+    huntDocuments = db.getCollection("hunts");
+    huntDocuments.drop();
+    samsId = new ObjectId();
+    huntDocuments.insertMany(List.of(
+        new Document()
+            .append("_id", samsId)
+            .append("hostid", "Joe")
+            .append("title", "Sam")
+            .append("description", "Frogs")
+            .append("task", "Find a frog"),
+        new Document()
+            .append("hostid", "Pat")
+            .append("title", "Chris")
+            .append("description", "UMM")
+            .append("task", "Find the mall")));
+
+    JacksonMongoCollection<Hunt> hunts = HuntSchema.collection(db);
+    repaired = Collections.synchronizedList(new ArrayList<>());
+    // Check rarely enough that only the tests' own checks ever run.
+    readModel = new HuntReadModel(hunts, new HuntReadModel.Settings(3600), repaired::add);
+    readModel.start();
+  }
+
+  @AfterEach
+  void teardownEach() {
+    readModel.close();
+  }
+
+  @Test
+  void loadsTheHuntsWhenStarted() {
+    assertEquals(2, readModel.snapshot().size());
+    assertEquals("Sam", readModel.snapshot().get(samsId.toHexString()).title);
+  }
+
+  @Test
+  void keepsUpWithAddsAndRemoves() {
+    Hunt hunt = new Hunt();
+    hunt._id = new ObjectId().toHexString();
+    hunt.hostid = "Joe";
+    hunt.title = "New";
+    readModel.added(List.of(hunt));
+    readModel.removed(List.of(samsId.toHexString()));
+
+    assertEquals(2, readModel.snapshot().size());
+    assertEquals("New", readModel.snapshot().get(hunt._id).title);
+    assertNull(readModel.snapshot().get(samsId.toHexString()));
+  }
+
+  @Test
+  void checksChangeNothingWhenTheHuntsAreUpToDate() {
+    HuntSnapshot before = readModel.snapshot();
+
+    assertTrue(readModel.check().isEmpty());
+    assertEquals(before, readModel.snapshot());
+    assertEquals(1, readModel.checks());
+    assertEquals(0, readModel.repairs());
+    assertTrue(repaired.isEmpty());
+  }
+
+  @Test
+  void checksRepairChangesMadeElsewhere() {
+    ObjectId addedElsewhere = new ObjectId();
+    huntDocuments.insertOne(new Document()
+        .append("_id", addedElsewhere)
+        .append("hostid", "Joe")
+        .append("title", "Elsewhere"));
+    huntDocuments.updateOne(new Document("_id", samsId), new Document("$set", new Document("title", "Samuel")));
+
+    Set<String> expected = Set.of(samsId.toHexString(), addedElsewhere.toHexString());
+    assertEquals(expected, readModel.check());
+    assertEquals(3, readModel.snapshot().size());
+    assertEquals("Samuel", readModel.snapshot().get(samsId.toHexString()).title);
+    assertEquals(1, readModel.repairs());
+    assertEquals(List.of(expected), repaired);
+  }
+
+  @Test
+  void concurrentAddsAreAllKept() throws InterruptedException {
+    List<Thread> writers = new ArrayList<>();
+    List<String> ids = Collections.synchronizedList(new ArrayList<>());
+    for (int t = 0; t < 8; t++) {
+      writers.add(Thread.ofPlatform().start(() -> {
+        for (int i = 0; i < 100; i++) {
+          Hunt hunt = new Hunt();
+          hunt._id = new ObjectId().toHexString();
+          hunt.hostid = "Joe";
+          hunt.title = "Racing";
+          readModel.added(List.of(hunt));
+          // Each writer sees its own hunt as soon as it's added.
+          assertEquals(hunt, readModel.snapshot().get(hunt._id));
+          ids.add(hunt._id);
+        }
+      }));
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    assertEquals(800, ids.size());
+    assertEquals(802, readModel.snapshot().size());
+    for (String id : ids) {
+      assertEquals(id, readModel.snapshot().get(id)._id);
+    }
+  }
+
+  @Test
+  void settingsRejectChecksLessThanASecondApart() {
+    assertThrows(IllegalArgumentException.class, () -> new HuntReadModel.Settings(0));
+    assertThrows(IllegalArgumentException.class, () -> HuntReadModel.Settings
+        .fromEnvironment(Map.of("HUNT_READ_MODEL_CHECK_SECONDS", "-1")));
+  }
+
+  @Test
+  void settingsHaveDefaults() {
+    assertEquals(30, HuntReadModel.Settings.fromEnvironment(Map.of()).checkIntervalSeconds());
+    assertEquals(5, HuntReadModel.Settings
+        .fromEnvironment(Map.of("HUNT_READ_MODEL_CHECK_SECONDS", "5"))
+        .checkIntervalSeconds());
+  }
+}
@@ -0,0 +1,165 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Tests the setup of the hunts collection, against the same "test"
+ * database as `HuntControllerSpec`.
+ */
+class HuntSchemaSpec {
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  private MongoCollection<Document> hunts;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  @BeforeEach
+  void setupEach() {
+    hunts = db.getCollection(HuntSchema.COLLECTION_NAME);
+    hunts.drop();
+    hunts.insertMany(List.of(
+        new Document().append("title", "Chris").append("hostid", "Joe"),
+        new Document().append("title", "Sam").append("hostid", "Joe")));
+  }
+
+  @Test
+  void bootstrapCreatesTheIndexes() {
+    HuntSchema.bootstrap(db, false);
+
+    // The `_id` index, plus ours.
+    assertEquals(HuntSchema.INDEXES.size() + 1, hunts.listIndexes().into(new ArrayList<>()).size());
+  }
+
+  @Test
+  void bootstrapCanBeRunAgain() {
+    HuntSchema.bootstrap(db, false);
+    HuntSchema.bootstrap(db, true);
+
+    assertEquals(HuntSchema.INDEXES.size() + 1, hunts.listIndexes().into(new ArrayList<>()).size());
+  }
+
+  @Test
+  void bootstrapReplacesAnOldTextIndex() {
+    // The text index from before it covered every task's name.
+    hunts.createIndex(new Document()
+        .append("title", "text")
+        .append("description", "text")
+        .append("task", "text"));
+
+    HuntSchema.bootstrap(db, false);
+
+    Document textIndex = null;
+    for (Document index : hunts.listIndexes()) {
+      if (index.containsKey("weights")) {
+        textIndex = index;
+      }
+    }
+    assertEquals(HuntSchema.TEXT_WEIGHTS, textIndex.get("weights", Document.class));
+    assertEquals(HuntSchema.INDEXES.size() + 1, hunts.listIndexes().into(new ArrayList<>()).size());
+  }
+
+  @Test
+  void bootstrapFillsInLowercaseTitles() {
+    HuntSchema.bootstrap(db, false);
+
+    assertEquals("chris", hunts.find(new Document("title", "Chris")).first().get(Hunt.TITLE_LOWER_KEY));
+    assertEquals(0, hunts.countDocuments(new Document(Hunt.TITLE_LOWER_KEY, new Document("$exists", false))));
+  }
+
+  @Test
+  void bootstrapLowercasesTitlesAsHuntsDo() {
+    hunts.insertMany(List.of(
+        new Document().append("title", "Étang").append("hostid", "Joe"),
+        // As `$toLower` would have left it.
+        new Document().append("title", "Ötzi").append(Hunt.TITLE_LOWER_KEY, "Ötzi").append("hostid", "Joe")));
+
+    HuntSchema.bootstrap(db, false);
+
+    assertEquals("étang", hunts.find(new Document("title", "Étang")).first().get(Hunt.TITLE_LOWER_KEY));
+    assertEquals("ötzi", hunts.find(new Document("title", "Ötzi")).first().get(Hunt.TITLE_LOWER_KEY));
+    assertEquals("chris", hunts.find(new Document("title", "Chris")).first().get(Hunt.TITLE_LOWER_KEY));
+  }
+
+  @Test
+  void everyQueryShapeUsesAnIndex() {
+    List<String> problems = HuntSchema.bootstrap(db, true);
+
+    assertEquals(List.of(), problems);
+  }
+
+  @Test
+  void queriesWithoutIndexesAreReported() {
+    List<String> problems = HuntSchema.verifyQueryPlans(hunts);
+
+    assertEquals(HuntSchema.QUERY_SHAPES.size(), problems.size());
+    assertTrue(problems.get(0).startsWith(HuntSchema.QUERY_SHAPES.get(0).name()));
+  }
+
+  @Test
+  void planStagesAreFoundAnywhereInTheWinningPlan() {
+    Document explained = Document.parse("""
+        {"queryPlanner": {
+          "rejectedPlans": [{"stage": "COLLSCAN"}],
+          "winningPlan": {"queryPlan": {"stage": "FETCH", "inputStages": [
+            {"stage": "SORT", "inputStage": {"stage": "IXSCAN"}}
+          ]}}
+        }}
+        """);
+
+    Set<String> stages = HuntSchema.planStages(explained);
+
+    assertEquals(Set.of("FETCH", "SORT", "IXSCAN"), stages);
+    assertFalse(stages.contains("COLLSCAN"));
+  }
+
+  @Test
+  void strictModeRefusesSlowQueries() {
+    List<String> problems = HuntSchema.verifyQueryPlans(hunts);
+
+    // Not strict: just warnings.
+    HuntSchema.reportProblems(problems, false);
+    HuntSchema.reportProblems(List.of(), true);
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+      HuntSchema.reportProblems(problems, true);
+    });
+    assertTrue(e.getMessage().contains("COLLSCAN"));
+  }
+}
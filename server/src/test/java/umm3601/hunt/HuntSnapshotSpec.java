@@ -0,0 +1,184 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the in-memory snapshots of the hunts behind the `HuntReadModel`.
+ * These don't need a database.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class HuntSnapshotSpec {
+
+  private static final HuntCriteria EVERYTHING = new HuntCriteria(null, null, false, null, null);
+
+  private Hunt chris;
+  private Hunt sam;
+  private Hunt samantha;
+  private Hunt untitled;
+  private HuntSnapshot snapshot;
+
+  private static Hunt hunt(String title, String hostid, String description) {
+    Hunt hunt = new Hunt();
+    hunt._id = new ObjectId().toHexString();
+    hunt.title = title;
+    hunt.hostid = hostid;
+    hunt.description = description;
+    hunt.task = "Find the " + description;
+    hunt.tasks = List.of(HuntTask.named(hunt.task));
+    return hunt;
+  }
+
+  private static List<String> titles(List<Hunt> hunts) {
+    List<String> titles = new ArrayList<>();
+    for (Hunt hunt : hunts) {
+      titles.add(hunt.title);
+    }
+    return titles;
+  }
+
+  @BeforeEach
+  void setupEach() {
+    // Created in this order, so their ids are in this order too.
+    chris = hunt("Chris", "Joe", "UMM");
+    sam = hunt("Sam", "Joe", "Frogs");
+    samantha = hunt("Samantha", "Pat", "More frogs");
+    untitled = hunt(null, "Pat", "Nothing");
+    snapshot = HuntSnapshot.of(List.of(samantha, untitled, sam, chris));
+  }
+
+  @Test
+  void findsHuntsById() {
+    assertEquals(4, snapshot.size());
+    assertSame(sam, snapshot.get(sam._id));
+    assertNull(snapshot.get(new ObjectId().toHexString()));
+  }
+
+  @Test
+  void sortsWithMissingValuesFirst() {
+    List<Hunt> hunts = snapshot.find(EVERYTHING, List.of("title"), false);
+    assertEquals(List.of(untitled, chris, sam, samantha), hunts);
+
+    List<Hunt> descending = snapshot.find(EVERYTHING, List.of("title"), true);
+    assertEquals(List.of(samantha, sam, chris, untitled), descending);
+  }
+
+  @Test
+  void breaksTiesById() {
+    List<Hunt> hunts = snapshot.find(EVERYTHING, List.of("hostid"), false);
+    assertEquals(List.of(chris, sam, samantha, untitled), hunts);
+
+    List<Hunt> byHostAndTitle = snapshot.find(EVERYTHING, List.of("hostid", "title"), true);
+    assertEquals(List.of(samantha, untitled, sam, chris), byHostAndTitle);
+  }
+
+  @Test
+  void filtersByHost() {
+    HuntCriteria criteria = new HuntCriteria("Pat", null, false, null, null);
+    assertEquals(List.of(untitled, samantha), snapshot.find(criteria, List.of("title"), false));
+  }
+
+  @Test
+  void filtersByTitlePrefixOrExactTitle() {
+    HuntCriteria prefix = new HuntCriteria(null, "sam", false, null, null);
+    assertEquals(List.of("Sam", "Samantha"), titles(snapshot.find(prefix, List.of("title"), false)));
+
+    HuntCriteria exact = new HuntCriteria(null, "sam", true, null, null);
+    assertEquals(List.of("Sam"), titles(snapshot.find(exact, List.of("title"), false)));
+
+    HuntCriteria none = new HuntCriteria(null, "zed", false, null, null);
+    assertTrue(snapshot.find(none, List.of("title"), false).isEmpty());
+  }
+
+  @Test
+  void filtersByDescriptionAndTaskIgnoringCase() {
+    Pattern frogs = Pattern.compile(Pattern.quote("FROG"), Pattern.CASE_INSENSITIVE);
+    HuntCriteria byDescription = new HuntCriteria(null, null, false, frogs, null);
+    assertEquals(List.of("Sam", "Samantha"), titles(snapshot.find(byDescription, List.of("title"), false)));
+
+    HuntCriteria byBoth = new HuntCriteria("Joe", null, false, frogs, frogs);
+    assertEquals(List.of("Sam"), titles(snapshot.find(byBoth, List.of("title"), false)));
+  }
+
+  @Test
+  void criteriaMatchTheSameHuntsAsTheirFilters() {
+    assertEquals(new Document(), EVERYTHING.toBson());
+    HuntCriteria criteria = new HuntCriteria("Joe", "sam", true, null, null);
+    assertTrue(criteria.matches(sam));
+    assertFalse(criteria.matches(samantha));
+    assertFalse(new HuntCriteria(null, "sam", false, null, null).matches(untitled));
+  }
+
+  @Test
+  void pagesPickUpAfterTheLastHunt() {
+    List<Hunt> first = snapshot.page(EVERYTHING, "title", false, null, 2);
+    assertEquals(List.of(untitled, chris), first);
+
+    HuntPageToken after = new HuntPageToken("title", false, chris.title, new ObjectId(chris._id));
+    assertEquals(List.of(sam, samantha), snapshot.page(EVERYTHING, "title", false, after, 5));
+
+    // A position between two hunts (say, one that's since been deleted)
+    // picks up with the next one.
+    HuntPageToken between = new HuntPageToken("title", true, "Samb", new ObjectId());
+    assertEquals(List.of(samantha, sam), snapshot.page(EVERYTHING, "title", true, between, 2));
+  }
+
+  @Test
+  void changesMakeNewSnapshots() {
+    Hunt pat = hunt("Pat's", "Pat", "Things");
+    HuntSnapshot added = snapshot.with(List.of(pat));
+    HuntSnapshot removed = added.without(List.of(sam._id, "not an id"));
+
+    assertEquals(4, snapshot.size());
+    assertEquals(5, added.size());
+    assertEquals(4, removed.size());
+    assertNull(removed.get(sam._id));
+    assertSame(pat, removed.get(pat._id));
+    HuntCriteria byPat = new HuntCriteria("Pat", null, false, null, null);
+    assertEquals(List.of(untitled, pat, samantha), removed.find(byPat, List.of("title"), false));
+    // Removing hunts that aren't there changes nothing.
+    assertSame(removed, removed.without(List.of(sam._id)));
+  }
+
+  @Test
+  void replacingAHuntMovesItInTheIndexesOfTheNewSnapshotOnly() {
+    Hunt movedSam = hunt("Toad", "Pat", "Toads");
+    movedSam._id = sam._id;
+    HuntSnapshot moved = snapshot.with(List.of(movedSam));
+
+    HuntCriteria byJoe = new HuntCriteria("Joe", null, false, null, null);
+    HuntCriteria byPat = new HuntCriteria("Pat", null, false, null, null);
+    HuntCriteria titledSam = new HuntCriteria(null, "sam", true, null, null);
+    assertEquals(List.of(chris), moved.find(byJoe, List.of("title"), false));
+    assertEquals(List.of(untitled, samantha, movedSam), moved.find(byPat, List.of("title"), false));
+    assertEquals(List.of(), moved.find(titledSam, List.of("title"), false));
+    // The old snapshot still has Sam where it was.
+    assertEquals(List.of(chris, sam), snapshot.find(byJoe, List.of("title"), false));
+    assertEquals(List.of(untitled, samantha), snapshot.find(byPat, List.of("title"), false));
+    assertEquals(List.of(sam), snapshot.find(titledSam, List.of("title"), false));
+  }
+
+  @Test
+  void findsTheHuntsThatDiffer() {
+    Hunt changedSam = hunt("Sam", "Joe", "Toads");
+    changedSam._id = sam._id;
+    Hunt extra = hunt("Extra", "Joe", "More");
+    HuntSnapshot other = snapshot.without(List.of(chris._id)).with(List.of(changedSam, extra));
+
+    assertEquals(Set.of(chris._id, sam._id, extra._id), snapshot.differences(other));
+    assertTrue(snapshot.differences(HuntSnapshot.of(List.of(chris, sam, samantha, untitled))).isEmpty());
+  }
+}
@@ -1,11 +1,15 @@
 package umm3601.hunt;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import io.javalin.json.JavalinJackson;
+
 class HuntSpec {
 
   private static final String FAKE_ID_STRING_1 = "fakeIdOne";
@@ -51,4 +55,22 @@ class HuntSpec {
     // a Hunt is not equal to its id even though id is used for checking equality
     assertFalse(hunt1.equals(FAKE_ID_STRING_1));
   }
+
+  @Test
+  void titleLowerFollowsTheTitle() {
+    assertNull(hunt1.getTitleLower());
+
+    hunt1.title = "Frog HUNT";
+    assertEquals("frog hunt", hunt1.getTitleLower());
+  }
+
+  @Test
+  void titleLowerIsOnlyWrittenForTheDatabase() {
+    hunt1._id = FAKE_ID_STRING_1;
+    hunt1.title = "Frog HUNT";
+
+    assertFalse(new JavalinJackson().toJsonString(hunt1, Hunt.class).contains(Hunt.TITLE_LOWER_KEY));
+    Hunt read = new JavalinJackson().fromJsonString("{\"title\": \"Toad\", \"titleLower\": \"frog\"}", Hunt.class);
+    assertEquals("toad", read.getTitleLower());
+  }
 }
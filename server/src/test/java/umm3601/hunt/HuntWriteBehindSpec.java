@@ -0,0 +1,251 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mongojack.JacksonMongoCollection;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ValidationOptions;
+
+/**
+ * Tests the write-behind buffer for new hunts, against the same "test"
+ * database as `HuntControllerSpec`.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class HuntWriteBehindSpec {
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  private MongoCollection<Document> huntDocuments;
+  private JacksonMongoCollection<Hunt> hunts;
+  private List<List<Hunt>> written;
+  private HuntWriteBehind writeBehind;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  @BeforeEach
+  void setupEach() {
+    huntDocuments = db.getCollection("hunts");
+    huntDocuments.drop();
+    hunts = HuntSchema.collection(db);
+    written = Collections.synchronizedList(new ArrayList<>());
+    writeBehind = new HuntWriteBehind(hunts, new HuntWriteBehind.Settings(3, 2, 10), written::add);
+  }
+
+  @AfterEach
+  void teardownEach() {
+    writeBehind.close();
+  }
+
+  private static Hunt newHunt(String title) {
+    Hunt hunt = new Hunt();
+    hunt._id = new ObjectId().toHexString();
+    hunt.title = title;
+    hunt.hostid = "Joe";
+    return hunt;
+  }
+
+  @Test
+  void refusesHuntsBeforeItsStarted() {
+    assertFalse(writeBehind.offer(newHunt("Early")));
+    assertEquals(0, writeBehind.pending());
+  }
+
+  @Test
+  void writesOfferedHuntsWhenClosed() {
+    writeBehind.start();
+    assertTrue(writeBehind.offer(newHunt("Chris")));
+    assertTrue(writeBehind.offer(newHunt("Sam")));
+    assertTrue(writeBehind.offer(newHunt("Pat")));
+
+    writeBehind.close();
+
+    assertEquals(0, writeBehind.pending());
+    assertEquals(3, huntDocuments.countDocuments());
+    assertEquals(3, written.stream().mapToInt(List::size).sum());
+    // Batches are never bigger than the batch size.
+    assertTrue(written.stream().allMatch(batch -> batch.size() <= 2));
+    // And once it's closed, it doesn't take any more.
+    assertFalse(writeBehind.offer(newHunt("Late")));
+  }
+
+  @Test
+  void everyHuntTakenWhileClosingIsWritten() throws Exception {
+    HuntWriteBehind roomy = new HuntWriteBehind(hunts, new HuntWriteBehind.Settings(10_000, 100, 10), written::add);
+    roomy.start();
+    List<Hunt> taken = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch offering = new CountDownLatch(4);
+    List<Thread> offerers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      offerers.add(Thread.ofPlatform().start(() -> {
+        offering.countDown();
+        for (int i = 0; i < 1000; i++) {
+          Hunt hunt = newHunt("Racing");
+          if (roomy.offer(hunt)) {
+            taken.add(hunt);
+          }
+        }
+      }));
+    }
+    offering.await();
+
+    roomy.close();
+    for (Thread offerer : offerers) {
+      offerer.join();
+    }
+
+    assertEquals(0, roomy.pending());
+    assertEquals(taken.size(), huntDocuments.countDocuments());
+  }
+
+  @Test
+  void refusesHuntsWhenTheBufferIsFull() throws InterruptedException {
+    // Hold the flusher up in the callback for its first batch, so nothing
+    // else leaves the buffer.
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    HuntWriteBehind stalled = new HuntWriteBehind(hunts, new HuntWriteBehind.Settings(2, 1, 10), batch -> {
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      written.add(batch);
+    });
+    stalled.start();
+    try {
+      assertTrue(stalled.offer(newHunt("One")));
+      assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+      assertTrue(stalled.offer(newHunt("Two")));
+      assertTrue(stalled.offer(newHunt("Three")));
+      assertFalse(stalled.offer(newHunt("Four")));
+      assertEquals(2, stalled.pending());
+    } finally {
+      release.countDown();
+      stalled.close();
+    }
+
+    assertEquals(3, huntDocuments.countDocuments());
+  }
+
+  @Test
+  void withdrawnHuntsAreNotLeftInTheDatabase() {
+    // Slow enough to batch that a hunt is often withdrawn after the
+    // flusher has taken it, but before it's written.
+    HuntWriteBehind slow = new HuntWriteBehind(hunts, new HuntWriteBehind.Settings(10, 10, 200), written::add);
+    slow.start();
+    Hunt kept = newHunt("Kept");
+    Hunt withdrawn = newHunt("Withdrawn");
+    assertTrue(slow.offer(kept));
+    assertTrue(slow.offer(withdrawn));
+
+    assertTrue(slow.withdraw(withdrawn._id));
+    slow.close();
+
+    assertEquals(1, huntDocuments.countDocuments());
+    assertEquals(1, huntDocuments.countDocuments(new Document("_id", new ObjectId(kept._id))));
+    assertEquals(List.of(List.of(kept)), written);
+    // Once it's been dealt with, there's nothing left to withdraw.
+    assertFalse(slow.withdraw(withdrawn._id));
+    assertFalse(slow.withdraw(kept._id));
+  }
+
+  @Test
+  void duplicateHuntsCountAsWritten() throws InterruptedException {
+    Hunt hunt = newHunt("Chris");
+    hunts.insertOne(hunt);
+
+    // Writing a batch again after a failure that happened after some of
+    // it was written.
+    writeBehind.write(List.of(hunt, newHunt("Sam")));
+
+    assertEquals(2, huntDocuments.countDocuments());
+    assertEquals(1, written.size());
+    assertEquals(2, written.get(0).size());
+  }
+
+  @Test
+  void huntsTheDatabaseRefusesAreNotCountedAsWritten() throws InterruptedException {
+    huntDocuments.drop();
+    db.createCollection("hunts", new CreateCollectionOptions()
+        .validationOptions(new ValidationOptions().validator(Filters.ne("title", "Refused"))));
+    Hunt accepted = newHunt("Chris");
+
+    writeBehind.write(List.of(accepted, newHunt("Refused")));
+
+    assertEquals(1, huntDocuments.countDocuments());
+    assertEquals(List.of(List.of(accepted)), written);
+    assertEquals(1, writeBehind.lost());
+  }
+
+  @Test
+  void settingsHaveDefaults() {
+    HuntWriteBehind.Settings settings = HuntWriteBehind.Settings.fromEnvironment(Map.of());
+
+    assertEquals(1000, settings.bufferSize());
+    assertEquals(100, settings.batchSize());
+    assertEquals(20, settings.maxDelayMillis());
+  }
+
+  @Test
+  void settingsCanBeOverridden() {
+    HuntWriteBehind.Settings settings = HuntWriteBehind.Settings.fromEnvironment(Map.of(
+        "HUNT_WRITE_BUFFER_SIZE", "50",
+        "HUNT_WRITE_BATCH_SIZE", "5",
+        "HUNT_WRITE_MAX_DELAY_MS", "2"));
+
+    assertEquals(new HuntWriteBehind.Settings(50, 5, 2), settings);
+  }
+
+  @Test
+  void batchesCanHaveTheirOwnWriteConcern() {
+    assertNull(HuntWriteBehind.Settings.fromEnvironment(Map.of()).writeConcern());
+    assertEquals(WriteConcern.MAJORITY, HuntWriteBehind.Settings
+        .fromEnvironment(Map.of("HUNT_WRITE_BEHIND_WRITE_CONCERN", "majority"))
+        .writeConcern());
+  }
+}
@@ -0,0 +1,86 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LruCacheSpec {
+
+  private static final Duration TTL = Duration.ofSeconds(10);
+
+  // A fake clock, in nanoseconds, so the tests can move time forward.
+  private AtomicLong now;
+  private LruCache<String, String> cache;
+
+  @BeforeEach
+  void setupEach() {
+    now = new AtomicLong();
+    cache = new LruCache<>(2, TTL, now::get);
+  }
+
+  @Test
+  void returnsWhatWasPut() {
+    cache.put("a", "apple");
+
+    assertEquals("apple", cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  void evictsTheLeastRecentlyUsedEntry() {
+    cache.put("a", "apple");
+    cache.put("b", "banana");
+    // Reading "a" makes "b" the least recently used.
+    cache.get("a");
+    cache.put("c", "cherry");
+
+    assertEquals("apple", cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals("cherry", cache.get("c"));
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.evictions());
+  }
+
+  @Test
+  void entriesExpire() {
+    cache.put("a", "apple");
+
+    now.addAndGet(TTL.toNanos() - 1);
+    assertEquals("apple", cache.get("a"));
+
+    now.addAndGet(1);
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void canInvalidateEntries() {
+    cache.put("a", "apple");
+    cache.put("b", "banana");
+
+    cache.invalidate("a");
+    assertNull(cache.get("a"));
+    assertEquals("banana", cache.get("b"));
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void putIfOnlyPutsWhenTheConditionHolds() {
+    assertFalse(cache.putIf("a", "apple", () -> false));
+    assertNull(cache.get("a"));
+
+    assertTrue(cache.putIf("a", "apple", () -> true));
+    assertEquals("apple", cache.get("a"));
+  }
+}
@@ -0,0 +1,135 @@
+package umm3601.hunt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.javalin.http.NotFoundResponse;
+
+@SuppressWarnings({ "MagicNumber" })
+class SingleFlightSpec {
+
+  private SingleFlight<String, String> flight;
+  private ExecutorService threads;
+
+  // Holds up the loader until the test lets it go.
+  private CountDownLatch loading;
+  private CountDownLatch release;
+  private AtomicInteger loaderRuns;
+
+  @BeforeEach
+  void setupEach() {
+    flight = new SingleFlight<>();
+    threads = Executors.newCachedThreadPool();
+    loading = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+    loaderRuns = new AtomicInteger();
+  }
+
+  @AfterEach
+  void teardownEach() {
+    release.countDown();
+    threads.shutdownNow();
+  }
+
+  private String slowLoad(String value) {
+    loaderRuns.incrementAndGet();
+    loading.countDown();
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return value;
+  }
+
+  // Wait until `count` callers are waiting on the load that's going.
+  private void awaitShared(long count) throws InterruptedException {
+    while (flight.shared() < count) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  void concurrentLoadsOfTheSameKeyShareOne() throws Exception {
+    Future<String> first = threads.submit(() -> flight.load("a", () -> slowLoad("apple")));
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+    Future<String> second = threads.submit(() -> flight.load("a", () -> slowLoad("not this")));
+    Future<String> third = threads.submit(() -> flight.load("a", () -> slowLoad("or this")));
+    awaitShared(2);
+    assertEquals(1, flight.inFlight());
+
+    release.countDown();
+
+    String value = first.get(5, TimeUnit.SECONDS);
+    assertEquals("apple", value);
+    assertSame(value, second.get(5, TimeUnit.SECONDS));
+    assertSame(value, third.get(5, TimeUnit.SECONDS));
+    assertEquals(1, loaderRuns.get());
+    assertEquals(1, flight.loads());
+    assertEquals(2, flight.shared());
+    assertEquals(0, flight.inFlight());
+  }
+
+  @Test
+  void differentKeysLoadSeparately() {
+    assertEquals("apple", flight.load("a", () -> "apple"));
+    assertEquals("banana", flight.load("b", () -> "banana"));
+    assertEquals(2, flight.loads());
+    assertEquals(0, flight.shared());
+  }
+
+  @Test
+  void loadsAreNotKeptOnceDone() {
+    assertEquals("apple", flight.load("a", () -> "apple"));
+    assertEquals("apricot", flight.load("a", () -> "apricot"));
+    assertEquals(2, flight.loads());
+  }
+
+  @Test
+  void everyoneWaitingGetsTheLoadersException() throws Exception {
+    Future<String> waiting = threads.submit(() -> {
+      assertTrue(loading.await(5, TimeUnit.SECONDS));
+      return flight.load("a", () -> "not this");
+    });
+    assertThrows(NotFoundResponse.class, () -> flight.load("a", () -> {
+      loading.countDown();
+      try {
+        awaitShared(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new NotFoundResponse("No apples");
+    }));
+
+    Exception e = assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof NotFoundResponse);
+    assertEquals(0, flight.inFlight());
+  }
+
+  @Test
+  void forgottenLoadsAreNotShared() throws Exception {
+    Future<String> first = threads.submit(() -> flight.load("a", () -> slowLoad("old apple")));
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+    flight.forget("a");
+
+    assertEquals("new apple", flight.load("a", () -> "new apple"));
+    release.countDown();
+    assertEquals("old apple", first.get(5, TimeUnit.SECONDS));
+    assertEquals(2, flight.loads());
+    assertEquals(0, flight.shared());
+  }
+}
@@ -0,0 +1,76 @@
+package umm3601.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Latencies are made-up numbers of nanoseconds, which makes for a lot
+// of "magic numbers".
+@SuppressWarnings({ "MagicNumber" })
+class LatencyHistogramSpec {
+
+  private LatencyHistogram histogram;
+
+  @BeforeEach
+  void setupEach() {
+    histogram = new LatencyHistogram();
+  }
+
+  @Test
+  void emptyHistogramsReportZero() {
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.sumNanos());
+    assertEquals(0, histogram.valueAtQuantile(0.99));
+  }
+
+  @Test
+  void smallValuesAreExact() {
+    histogram.record(3);
+    histogram.record(7);
+
+    assertEquals(2, histogram.count());
+    assertEquals(10, histogram.sumNanos());
+    assertEquals(3, histogram.valueAtQuantile(0.5));
+    assertEquals(7, histogram.valueAtQuantile(1.0));
+    assertEquals(1, histogram.countAtOrBelow(5));
+  }
+
+  @Test
+  void quantilesAreWithinAFewPercent() {
+    // One microsecond up to one millisecond, in one microsecond steps.
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    assertWithinPercent(500_000, histogram.valueAtQuantile(0.5));
+    assertWithinPercent(990_000, histogram.valueAtQuantile(0.99));
+    assertWithinPercent(999_000, histogram.valueAtQuantile(0.999));
+    assertEquals(1000, histogram.countAtOrBelow(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  @Test
+  void outOfRangeValuesAreClamped() {
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    assertEquals(0, histogram.valueAtQuantile(0.5));
+    assertTrue(histogram.valueAtQuantile(1.0) >= LatencyHistogram.MAX_TRACKABLE_NANOS);
+  }
+
+  @Test
+  void everyValueFallsInsideItsBucket() {
+    for (long value = 0; value < 1_000_000; value += 37) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(value <= LatencyHistogram.highestValueInBucket(index));
+      assertTrue(index == 0 || value > LatencyHistogram.highestValueInBucket(index - 1));
+    }
+  }
+
+  private static void assertWithinPercent(long expected, long actual) {
+    assertTrue(Math.abs(actual - expected) <= expected * 0.04, "expected about " + expected + " but got " + actual);
+  }
+}
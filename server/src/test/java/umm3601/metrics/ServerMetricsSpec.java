@@ -0,0 +1,194 @@
+package umm3601.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+
+@SuppressWarnings({ "MagicNumber" })
+class ServerMetricsSpec {
+
+  private ServerMetrics metrics;
+
+  @BeforeEach
+  void setupEach() {
+    metrics = new ServerMetrics();
+  }
+
+  @Test
+  void installsHandlersAndTheMetricsRoute() {
+    Javalin mockServer = mock(Javalin.class);
+
+    metrics.install(mockServer);
+
+    verify(mockServer).before(any());
+    verify(mockServer).after(any());
+    verify(mockServer).get(eq(ServerMetrics.METRICS_PATH), any());
+  }
+
+  @Test
+  void rendersRequestLatencyHistograms() {
+    metrics.recordRequest("GET", "/api/hunts", 200, TimeUnit.MILLISECONDS.toNanos(3));
+    metrics.recordRequest("GET", "/api/hunts", 200, TimeUnit.MILLISECONDS.toNanos(30));
+
+    String rendered = metrics.render();
+
+    String labels = "method=\"GET\",route=\"/api/hunts\",status=\"200\"";
+    assertTrue(rendered.contains("# TYPE http_server_requests_seconds histogram\n"));
+    assertTrue(rendered.contains("http_server_requests_seconds_bucket{" + labels + ",le=\"0.001\"} 0\n"));
+    assertTrue(rendered.contains("http_server_requests_seconds_bucket{" + labels + ",le=\"0.005\"} 1\n"));
+    assertTrue(rendered.contains("http_server_requests_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+    assertTrue(rendered.contains("http_server_requests_seconds_count{" + labels + "} 2\n"));
+    assertTrue(rendered.contains("http_server_requests_in_flight 0\n"));
+    assertTrue(rendered.contains("jvm_memory_heap_used_bytes "));
+    assertTrue(rendered.contains("jvm_threads_live "));
+  }
+
+  @Test
+  void recordsMongoCommands() {
+    CommandListener listener = metrics.mongoCommandListener();
+    CommandSucceededEvent succeeded = mock(CommandSucceededEvent.class);
+    when(succeeded.getCommandName()).thenReturn("find");
+    when(succeeded.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.MILLISECONDS.toNanos(2));
+    CommandFailedEvent failed = mock(CommandFailedEvent.class);
+    when(failed.getCommandName()).thenReturn("insert");
+    when(failed.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.MILLISECONDS.toNanos(5));
+
+    listener.commandSucceeded(succeeded);
+    listener.commandFailed(failed);
+
+    String rendered = metrics.render();
+    assertTrue(rendered.contains("mongodb_commands_seconds_count{command=\"find\"} 1\n"));
+    assertTrue(rendered.contains("mongodb_commands_seconds_count{command=\"insert\"} 1\n"));
+    assertTrue(rendered.contains("mongodb_command_failures_total{command=\"insert\"} 1\n"));
+  }
+
+  @Test
+  void keepsAMovingAverageOfRecentMongoLatency() {
+    CommandListener listener = metrics.mongoCommandListener();
+    CommandSucceededEvent find = mock(CommandSucceededEvent.class);
+    when(find.getCommandName()).thenReturn("find");
+    when(find.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.MILLISECONDS.toNanos(100));
+    // A change stream waiting for changes.
+    CommandSucceededEvent getMore = mock(CommandSucceededEvent.class);
+    when(getMore.getCommandName()).thenReturn(ServerMetrics.GET_MORE);
+    when(getMore.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.SECONDS.toNanos(1));
+
+    assertEquals(0, metrics.recentMongoLatencyNanos());
+    listener.commandSucceeded(find);
+    long afterOne = metrics.recentMongoLatencyNanos();
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100) / ServerMetrics.RECENT_LATENCY_WEIGHT, afterOne);
+    listener.commandSucceeded(getMore);
+    assertEquals(afterOne, metrics.recentMongoLatencyNanos());
+    for (int i = 0; i < 200; i++) {
+      listener.commandSucceeded(find);
+    }
+    assertTrue(metrics.recentMongoLatencyNanos() > TimeUnit.MILLISECONDS.toNanos(99));
+  }
+
+  @Test
+  void theRecentMongoLatencyReachesSmallLatencies() {
+    CommandListener listener = metrics.mongoCommandListener();
+    CommandSucceededEvent find = mock(CommandSucceededEvent.class);
+    when(find.getCommandName()).thenReturn("find");
+    // Less than RECENT_LATENCY_WEIGHT, so each step is a fraction of a nanosecond.
+    when(find.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(10L);
+
+    for (int i = 0; i < 1000; i++) {
+      listener.commandSucceeded(find);
+    }
+
+    assertEquals(10, metrics.recentMongoLatencyNanos());
+  }
+
+  @Test
+  void recordsConnectionPoolActivity() {
+    ConnectionPoolListener listener = metrics.mongoConnectionPoolListener();
+    ServerId serverId = new ServerId(new ClusterId(), new ServerAddress("localhost"));
+    ConnectionPoolCreatedEvent created = mock(ConnectionPoolCreatedEvent.class);
+    when(created.getServerId()).thenReturn(serverId);
+    when(created.getSettings()).thenReturn(ConnectionPoolSettings.builder().maxSize(25).build());
+    ConnectionCheckedOutEvent checkedOut = mock(ConnectionCheckedOutEvent.class);
+    when(checkedOut.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.MILLISECONDS.toNanos(3));
+    ConnectionCheckOutFailedEvent failed = mock(ConnectionCheckOutFailedEvent.class);
+    when(failed.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.MILLISECONDS.toNanos(2000));
+    when(failed.getReason()).thenReturn(ConnectionCheckOutFailedEvent.Reason.TIMEOUT);
+
+    listener.connectionPoolCreated(created);
+    listener.connectionCreated(mock(ConnectionCreatedEvent.class));
+    listener.connectionCreated(mock(ConnectionCreatedEvent.class));
+    // Two operations want a connection: one gets it, the other times out.
+    listener.connectionCheckOutStarted(mock(ConnectionCheckOutStartedEvent.class));
+    listener.connectionCheckOutStarted(mock(ConnectionCheckOutStartedEvent.class));
+    listener.connectionCheckedOut(checkedOut);
+    listener.connectionCheckOutFailed(failed);
+
+    String rendered = metrics.render();
+    assertTrue(rendered.contains("mongodb_pool_max_connections 25\n"));
+    assertTrue(rendered.contains("mongodb_pool_connections 2\n"));
+    assertTrue(rendered.contains("mongodb_pool_connections_in_use 1\n"));
+    assertTrue(rendered.contains("mongodb_pool_waiting 0\n"));
+    assertTrue(rendered.contains("mongodb_pool_wait_seconds_bucket{le=\"0.005\"} 1\n"));
+    assertTrue(rendered.contains("mongodb_pool_wait_seconds_count 2\n"));
+    assertTrue(rendered.contains("mongodb_pool_checkout_failures_total{reason=\"timeout\"} 1\n"));
+
+    listener.connectionCheckedIn(mock(ConnectionCheckedInEvent.class));
+    listener.connectionClosed(mock(ConnectionClosedEvent.class));
+    ConnectionPoolClosedEvent closed = mock(ConnectionPoolClosedEvent.class);
+    when(closed.getServerId()).thenReturn(serverId);
+    listener.connectionPoolClosed(closed);
+
+    rendered = metrics.render();
+    assertTrue(rendered.contains("mongodb_pool_max_connections 0\n"));
+    assertTrue(rendered.contains("mongodb_pool_connections 1\n"));
+    assertTrue(rendered.contains("mongodb_pool_connections_in_use 0\n"));
+  }
+
+  @Test
+  void servesMetricsAsPrometheusText() {
+    Context ctx = mock(Context.class);
+    ArgumentCaptor<String> bodyCaptor = ArgumentCaptor.forClass(String.class);
+
+    metrics.getMetrics(ctx);
+
+    verify(ctx).contentType(ServerMetrics.CONTENT_TYPE);
+    verify(ctx).result(bodyCaptor.capture());
+    verify(ctx).status(HttpStatus.OK);
+    assertTrue(bodyCaptor.getValue().startsWith("# HELP http_server_requests_seconds"));
+  }
+
+  @Test
+  void escapesLabelValues() {
+    assertEquals("a\\\\b\\\"c\\nd", ServerMetrics.escape("a\\b\"c\nd"));
+  }
+}
@@ -0,0 +1,176 @@
+package umm3601.progress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import io.javalin.http.NotFoundResponse;
+import umm3601.hunt.HuntSchema;
+
+/**
+ * Tests the routes for the players' progress, against the "test" database.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class ProgressControllerSpec {
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  private ProgressController progressController;
+  private String huntId;
+
+  @Mock
+  private Context ctx;
+
+  @Captor
+  private ArgumentCaptor<Map<String, Long>> countsCaptor;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  @BeforeEach
+  void setupEach() {
+    MockitoAnnotations.openMocks(this);
+    db.getCollection(ProgressController.COLLECTION_NAME).drop();
+    progressController = new ProgressController(db, new ProgressTracker.Settings(3_600_000));
+    huntId = new ObjectId().toHexString();
+    db.getCollection(HuntSchema.COLLECTION_NAME).drop();
+    db.getCollection(HuntSchema.COLLECTION_NAME).insertOne(new Document()
+        .append("_id", new ObjectId(huntId))
+        .append("title", "Sam"));
+    when(ctx.pathParam("huntId")).thenReturn(huntId);
+    when(ctx.pathParam("playerId")).thenReturn("pat");
+  }
+
+  @AfterEach
+  void teardownEach() {
+    progressController.flushProgress();
+  }
+
+  @Test
+  void addsRoutes() {
+    Javalin mockServer = mock(Javalin.class);
+    progressController.addRoutes(mockServer);
+    verify(mockServer, Mockito.times(2)).get(any(), any());
+    verify(mockServer).post(Mockito.eq("/api/progress/{huntId}/players/{playerId}/completions"), any());
+  }
+
+  @Test
+  void completingATaskIsAcceptedAndCounted() {
+    progressController.completeTask(ctx);
+    progressController.completeTask(ctx);
+
+    verify(ctx, Mockito.times(2)).status(HttpStatus.ACCEPTED);
+    verify(ctx, Mockito.times(2)).json(countsCaptor.capture());
+    assertEquals(Map.of("completed", 2L), countsCaptor.getValue());
+    assertEquals(2, progressController.getTracker().unflushed());
+  }
+
+  @Test
+  void canGetAPlayersProgress() {
+    progressController.completeTask(ctx);
+
+    progressController.getPlayerProgress(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx, Mockito.times(2)).json(countsCaptor.capture());
+    assertEquals(Map.of("completed", 1L), countsCaptor.getValue());
+  }
+
+  @Test
+  void canGetAHuntsProgress() {
+    progressController.completeTask(ctx);
+    when(ctx.pathParam("playerId")).thenReturn("sam");
+    progressController.completeTask(ctx);
+    progressController.completeTask(ctx);
+
+    progressController.getHuntProgress(ctx);
+
+    verify(ctx).status(HttpStatus.OK);
+    verify(ctx, Mockito.times(4)).json(countsCaptor.capture());
+    assertEquals(Map.of("pat", 1L, "sam", 2L), countsCaptor.getValue());
+  }
+
+  @Test
+  void illegalIdsAreRejected() {
+    when(ctx.pathParam("huntId")).thenReturn("not-a-hunt");
+    assertThrows(BadRequestResponse.class, () -> progressController.completeTask(ctx));
+
+    when(ctx.pathParam("huntId")).thenReturn(huntId);
+    when(ctx.pathParam("playerId")).thenReturn("x".repeat(ProgressController.MAX_PLAYER_ID_LENGTH + 1));
+    assertThrows(BadRequestResponse.class, () -> progressController.completeTask(ctx));
+
+    assertEquals(0, progressController.getTracker().unflushed());
+  }
+
+  @Test
+  void completionsInHuntsThatDontExistAreNotFound() {
+    when(ctx.pathParam("huntId")).thenReturn(new ObjectId().toHexString());
+
+    assertThrows(NotFoundResponse.class, () -> progressController.completeTask(ctx));
+    assertEquals(0, progressController.getTracker().unflushed());
+  }
+
+  @Test
+  void huntIdsAreTheSameHoweverTheyreCapitalized() {
+    progressController.completeTask(ctx);
+    when(ctx.pathParam("huntId")).thenReturn(huntId.toUpperCase(Locale.ROOT));
+    progressController.completeTask(ctx);
+
+    verify(ctx, Mockito.times(2)).json(countsCaptor.capture());
+    assertEquals(Map.of("completed", 2L), countsCaptor.getValue());
+  }
+
+  @Test
+  void completionsAreWrittenWhenTheServerStops() {
+    progressController.completeTask(ctx);
+
+    progressController.flushProgress();
+
+    assertEquals(1, db.getCollection(ProgressController.COLLECTION_NAME).countDocuments());
+  }
+}
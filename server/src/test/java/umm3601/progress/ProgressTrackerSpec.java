@@ -0,0 +1,214 @@
+package umm3601.progress;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Tests the in-memory counts of the players' progress, and how they're
+ * written to the "test" database.
+ */
+@SuppressWarnings({ "MagicNumber" })
+class ProgressTrackerSpec {
+
+  // Long enough that the flusher never flushes on its own during a test.
+  private static final ProgressTracker.Settings NEVER = new ProgressTracker.Settings(3_600_000);
+
+  private static MongoClient mongoClient;
+  private static MongoDatabase db;
+
+  private MongoCollection<Document> progress;
+  private ProgressTracker tracker;
+  private String huntId;
+  private String otherHuntId;
+
+  @BeforeAll
+  static void setupAll() {
+    String mongoAddr = System.getenv().getOrDefault("MONGO_ADDR", "localhost");
+
+    mongoClient = MongoClients.create(
+        MongoClientSettings.builder()
+            .applyToClusterSettings(builder -> builder.hosts(Arrays.asList(new ServerAddress(mongoAddr))))
+            .build());
+    db = mongoClient.getDatabase("test");
+  }
+
+  @AfterAll
+  static void teardown() {
+    db.drop();
+    mongoClient.close();
+  }
+
+  @BeforeEach
+  void setupEach() {
+    progress = db.getCollection(ProgressController.COLLECTION_NAME);
+    progress.drop();
+    huntId = new ObjectId().toHexString();
+    otherHuntId = new ObjectId().toHexString();
+    tracker = new ProgressTracker(progress, NEVER);
+    tracker.start();
+  }
+
+  @AfterEach
+  void teardownEach() {
+    tracker.close();
+  }
+
+  private long saved(String hunt, String player) {
+    Document saved = progress.find(and(eq("huntId", hunt), eq("playerId", player))).first();
+    return saved == null ? 0 : saved.get("completed", Number.class).longValue();
+  }
+
+  @Test
+  void countsCompletionsInMemory() {
+    tracker.complete(huntId, "pat");
+    tracker.complete(huntId, "pat");
+    assertEquals(3, tracker.complete(huntId, "pat"));
+
+    assertEquals(3, tracker.completed(huntId, "pat"));
+    assertEquals(0, tracker.completed(huntId, "sam"));
+    assertEquals(0, tracker.completed(otherHuntId, "pat"));
+    assertEquals(3, tracker.unflushed());
+    // Nothing's been written yet.
+    assertEquals(0, progress.countDocuments());
+  }
+
+  @Test
+  void flushesWriteOneUpsertPerPlayer() {
+    for (int i = 0; i < 3; i++) {
+      tracker.complete(huntId, "pat");
+    }
+    tracker.complete(huntId, "sam");
+    tracker.complete(otherHuntId, "pat");
+
+    assertEquals(3, tracker.flush());
+
+    assertEquals(3, progress.countDocuments());
+    assertEquals(3, saved(huntId, "pat"));
+    assertEquals(1, saved(huntId, "sam"));
+    assertEquals(1, saved(otherHuntId, "pat"));
+    assertEquals(0, tracker.unflushed());
+    // With nothing new, there's nothing to write.
+    assertEquals(0, tracker.flush());
+
+    tracker.complete(huntId, "pat");
+    assertEquals(1, tracker.flush());
+    assertEquals(4, saved(huntId, "pat"));
+    assertEquals(4, tracker.completed(huntId, "pat"));
+  }
+
+  @Test
+  void readsWholeHuntsFromMemory() {
+    tracker.complete(huntId, "pat");
+    tracker.complete(huntId, "pat");
+    tracker.complete(huntId, "sam");
+
+    assertEquals(Map.of("pat", 2L, "sam", 1L), tracker.completedByPlayer(huntId));
+    assertEquals(Map.of(), tracker.completedByPlayer(otherHuntId));
+  }
+
+  @Test
+  void savedCountsAreLoadedWhenStarted() {
+    progress.insertOne(new Document()
+        .append("huntId", otherHuntId)
+        .append("playerId", "pat")
+        .append("completed", 5));
+
+    ProgressTracker restarted = new ProgressTracker(progress, NEVER);
+    restarted.start();
+    try {
+      assertEquals(5, restarted.completed(otherHuntId, "pat"));
+      assertEquals(6, restarted.complete(otherHuntId, "pat"));
+      // Only the new completion is left to write.
+      assertEquals(1, restarted.unflushed());
+    } finally {
+      restarted.close();
+    }
+    assertEquals(6, saved(otherHuntId, "pat"));
+  }
+
+  @Test
+  void closingWritesWhatsLeft() {
+    tracker.complete(huntId, "pat");
+
+    tracker.close();
+
+    assertEquals(1, saved(huntId, "pat"));
+  }
+
+  @Test
+  void closingWhileTheFlusherIsWritingWritesEachCompletionOnce() {
+    ProgressTracker busy = new ProgressTracker(progress, new ProgressTracker.Settings(1));
+    busy.start();
+    for (int i = 0; i < 2000; i++) {
+      busy.complete(huntId, "player" + (i % 200));
+    }
+
+    busy.close();
+
+    long written = 0;
+    for (int p = 0; p < 200; p++) {
+      written += saved(huntId, "player" + p);
+    }
+    assertEquals(2000, written);
+    assertEquals(0, busy.unflushed());
+  }
+
+  @Test
+  void concurrentCompletionsAreAllCounted() throws Exception {
+    ExecutorService players = Executors.newFixedThreadPool(8);
+    List<Future<?>> done = new ArrayList<>();
+    for (int p = 0; p < 8; p++) {
+      done.add(players.submit(() -> {
+        for (int i = 0; i < 1000; i++) {
+          tracker.complete(huntId, "pat");
+        }
+      }));
+    }
+    // Flush while the players are still completing tasks; whatever comes
+    // in during a flush is left for the next one.
+    while (!done.stream().allMatch(Future::isDone)) {
+      tracker.flush();
+    }
+    for (Future<?> player : done) {
+      player.get();
+    }
+    players.shutdown();
+    tracker.flush();
+
+    assertEquals(8000, tracker.completed(huntId, "pat"));
+    assertEquals(8000, saved(huntId, "pat"));
+    assertEquals(0, tracker.unflushed());
+  }
+
+  @Test
+  void settingsHaveDefaults() {
+    assertEquals(1000, ProgressTracker.Settings.fromEnvironment(Map.of()).flushIntervalMillis());
+    assertEquals(50, ProgressTracker.Settings
+        .fromEnvironment(Map.of("PROGRESS_FLUSH_MS", "50"))
+        .flushIntervalMillis());
+  }
+}